@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.reactivestreams;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * Signals the single response of a call. The call is enqueued on the first request so no thread
+ * is blocked waiting for it.
+ */
+final class CallPublisher<R> implements Publisher<Object> {
+  private final Call<R> originalCall;
+  private final boolean isBody;
+
+  CallPublisher(Call<R> originalCall, boolean isBody) {
+    this.originalCall = originalCall;
+    this.isBody = isBody;
+  }
+
+  @SuppressWarnings("ConstantConditions") // Guarding public API nullability.
+  @Override public void subscribe(Subscriber<? super Object> subscriber) {
+    if (subscriber == null) throw new NullPointerException("subscriber == null");
+    // Since Call is a one-shot type, clone it for each new subscriber.
+    Call<R> call = originalCall.clone();
+    subscriber.onSubscribe(new CallSubscription<>(call, subscriber, isBody));
+  }
+
+  /** Tracks whether the call has been started in its own value. */
+  private static final class CallSubscription<R> extends AtomicBoolean
+      implements Subscription, Callback<R> {
+    private final Call<R> call;
+    private final Subscriber<? super Object> subscriber;
+    private final boolean isBody;
+    /** Claimed by whichever of the callback and an invalid request signals first. */
+    private final AtomicBoolean terminated = new AtomicBoolean();
+    private volatile boolean cancelled;
+
+    CallSubscription(Call<R> call, Subscriber<? super Object> subscriber, boolean isBody) {
+      this.call = call;
+      this.subscriber = subscriber;
+      this.isBody = isBody;
+    }
+
+    @Override public void request(long n) {
+      if (n <= 0L) {
+        // Rule 3.9 applies whether or not the call has started, so stop it before it signals.
+        set(true);
+        cancelled = true;
+        call.cancel();
+        if (terminated.compareAndSet(false, true)) {
+          subscriber.onError(new IllegalArgumentException(
+              "Rule 3.9: n > 0 required but it was " + n));
+        }
+        return;
+      }
+      if (compareAndSet(false, true) && !cancelled) {
+        call.enqueue(this);
+      }
+    }
+
+    @Override public void cancel() {
+      cancelled = true;
+      call.cancel();
+    }
+
+    @Override public void onResponse(Call<R> call, Response<R> response) {
+      if (cancelled || !terminated.compareAndSet(false, true)) return;
+
+      if (!isBody) {
+        subscriber.onNext(response);
+      } else if (response.isSuccessful()) {
+        R body = response.body();
+        if (body != null) { // Reactive Streams forbids null elements. A 204 simply completes.
+          subscriber.onNext(body);
+        }
+      } else {
+        subscriber.onError(new HttpException(response));
+        return;
+      }
+      if (!cancelled) {
+        subscriber.onComplete();
+      }
+    }
+
+    @Override public void onFailure(Call<R> call, Throwable t) {
+      if (!cancelled && terminated.compareAndSet(false, true)) {
+        subscriber.onError(t);
+      }
+    }
+  }
+}
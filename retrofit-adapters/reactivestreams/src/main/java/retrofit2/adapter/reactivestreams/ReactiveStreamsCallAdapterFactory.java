@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.reactivestreams;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import javax.annotation.Nullable;
+import okio.ByteString;
+import org.reactivestreams.Publisher;
+import retrofit2.CallAdapter;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.Streaming;
+
+/**
+ * A {@linkplain CallAdapter.Factory call adapter} which creates Reactive Streams
+ * {@link Publisher publishers} without depending on any particular reactive library.
+ * <p>
+ * Adding this class to {@link Retrofit} allows you to return a {@link Publisher} from service
+ * methods and hand it to Reactor, Akka Streams, or any other Reactive Streams implementation.
+ * <pre><code>
+ * interface MyService {
+ *   &#64;GET("user/me")
+ *   Publisher&lt;User&gt; getUser()
+ * }
+ * </code></pre>
+ * There are three configurations supported for the {@code Publisher} type parameter:
+ * <ul>
+ * <li>Direct body (e.g., {@code Publisher<User>}) signals the deserialized body for 2XX
+ * responses, {@link HttpException} for non-2XX responses, and {@link IOException} for network
+ * errors.</li>
+ * <li>Response wrapped body (e.g., {@code Publisher<Response<User>>}) signals a {@link Response}
+ * object for all HTTP responses and {@link IOException} for network errors.</li>
+ * <li>Streamed body (a {@link Streaming @Streaming} method returning
+ * {@code Publisher<ByteString>}) signals the raw response body in chunks. Each requested element
+ * carries up to a {@linkplain #createWithBatchSize(long) batch} of bytes, so a fast consumer
+ * receives few, large signals while a slow one holds back the server.</li>
+ * </ul>
+ * Calls are made only once the subscriber signals demand, and cancelling a subscription cancels
+ * the call.
+ */
+public final class ReactiveStreamsCallAdapterFactory extends CallAdapter.Factory {
+  static final long DEFAULT_BATCH_SIZE = 65536L;
+
+  /** Returns an instance which streams bodies in batches of up to 64 KiB. */
+  public static ReactiveStreamsCallAdapterFactory create() {
+    return new ReactiveStreamsCallAdapterFactory(DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Returns an instance which streams bodies in batches of up to {@code batchSize} bytes per
+   * element.
+   */
+  public static ReactiveStreamsCallAdapterFactory createWithBatchSize(long batchSize) {
+    if (batchSize <= 0L) throw new IllegalArgumentException("batchSize <= 0: " + batchSize);
+    return new ReactiveStreamsCallAdapterFactory(batchSize);
+  }
+
+  private final long batchSize;
+
+  private ReactiveStreamsCallAdapterFactory(long batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  @Override public @Nullable CallAdapter<?, ?> get(
+      Type returnType, Annotation[] annotations, Retrofit retrofit) {
+    if (getRawType(returnType) != Publisher.class) {
+      return null;
+    }
+    if (!(returnType instanceof ParameterizedType)) {
+      throw new IllegalStateException("Publisher return type must be parameterized"
+          + " as Publisher<Foo> or Publisher<? extends Foo>");
+    }
+
+    Type publisherType = getParameterUpperBound(0, (ParameterizedType) returnType);
+    Class<?> rawPublisherType = getRawType(publisherType);
+    if (rawPublisherType == ByteString.class && isStreaming(annotations)) {
+      return new StreamingBodyCallAdapter(batchSize);
+    }
+    if (rawPublisherType == Response.class) {
+      if (!(publisherType instanceof ParameterizedType)) {
+        throw new IllegalStateException("Response must be parameterized"
+            + " as Response<Foo> or Response<? extends Foo>");
+      }
+      Type responseType = getParameterUpperBound(0, (ParameterizedType) publisherType);
+      return new PublisherCallAdapter<>(responseType, false);
+    }
+    return new PublisherCallAdapter<>(publisherType, true);
+  }
+
+  private static boolean isStreaming(Annotation[] annotations) {
+    for (Annotation annotation : annotations) {
+      if (annotation instanceof Streaming) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
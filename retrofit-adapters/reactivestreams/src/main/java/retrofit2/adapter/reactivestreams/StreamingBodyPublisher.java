@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.reactivestreams;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import retrofit2.Call;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * Signals the bytes of a streamed response body in batches of at most {@code batchSize} bytes.
+ * Nothing is read from the network until downstream requests an element, and at most one read is
+ * made per requested element. Each batch holds whatever that read returned, so bytes which trickle
+ * in, like server-sent events, are signaled as they arrive. Reads block the thread which calls
+ * {@link Subscription#request}.
+ */
+final class StreamingBodyPublisher implements Publisher<ByteString> {
+  private final Call<ResponseBody> originalCall;
+  private final long batchSize;
+
+  StreamingBodyPublisher(Call<ResponseBody> originalCall, long batchSize) {
+    this.originalCall = originalCall;
+    this.batchSize = batchSize;
+  }
+
+  @SuppressWarnings("ConstantConditions") // Guarding public API nullability.
+  @Override public void subscribe(Subscriber<? super ByteString> subscriber) {
+    if (subscriber == null) throw new NullPointerException("subscriber == null");
+    // Since Call is a one-shot type, clone it for each new subscriber.
+    Call<ResponseBody> call = originalCall.clone();
+    subscriber.onSubscribe(new BatchSubscription(call, subscriber, batchSize));
+  }
+
+  /** Tracks outstanding demand in its own value. */
+  private static final class BatchSubscription extends AtomicLong implements Subscription {
+    private final Call<ResponseBody> call;
+    private final Subscriber<? super ByteString> subscriber;
+    private final long batchSize;
+    private final Buffer buffer = new Buffer();
+    private volatile boolean cancelled;
+    /** A rule 3.9 violation waiting to be signaled by the drain loop. */
+    private volatile @Nullable Throwable invalidRequest;
+
+    // Only accessed by the draining thread.
+    private @Nullable ResponseBody body;
+    private boolean done;
+
+    BatchSubscription(Call<ResponseBody> call, Subscriber<? super ByteString> subscriber,
+        long batchSize) {
+      this.call = call;
+      this.subscriber = subscriber;
+      this.batchSize = batchSize;
+    }
+
+    @Override public void request(long n) {
+      if (n <= 0L) {
+        // Signals must not race with onNext, so the error is left for the drain loop. Cancelling
+        // the call aborts a read it is blocked in, and requesting one more element starts a loop
+        // if none is running.
+        invalidRequest = new IllegalArgumentException("Rule 3.9: n > 0 required but it was " + n);
+        call.cancel();
+        n = 1L;
+      }
+      for (;;) {
+        long current = get();
+        if (current == Long.MAX_VALUE) return;
+        long updated = current + n;
+        if (updated < 0L) updated = Long.MAX_VALUE;
+        if (compareAndSet(current, updated)) {
+          if (current == 0L) {
+            // No drain loop is running. Start one on this thread.
+            drain(updated);
+          }
+          return;
+        }
+      }
+    }
+
+    @Override public void cancel() {
+      cancelled = true;
+      // Aborts a read which is blocked in the drain loop.
+      call.cancel();
+    }
+
+    private void drain(long requested) {
+      long emitted = 0L;
+      for (;;) {
+        while (emitted != requested) {
+          if (cancelled || done) {
+            closeBody();
+            return;
+          }
+          Throwable invalidRequest = this.invalidRequest;
+          if (invalidRequest != null) {
+            done = true;
+            closeBody();
+            subscriber.onError(invalidRequest);
+            return;
+          }
+
+          ByteString batch;
+          try {
+            batch = next();
+          } catch (Throwable t) {
+            done = true;
+            closeBody();
+            if (!cancelled) {
+              // A read aborted for an invalid request reports the violation, not the abort.
+              Throwable invalid = this.invalidRequest;
+              subscriber.onError(invalid != null ? invalid : t);
+            }
+            return;
+          }
+
+          if (batch == null) {
+            done = true;
+            closeBody();
+            if (!cancelled) {
+              subscriber.onComplete();
+            }
+            return;
+          }
+
+          subscriber.onNext(batch);
+          emitted++;
+        }
+
+        requested = get();
+        if (emitted == requested) {
+          requested = addAndGet(-emitted);
+          if (requested == 0L) return;
+          emitted = 0L;
+        }
+      }
+    }
+
+    /** Returns the next batch of the body, or null if it has been exhausted. */
+    private @Nullable ByteString next() throws IOException {
+      ResponseBody body = this.body;
+      if (body == null) {
+        Response<ResponseBody> response = call.execute();
+        if (!response.isSuccessful()) {
+          throw new HttpException(response);
+        }
+        body = response.body();
+        if (body == null) return null; // 204 and 205 have no body.
+        this.body = body;
+      }
+
+      // A single read returns what is already buffered, up to the batch size, and only blocks when
+      // nothing is.
+      BufferedSource source = body.source();
+      if (source.read(buffer, batchSize) == -1L) {
+        return null;
+      }
+      return buffer.readByteString();
+    }
+
+    private void closeBody() {
+      ResponseBody body = this.body;
+      if (body != null) {
+        this.body = null;
+        body.close();
+      }
+    }
+  }
+}
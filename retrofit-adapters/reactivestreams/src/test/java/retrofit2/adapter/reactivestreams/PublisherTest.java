@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.reactivestreams;
+
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import okio.ByteString;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+import retrofit2.http.Streaming;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class PublisherTest {
+  private static final long BATCH_SIZE = 16L;
+
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  interface Service {
+    @GET("/") Publisher<String> body();
+    @GET("/") Publisher<Response<String>> response();
+    @Streaming @GET("/") Publisher<ByteString> bytes();
+  }
+
+  private Service service;
+
+  @Before public void setUp() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new StringConverterFactory())
+        .addCallAdapterFactory(ReactiveStreamsCallAdapterFactory.createWithBatchSize(BATCH_SIZE))
+        .build();
+    service = retrofit.create(Service.class);
+  }
+
+  @Test public void bodySuccess200() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    RecordingSubscriber<String> subscriber = new RecordingSubscriber<>(1);
+    service.body().subscribe(subscriber);
+    subscriber.awaitTerminalEvent();
+    assertThat(subscriber.values()).containsExactly("Hi");
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test public void bodySuccess404() throws InterruptedException {
+    server.enqueue(new MockResponse().setResponseCode(404));
+
+    RecordingSubscriber<String> subscriber = new RecordingSubscriber<>(1);
+    service.body().subscribe(subscriber);
+    subscriber.awaitTerminalEvent();
+    assertThat(subscriber.values()).isEmpty();
+    assertThat(subscriber.error).isInstanceOf(HttpException.class)
+        .hasMessage("HTTP 404 Client Error");
+  }
+
+  @Test public void responseSuccess404() throws InterruptedException {
+    server.enqueue(new MockResponse().setResponseCode(404).setBody("Hi"));
+
+    RecordingSubscriber<Response<String>> subscriber = new RecordingSubscriber<>(1);
+    service.response().subscribe(subscriber);
+    subscriber.awaitTerminalEvent();
+    assertThat(subscriber.values()).hasSize(1);
+    assertThat(subscriber.values().get(0).code()).isEqualTo(404);
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test public void nothingIsRequestedWithoutDemand() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    RecordingSubscriber<String> subscriber = new RecordingSubscriber<>(0);
+    service.body().subscribe(subscriber);
+    assertThat(server.getRequestCount()).isEqualTo(0);
+
+    subscriber.request(1);
+    subscriber.awaitTerminalEvent();
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    assertThat(subscriber.values()).containsExactly("Hi");
+  }
+
+  @Test public void streamingBodyIsBatched() throws InterruptedException {
+    Buffer body = new Buffer();
+    for (int i = 0; i < 3 * BATCH_SIZE + 1; i++) {
+      body.writeByte('a');
+    }
+    ByteString expected = body.snapshot();
+    server.enqueue(new MockResponse().setBody(body));
+
+    RecordingSubscriber<ByteString> subscriber = new RecordingSubscriber<>(0);
+    service.bytes().subscribe(subscriber);
+    assertThat(server.getRequestCount()).isEqualTo(0);
+
+    subscriber.request(Long.MAX_VALUE);
+    subscriber.awaitTerminalEvent();
+    assertThat(subscriber.values()).hasSize(4);
+    Buffer received = new Buffer();
+    for (ByteString batch : subscriber.values()) {
+      assertThat((long) batch.size()).isLessThanOrEqualTo(BATCH_SIZE);
+      received.write(batch);
+    }
+    assertThat(received.readByteString()).isEqualTo(expected);
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test public void streamingBodySignalsBytesAsTheyArrive() {
+    server.enqueue(new MockResponse()
+        .setBody("Hello")
+        .throttleBody(1, 200, TimeUnit.MILLISECONDS));
+
+    RecordingSubscriber<ByteString> subscriber = new RecordingSubscriber<>(0);
+    service.bytes().subscribe(subscriber);
+
+    // Returns with the first bytes rather than waiting for a full batch.
+    subscriber.request(1);
+    assertThat(subscriber.values()).hasSize(1);
+    assertThat(subscriber.values().get(0).size()).isLessThan(5);
+  }
+
+  @Test public void streamingInvalidRequestSignalsError() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    RecordingSubscriber<ByteString> subscriber = new RecordingSubscriber<>(0);
+    service.bytes().subscribe(subscriber);
+    subscriber.request(0);
+    subscriber.awaitTerminalEvent();
+    assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Rule 3.9: n > 0 required but it was 0");
+    assertThat(subscriber.values()).isEmpty();
+  }
+
+  @Test public void invalidRequestAfterCallStartedSignalsError() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hi").setHeadersDelay(1, TimeUnit.SECONDS));
+
+    RecordingSubscriber<String> subscriber = new RecordingSubscriber<>(1);
+    service.body().subscribe(subscriber);
+    subscriber.request(-1);
+    subscriber.awaitTerminalEvent();
+    assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Rule 3.9: n > 0 required but it was -1");
+    assertThat(subscriber.values()).isEmpty();
+  }
+
+  @Test public void invalidBatchSizeThrows() {
+    try {
+      ReactiveStreamsCallAdapterFactory.createWithBatchSize(0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("batchSize <= 0: 0");
+    }
+  }
+}
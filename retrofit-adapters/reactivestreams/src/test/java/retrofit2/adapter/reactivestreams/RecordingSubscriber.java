@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.reactivestreams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** A subscriber which records its events and waits up to 10 seconds for termination. */
+final class RecordingSubscriber<T> implements Subscriber<T> {
+  private final long initialRequest;
+  private final CountDownLatch terminated = new CountDownLatch(1);
+  final List<T> values = new ArrayList<>();
+  volatile Throwable error;
+  volatile boolean completed;
+  private Subscription subscription;
+
+  RecordingSubscriber(long initialRequest) {
+    this.initialRequest = initialRequest;
+  }
+
+  @Override public void onSubscribe(Subscription subscription) {
+    this.subscription = subscription;
+    if (initialRequest > 0) {
+      subscription.request(initialRequest);
+    }
+  }
+
+  @Override public synchronized void onNext(T value) {
+    values.add(value);
+  }
+
+  @Override public void onError(Throwable throwable) {
+    error = throwable;
+    terminated.countDown();
+  }
+
+  @Override public void onComplete() {
+    completed = true;
+    terminated.countDown();
+  }
+
+  void request(long n) {
+    subscription.request(n);
+  }
+
+  void awaitTerminalEvent() throws InterruptedException {
+    assertThat(terminated.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  synchronized List<T> values() {
+    return new ArrayList<>(values);
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.rxjava2;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableObserver;
+import io.reactivex.exceptions.CompositeException;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.plugins.RxJavaPlugins;
+import retrofit2.Call;
+
+/**
+ * A {@link Completable} which makes a call and signals its outcome without intermediate
+ * operators. Successful response bodies are discarded.
+ */
+final class CallCompletable<R> extends Completable {
+  private final Call<R> originalCall;
+  private final boolean isAsync;
+
+  CallCompletable(Call<R> originalCall, boolean isAsync) {
+    this.originalCall = originalCall;
+    this.isAsync = isAsync;
+  }
+
+  @Override protected void subscribeActual(CompletableObserver observer) {
+    // Since Call is a one-shot type, clone it for each new observer.
+    Call<R> call = originalCall.clone();
+    CompletableCallObserver<R> callObserver = new CompletableCallObserver<>(call, observer);
+    observer.onSubscribe(callObserver);
+    callObserver.start(isAsync);
+  }
+
+  private static final class CompletableCallObserver<R> extends CallObserver<R> {
+    private final CompletableObserver observer;
+
+    CompletableCallObserver(Call<R> call, CompletableObserver observer) {
+      super(call, false, true);
+      this.observer = observer;
+    }
+
+    @Override void onValue(Object value) {
+      onEmpty();
+    }
+
+    @Override void onEmpty() {
+      try {
+        observer.onComplete();
+      } catch (Throwable t) {
+        Exceptions.throwIfFatal(t);
+        RxJavaPlugins.onError(t);
+      }
+    }
+
+    @Override void onError(Throwable t) {
+      try {
+        observer.onError(t);
+      } catch (Throwable inner) {
+        Exceptions.throwIfFatal(inner);
+        RxJavaPlugins.onError(new CompositeException(t, inner));
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.rxjava2;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.exceptions.Exceptions;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Connects a call directly to a single-valued observer. The response is mapped to the value which
+ * would otherwise have been produced by {@link BodyObservable} or {@link ResultObservable}, so the
+ * fused {@code Single}, {@code Maybe}, and {@code Completable} types need no intermediate
+ * observers.
+ */
+abstract class CallObserver<R> implements Disposable, Callback<R> {
+  private final Call<R> call;
+  private final boolean isResult;
+  private final boolean isBody;
+  private volatile boolean disposed;
+
+  CallObserver(Call<R> call, boolean isResult, boolean isBody) {
+    this.call = call;
+    this.isResult = isResult;
+    this.isBody = isBody;
+  }
+
+  /** Make the call, delivering its outcome on the calling thread unless {@code isAsync}. */
+  final void start(boolean isAsync) {
+    if (disposed) return;
+
+    if (isAsync) {
+      call.enqueue(this);
+      return;
+    }
+
+    Response<R> response;
+    try {
+      response = call.execute();
+    } catch (Throwable t) {
+      Exceptions.throwIfFatal(t);
+      onFailure(call, t);
+      return;
+    }
+    onResponse(call, response);
+  }
+
+  @Override public final void onResponse(Call<R> call, Response<R> response) {
+    if (disposed) return;
+
+    if (isResult) {
+      onValue(Result.response(response));
+    } else if (!isBody) {
+      onValue(response);
+    } else if (response.isSuccessful()) {
+      R body = response.body();
+      if (body != null) {
+        onValue(body);
+      } else {
+        onEmpty();
+      }
+    } else {
+      onError(new HttpException(response));
+    }
+  }
+
+  @Override public final void onFailure(Call<R> call, Throwable t) {
+    if (disposed) return;
+
+    if (isResult) {
+      onValue(Result.<R>error(t));
+    } else {
+      onError(t);
+    }
+  }
+
+  /** Deliver the single value. Failures thrown by downstream must not escape. */
+  abstract void onValue(Object value);
+
+  /** Deliver a successful response which had no body. */
+  abstract void onEmpty();
+
+  /** Deliver an error. Failures thrown by downstream must not escape. */
+  abstract void onError(Throwable t);
+
+  @Override public final void dispose() {
+    disposed = true;
+    call.cancel();
+  }
+
+  @Override public final boolean isDisposed() {
+    return disposed;
+  }
+}
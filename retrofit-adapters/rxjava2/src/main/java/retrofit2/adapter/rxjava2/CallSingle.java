@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.rxjava2;
+
+import io.reactivex.Single;
+import io.reactivex.SingleObserver;
+import io.reactivex.exceptions.CompositeException;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.plugins.RxJavaPlugins;
+import java.util.NoSuchElementException;
+import retrofit2.Call;
+
+/** A {@link Single} which makes a call and signals its value without intermediate operators. */
+final class CallSingle<R> extends Single<Object> {
+  private final Call<R> originalCall;
+  private final boolean isAsync;
+  private final boolean isResult;
+  private final boolean isBody;
+
+  CallSingle(Call<R> originalCall, boolean isAsync, boolean isResult, boolean isBody) {
+    this.originalCall = originalCall;
+    this.isAsync = isAsync;
+    this.isResult = isResult;
+    this.isBody = isBody;
+  }
+
+  @Override protected void subscribeActual(SingleObserver<? super Object> observer) {
+    // Since Call is a one-shot type, clone it for each new observer.
+    Call<R> call = originalCall.clone();
+    SingleCallObserver<R> callObserver = new SingleCallObserver<>(call, isResult, isBody, observer);
+    observer.onSubscribe(callObserver);
+    callObserver.start(isAsync);
+  }
+
+  private static final class SingleCallObserver<R> extends CallObserver<R> {
+    private final SingleObserver<? super Object> observer;
+
+    SingleCallObserver(Call<R> call, boolean isResult, boolean isBody,
+        SingleObserver<? super Object> observer) {
+      super(call, isResult, isBody);
+      this.observer = observer;
+    }
+
+    @Override void onValue(Object value) {
+      try {
+        observer.onSuccess(value);
+      } catch (Throwable t) {
+        Exceptions.throwIfFatal(t);
+        RxJavaPlugins.onError(t);
+      }
+    }
+
+    @Override void onEmpty() {
+      // Matches singleOrError() on an Observable which emitted a null body.
+      onError(new NoSuchElementException());
+    }
+
+    @Override void onError(Throwable t) {
+      try {
+        observer.onError(t);
+      } catch (Throwable inner) {
+        Exceptions.throwIfFatal(inner);
+        RxJavaPlugins.onError(new CompositeException(t, inner));
+      }
+    }
+  }
+}
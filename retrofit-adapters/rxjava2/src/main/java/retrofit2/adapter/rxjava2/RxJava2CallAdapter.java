@@ -16,8 +16,11 @@
 package retrofit2.adapter.rxjava2;
 
 import io.reactivex.BackpressureStrategy;
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
+import io.reactivex.Single;
 import io.reactivex.plugins.RxJavaPlugins;
 import java.lang.reflect.Type;
 import javax.annotation.Nullable;
@@ -55,6 +58,29 @@ final class RxJava2CallAdapter<R> implements CallAdapter<R, Object> {
   }
 
   @Override public Object adapt(Call<R> call) {
+    // Single-valued types go straight from the call to the observer.
+    if (isSingle) {
+      Single<Object> single = new CallSingle<>(call, isAsync, isResult, isBody);
+      if (scheduler != null) {
+        single = single.subscribeOn(scheduler);
+      }
+      return RxJavaPlugins.onAssembly(single);
+    }
+    if (isMaybe) {
+      Maybe<Object> maybe = new CallMaybe<>(call, isAsync, isResult, isBody);
+      if (scheduler != null) {
+        maybe = maybe.subscribeOn(scheduler);
+      }
+      return RxJavaPlugins.onAssembly(maybe);
+    }
+    if (isCompletable) {
+      Completable completable = new CallCompletable<>(call, isAsync);
+      if (scheduler != null) {
+        completable = completable.subscribeOn(scheduler);
+      }
+      return RxJavaPlugins.onAssembly(completable);
+    }
+
     Observable<Response<R>> responseObservable = isAsync
         ? new CallEnqueueObservable<>(call)
         : new CallExecuteObservable<>(call);
@@ -75,15 +101,6 @@ final class RxJava2CallAdapter<R> implements CallAdapter<R, Object> {
     if (isFlowable) {
       return observable.toFlowable(BackpressureStrategy.LATEST);
     }
-    if (isSingle) {
-      return observable.singleOrError();
-    }
-    if (isMaybe) {
-      return observable.singleElement();
-    }
-    if (isCompletable) {
-      return observable.ignoreElements();
-    }
     return RxJavaPlugins.onAssembly(observable);
   }
 }
@@ -26,10 +26,12 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import javax.annotation.Nullable;
+import okio.ByteString;
 import retrofit2.CallAdapter;
 import retrofit2.HttpException;
 import retrofit2.Response;
 import retrofit2.Retrofit;
+import retrofit2.http.Streaming;
 
 /**
  * A {@linkplain CallAdapter.Factory call adapter} which uses RxJava 2 for creating observables.
@@ -54,6 +56,10 @@ import retrofit2.Retrofit;
  * <li>Result wrapped body (e.g., {@code Observable<Result<User>>}) calls {@code onNext} with a
  * {@link Result} object for all HTTP responses and errors.</li>
  * </ul>
+ * A {@link Streaming @Streaming} method may also return {@code Flowable<ByteString>}. It emits the
+ * raw response body in chunks as they are requested downstream, so large bodies never need to be
+ * held in memory. Non-2XX responses are signaled as {@link HttpException} and cancelling the
+ * subscription cancels the call. Chunks are read on the thread which requests them.
  */
 public final class RxJava2CallAdapterFactory extends CallAdapter.Factory {
   /**
@@ -121,6 +127,9 @@ public final class RxJava2CallAdapterFactory extends CallAdapter.Factory {
 
     Type observableType = getParameterUpperBound(0, (ParameterizedType) returnType);
     Class<?> rawObservableType = getRawType(observableType);
+    if (isFlowable && rawObservableType == ByteString.class && isStreaming(annotations)) {
+      return new StreamingBodyCallAdapter(scheduler);
+    }
     if (rawObservableType == Response.class) {
       if (!(observableType instanceof ParameterizedType)) {
         throw new IllegalStateException("Response must be parameterized"
@@ -142,4 +151,13 @@ public final class RxJava2CallAdapterFactory extends CallAdapter.Factory {
     return new RxJava2CallAdapter(responseType, scheduler, isAsync, isResult, isBody, isFlowable,
         isSingle, isMaybe, false);
   }
+
+  private static boolean isStreaming(Annotation[] annotations) {
+    for (Annotation annotation : annotations) {
+      if (annotation instanceof Streaming) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
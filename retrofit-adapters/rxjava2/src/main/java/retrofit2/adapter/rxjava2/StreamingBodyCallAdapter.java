@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.rxjava2;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.plugins.RxJavaPlugins;
+import java.lang.reflect.Type;
+import javax.annotation.Nullable;
+import okhttp3.ResponseBody;
+import okio.ByteString;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+
+final class StreamingBodyCallAdapter implements CallAdapter<ResponseBody, Object> {
+  private final @Nullable Scheduler scheduler;
+
+  StreamingBodyCallAdapter(@Nullable Scheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  @Override public Type responseType() {
+    // Combined with @Streaming this makes Retrofit hand over the body without buffering it.
+    return ResponseBody.class;
+  }
+
+  @Override public Object adapt(Call<ResponseBody> call) {
+    Flowable<ByteString> flowable = new StreamingBodyFlowable(call);
+    if (scheduler != null) {
+      flowable = flowable.subscribeOn(scheduler);
+    }
+    return RxJavaPlugins.onAssembly(flowable);
+  }
+}
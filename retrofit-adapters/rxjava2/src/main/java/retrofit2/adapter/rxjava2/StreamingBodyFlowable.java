@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.rxjava2;
+
+import io.reactivex.Flowable;
+import io.reactivex.exceptions.CompositeException;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.plugins.RxJavaPlugins;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Emits the bytes of a streamed response body in chunks of at most {@link #CHUNK_SIZE} bytes.
+ * Nothing is read from the network until downstream requests an item, and at most one chunk is
+ * read per requested item, so a slow consumer holds back the server rather than filling memory.
+ * Reads block the thread which calls {@link Subscription#request}.
+ */
+final class StreamingBodyFlowable extends Flowable<ByteString> {
+  /** The size of an Okio segment, which lets each read fill one segment without splitting it. */
+  static final long CHUNK_SIZE = 8192L;
+
+  private final Call<ResponseBody> originalCall;
+
+  StreamingBodyFlowable(Call<ResponseBody> originalCall) {
+    this.originalCall = originalCall;
+  }
+
+  @Override protected void subscribeActual(Subscriber<? super ByteString> subscriber) {
+    // Since Call is a one-shot type, clone it for each new subscriber.
+    Call<ResponseBody> call = originalCall.clone();
+    subscriber.onSubscribe(new ChunkSubscription(call, subscriber));
+  }
+
+  /** Tracks outstanding demand in its own value. */
+  private static final class ChunkSubscription extends AtomicLong implements Subscription {
+    private final Call<ResponseBody> call;
+    private final Subscriber<? super ByteString> subscriber;
+    private final Buffer buffer = new Buffer();
+    private volatile boolean cancelled;
+    /** A rule 3.9 violation waiting to be signaled by the drain loop. */
+    private volatile @Nullable Throwable invalidRequest;
+
+    // Only accessed by the draining thread.
+    private @Nullable ResponseBody body;
+    private boolean done;
+
+    ChunkSubscription(Call<ResponseBody> call, Subscriber<? super ByteString> subscriber) {
+      this.call = call;
+      this.subscriber = subscriber;
+    }
+
+    @Override public void request(long n) {
+      if (n <= 0L) {
+        // Signals must not race with onNext, so the error is left for the drain loop. Cancelling
+        // the call aborts a read it is blocked in, and requesting one more item starts a loop if
+        // none is running.
+        invalidRequest = new IllegalArgumentException("n > 0 required but it was " + n);
+        call.cancel();
+        n = 1L;
+      }
+      for (;;) {
+        long current = get();
+        if (current == Long.MAX_VALUE) return;
+        long updated = current + n;
+        if (updated < 0L) updated = Long.MAX_VALUE;
+        if (compareAndSet(current, updated)) {
+          if (current == 0L) {
+            // No drain loop is running. Start one on this thread.
+            drain(updated);
+          }
+          return;
+        }
+      }
+    }
+
+    @Override public void cancel() {
+      cancelled = true;
+      // Aborts a read which is blocked in the drain loop.
+      call.cancel();
+    }
+
+    private void drain(long requested) {
+      long emitted = 0L;
+      for (;;) {
+        while (emitted != requested) {
+          if (cancelled || done) {
+            closeBody();
+            return;
+          }
+          Throwable invalidRequest = this.invalidRequest;
+          if (invalidRequest != null) {
+            done = true;
+            closeBody();
+            signalError(invalidRequest);
+            return;
+          }
+
+          ByteString chunk;
+          try {
+            chunk = next();
+          } catch (Throwable t) {
+            Exceptions.throwIfFatal(t);
+            done = true;
+            closeBody();
+            if (!cancelled) {
+              // A read aborted for an invalid request reports the violation, not the abort.
+              Throwable invalid = this.invalidRequest;
+              signalError(invalid != null ? invalid : t);
+            }
+            return;
+          }
+
+          if (chunk == null) {
+            done = true;
+            closeBody();
+            if (!cancelled) {
+              subscriber.onComplete();
+            }
+            return;
+          }
+
+          subscriber.onNext(chunk);
+          emitted++;
+        }
+
+        requested = get();
+        if (emitted == requested) {
+          requested = addAndGet(-emitted);
+          if (requested == 0L) return;
+          emitted = 0L;
+        }
+      }
+    }
+
+    private void signalError(Throwable t) {
+      try {
+        subscriber.onError(t);
+      } catch (Throwable inner) {
+        Exceptions.throwIfFatal(inner);
+        RxJavaPlugins.onError(new CompositeException(t, inner));
+      }
+    }
+
+    /** Returns the next chunk of the body, or null if it has been exhausted. */
+    private @Nullable ByteString next() throws IOException {
+      ResponseBody body = this.body;
+      if (body == null) {
+        Response<ResponseBody> response = call.execute();
+        if (!response.isSuccessful()) {
+          throw new HttpException(response);
+        }
+        body = response.body();
+        if (body == null) return null; // 204 and 205 have no body.
+        this.body = body;
+      }
+
+      BufferedSource source = body.source();
+      if (source.read(buffer, CHUNK_SIZE) == -1L) {
+        return null;
+      }
+      return buffer.readByteString();
+    }
+
+    private void closeBody() {
+      ResponseBody body = this.body;
+      if (body != null) {
+        this.body = null;
+        body.close();
+      }
+    }
+  }
+}
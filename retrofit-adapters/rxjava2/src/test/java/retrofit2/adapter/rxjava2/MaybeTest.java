@@ -75,6 +75,14 @@ public final class MaybeTest {
     observer.assertError(IOException.class);
   }
 
+  @Test public void bodySuccess204() {
+    server.enqueue(new MockResponse().setResponseCode(204));
+
+    RecordingMaybeObserver<String> observer = observerRule.create();
+    service.body().subscribe(observer);
+    observer.assertComplete();
+  }
+
   @Test public void responseSuccess200() {
     server.enqueue(new MockResponse().setBody("Hi"));
 
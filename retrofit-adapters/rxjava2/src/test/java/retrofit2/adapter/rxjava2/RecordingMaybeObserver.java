@@ -103,6 +103,14 @@ final class RecordingMaybeObserver<T> implements MaybeObserver<T> {
     assertNoEvents();
   }
 
+  public void assertComplete() {
+    Notification<T> notification = takeNotification();
+    assertThat(notification.isOnComplete())
+        .as("Expected onComplete event but was " + notification)
+        .isTrue();
+    assertNoEvents();
+  }
+
   public void assertNoEvents() {
     assertThat(events).as("Unconsumed events found!").isEmpty();
   }
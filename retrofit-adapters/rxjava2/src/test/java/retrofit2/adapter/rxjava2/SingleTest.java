@@ -17,6 +17,7 @@ package retrofit2.adapter.rxjava2;
 
 import io.reactivex.Single;
 import java.io.IOException;
+import java.util.NoSuchElementException;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.Before;
@@ -75,6 +76,14 @@ public final class SingleTest {
     observer.assertError(IOException.class);
   }
 
+  @Test public void bodySuccess204() {
+    server.enqueue(new MockResponse().setResponseCode(204));
+
+    RecordingSingleObserver<String> observer = observerRule.create();
+    service.body().subscribe(observer);
+    observer.assertError(NoSuchElementException.class);
+  }
+
   @Test public void responseSuccess200() {
     server.enqueue(new MockResponse().setBody("Hi"));
 
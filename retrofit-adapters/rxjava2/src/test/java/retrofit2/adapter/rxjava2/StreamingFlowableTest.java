@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.rxjava2;
+
+import io.reactivex.Flowable;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import okio.ByteString;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+import retrofit2.http.Streaming;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class StreamingFlowableTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+  @Rule public final RecordingSubscriber.Rule subscriberRule = new RecordingSubscriber.Rule();
+
+  interface Service {
+    @Streaming @GET("/") Flowable<ByteString> bytes();
+  }
+
+  private Service service;
+
+  @Before public void setUp() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+        .build();
+    service = retrofit.create(Service.class);
+  }
+
+  @Test public void smallBodyIsOneChunk() {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    RecordingSubscriber<ByteString> subscriber = subscriberRule.create();
+    service.bytes().subscribe(subscriber);
+    subscriber.assertValue(ByteString.encodeUtf8("Hi")).assertComplete();
+  }
+
+  @Test public void largeBodyIsChunked() {
+    Buffer body = new Buffer();
+    for (int i = 0; i < 3 * StreamingBodyFlowable.CHUNK_SIZE; i++) {
+      body.writeByte('a');
+    }
+    ByteString expected = body.snapshot();
+    server.enqueue(new MockResponse().setBody(body));
+
+    Buffer received = new Buffer();
+    for (ByteString chunk : service.bytes().blockingIterable()) {
+      assertThat((long) chunk.size()).isLessThanOrEqualTo(StreamingBodyFlowable.CHUNK_SIZE);
+      received.write(chunk);
+    }
+    assertThat(received.readByteString()).isEqualTo(expected);
+  }
+
+  @Test public void nothingIsRequestedWithoutDemand() {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    RecordingSubscriber<ByteString> subscriber = subscriberRule.createWithInitialRequest(0);
+    service.bytes().subscribe(subscriber);
+    assertThat(server.getRequestCount()).isEqualTo(0);
+    subscriber.assertNoEvents();
+
+    subscriber.request(1);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    subscriber.assertValue(ByteString.encodeUtf8("Hi"));
+    subscriber.assertNoEvents();
+
+    subscriber.request(1);
+    subscriber.assertComplete();
+  }
+
+  @Test public void httpErrorIsSignaled() {
+    server.enqueue(new MockResponse().setResponseCode(404));
+
+    RecordingSubscriber<ByteString> subscriber = subscriberRule.create();
+    service.bytes().subscribe(subscriber);
+    subscriber.assertError(HttpException.class, "HTTP 404 Client Error");
+  }
+
+  @Test public void bytesAreEmittedAsTheyArrive() {
+    server.enqueue(new MockResponse()
+        .setBody("Hello")
+        .throttleBody(1, 200, TimeUnit.MILLISECONDS));
+
+    RecordingSubscriber<ByteString> subscriber = subscriberRule.createWithInitialRequest(0);
+    service.bytes().subscribe(subscriber);
+
+    // Returns with the first bytes rather than waiting for a full chunk.
+    subscriber.request(1);
+    assertThat(subscriber.takeValue().size()).isLessThan(5);
+    subscriber.assertNoEvents();
+  }
+
+  @Test public void invalidRequestSignalsError() {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    RecordingSubscriber<ByteString> subscriber = subscriberRule.createWithInitialRequest(0);
+    service.bytes().subscribe(subscriber);
+    subscriber.request(0);
+    subscriber.assertError(IllegalArgumentException.class, "n > 0 required but it was 0");
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.converter.protobuf;
+
+import java.io.IOException;
+
+/**
+ * Thrown from the {@link java.util.Iterator Iterator} of a length-delimited response body when
+ * reading or decoding the next message fails. The {@linkplain #getCause() cause} is the
+ * {@link IOException}, which iterators cannot throw directly.
+ */
+public final class DelimitedReadException extends RuntimeException {
+  DelimitedReadException(IOException cause) {
+    super(cause);
+  }
+
+  @Override public synchronized IOException getCause() {
+    return (IOException) super.getCause();
+  }
+}
@@ -22,7 +22,9 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Iterator;
 import javax.annotation.Nullable;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
@@ -34,6 +36,15 @@ import retrofit2.Retrofit;
  * <p>
  * This converter only applies for types which extend from {@link MessageLite} (or one of its
  * subclasses).
+ * <p>
+ * A body of length-delimited messages, as written by {@link MessageLite#writeDelimitedTo}, can be
+ * streamed by declaring an {@link Iterator} of messages as the response type or an
+ * {@link Iterable} of messages as a {@link retrofit2.http.Body @Body} parameter. Only the
+ * {@code Iterable} type itself is streamed; a {@code List} or other collection of messages is left
+ * to later converter factories. Messages are read and written one at a time so the body is never
+ * held in memory. Read the returned iterator to its end or close it (it implements
+ * {@link java.io.Closeable}) to release the connection. A failure reading the next message is
+ * thrown as a {@link DelimitedReadException}.
  */
 public final class ProtoConverterFactory extends Converter.Factory {
   public static ProtoConverterFactory create() {
@@ -53,6 +64,14 @@ public final class ProtoConverterFactory extends Converter.Factory {
 
   @Override public @Nullable Converter<ResponseBody, ?> responseBodyConverter(
       Type type, Annotation[] annotations, Retrofit retrofit) {
+    if (getRawType(type) == Iterator.class) {
+      Class<?> c = messageType(type);
+      if (c == null) {
+        return null;
+      }
+      return new ProtoDelimitedResponseBodyConverter<>(parser(c), registry);
+    }
+
     if (!(type instanceof Class<?>)) {
       return null;
     }
@@ -60,7 +79,49 @@ public final class ProtoConverterFactory extends Converter.Factory {
     if (!MessageLite.class.isAssignableFrom(c)) {
       return null;
     }
+    return new ProtoResponseBodyConverter<>(parser(c), registry);
+  }
+
+  @Override public @Nullable Converter<?, RequestBody> requestBodyConverter(Type type,
+      Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+    // Only Iterable itself, so that existing List or Set parameters keep their encoding.
+    if (getRawType(type) == Iterable.class) {
+      if (messageType(type) == null) {
+        return null;
+      }
+      return new ProtoDelimitedRequestBodyConverter<>();
+    }
+
+    if (!(type instanceof Class<?>)) {
+      return null;
+    }
+    if (!MessageLite.class.isAssignableFrom((Class<?>) type)) {
+      return null;
+    }
+    return new ProtoRequestBodyConverter<>();
+  }
+
+  /**
+   * Returns the message class of a single-parameter container type like {@code Iterator<Phone>},
+   * or null if its element type is not a message.
+   */
+  private static @Nullable Class<?> messageType(Type type) {
+    if (!(type instanceof ParameterizedType)) {
+      return null;
+    }
+    Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
+    if (typeArguments.length != 1) {
+      return null;
+    }
+    Type elementType = getParameterUpperBound(0, (ParameterizedType) type);
+    if (!(elementType instanceof Class<?>)) {
+      return null;
+    }
+    Class<?> c = (Class<?>) elementType;
+    return MessageLite.class.isAssignableFrom(c) ? c : null;
+  }
 
+  private static Parser<MessageLite> parser(Class<?> c) {
     Parser<MessageLite> parser;
     try {
       Method method = c.getDeclaredMethod("parser");
@@ -80,17 +141,6 @@ public final class ProtoConverterFactory extends Converter.Factory {
             + " had no parser() method or PARSER field.");
       }
     }
-    return new ProtoResponseBodyConverter<>(parser, registry);
-  }
-
-  @Override public @Nullable Converter<?, RequestBody> requestBodyConverter(Type type,
-      Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
-    if (!(type instanceof Class<?>)) {
-      return null;
-    }
-    if (!MessageLite.class.isAssignableFrom((Class<?>) type)) {
-      return null;
-    }
-    return new ProtoRequestBodyConverter<>();
+    return parser;
   }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.converter.protobuf;
+
+import com.google.protobuf.MessageLite;
+import java.io.IOException;
+import java.io.OutputStream;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import retrofit2.Converter;
+
+/**
+ * Encodes each message of an {@link Iterable} length-delimited, as read by
+ * {@link com.google.protobuf.Parser#parseDelimitedFrom}. Messages are written to the sink as they
+ * are iterated so the body is never held in memory.
+ */
+final class ProtoDelimitedRequestBodyConverter<T extends MessageLite>
+    implements Converter<Iterable<T>, RequestBody> {
+  private static final MediaType MEDIA_TYPE = MediaType.get("application/x-protobuf");
+
+  @Override public RequestBody convert(final Iterable<T> value) {
+    return new RequestBody() {
+      @Override public MediaType contentType() {
+        return MEDIA_TYPE;
+      }
+
+      @Override public void writeTo(BufferedSink sink) throws IOException {
+        OutputStream output = sink.outputStream();
+        for (T message : value) {
+          message.writeDelimitedTo(output);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.converter.protobuf;
+
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+
+/**
+ * Decodes a body of length-delimited messages, as written by
+ * {@link MessageLite#writeDelimitedTo}, one message at a time.
+ */
+final class ProtoDelimitedResponseBodyConverter<T extends MessageLite>
+    implements Converter<ResponseBody, Iterator<T>> {
+  private final Parser<T> parser;
+  private final @Nullable ExtensionRegistryLite registry;
+
+  ProtoDelimitedResponseBodyConverter(Parser<T> parser, @Nullable ExtensionRegistryLite registry) {
+    this.parser = parser;
+    this.registry = registry;
+  }
+
+  @Override public Iterator<T> convert(ResponseBody value) {
+    return new DelimitedIterator<>(value, parser, registry);
+  }
+
+  /**
+   * Reads the next message from the body when it is asked for. The body is closed once it is
+   * exhausted or fails, or when the iterator is closed.
+   */
+  private static final class DelimitedIterator<T extends MessageLite>
+      implements Iterator<T>, Closeable {
+    private final ResponseBody body;
+    private final InputStream stream;
+    private final Parser<T> parser;
+    private final @Nullable ExtensionRegistryLite registry;
+    private @Nullable T next;
+    private boolean done;
+
+    DelimitedIterator(ResponseBody body, Parser<T> parser,
+        @Nullable ExtensionRegistryLite registry) {
+      this.body = body;
+      this.stream = body.byteStream();
+      this.parser = parser;
+      this.registry = registry;
+    }
+
+    @Override public boolean hasNext() {
+      if (next != null) return true;
+      if (done) return false;
+
+      try {
+        next = parser.parseDelimitedFrom(stream, registry);
+      } catch (IOException e) {
+        close();
+        // Iterator cannot throw checked exceptions. This is a data mismatch or a failed read.
+        throw new DelimitedReadException(e);
+      }
+      if (next == null) {
+        close();
+        return false;
+      }
+      return true;
+    }
+
+    @Override public T next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      T result = next;
+      next = null;
+      return result;
+    }
+
+    @Override public void remove() {
+      throw new UnsupportedOperationException("remove");
+    }
+
+    @Override public void close() {
+      done = true;
+      body.close();
+    }
+  }
+}
@@ -15,17 +15,48 @@
  */
 package retrofit2.converter.protobuf;
 
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.MessageLite;
 import java.io.IOException;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
+import okio.BufferedSink;
 import retrofit2.Converter;
 
 final class ProtoRequestBodyConverter<T extends MessageLite> implements Converter<T, RequestBody> {
   private static final MediaType MEDIA_TYPE = MediaType.get("application/x-protobuf");
 
+  /** The largest buffer given to {@link CodedOutputStream}, matching its own default. */
+  private static final int MAX_BUFFER_SIZE = 4096;
+
   @Override public RequestBody convert(T value) throws IOException {
-    byte[] bytes = value.toByteArray();
-    return RequestBody.create(MEDIA_TYPE, bytes);
+    return new ProtoRequestBody(value);
+  }
+
+  /** Encodes the message directly into the sink rather than through an intermediate array. */
+  private static final class ProtoRequestBody extends RequestBody {
+    private final MessageLite message;
+    private final int serializedSize;
+
+    ProtoRequestBody(MessageLite message) {
+      this.message = message;
+      this.serializedSize = message.getSerializedSize();
+    }
+
+    @Override public MediaType contentType() {
+      return MEDIA_TYPE;
+    }
+
+    @Override public long contentLength() {
+      return serializedSize;
+    }
+
+    @Override public void writeTo(BufferedSink sink) throws IOException {
+      if (serializedSize == 0) return;
+      CodedOutputStream output = CodedOutputStream.newInstance(sink.outputStream(),
+          Math.min(serializedSize, MAX_BUFFER_SIZE));
+      message.writeTo(output);
+      output.flush();
+    }
   }
 }
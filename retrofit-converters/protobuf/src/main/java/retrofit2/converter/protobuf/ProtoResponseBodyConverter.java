@@ -26,6 +26,9 @@ import retrofit2.Converter;
 
 final class ProtoResponseBodyConverter<T extends MessageLite>
     implements Converter<ResponseBody, T> {
+  /** Bodies of known length up to this size are read into one array and parsed from it. */
+  static final long MAX_BUFFERED_LENGTH = 1024 * 1024;
+
   private final Parser<T> parser;
   private final @Nullable ExtensionRegistryLite registry;
 
@@ -36,6 +39,14 @@ final class ProtoResponseBodyConverter<T extends MessageLite>
 
   @Override public T convert(ResponseBody value) throws IOException {
     try {
+      long contentLength = value.contentLength();
+      if (contentLength >= 0 && contentLength <= MAX_BUFFERED_LENGTH) {
+        // Skip the InputStream adapter and CodedInputStream's own buffer: read the body straight
+        // into an exactly-sized array which the parser can consume without copying.
+        byte[] bytes = new byte[(int) contentLength];
+        value.source().readFully(bytes);
+        return parser.parseFrom(bytes, registry);
+      }
       return parser.parseFrom(value.byteStream(), registry);
     } catch (InvalidProtocolBufferException e) {
       throw new RuntimeException(e); // Despite extending IOException, this is data mismatch.
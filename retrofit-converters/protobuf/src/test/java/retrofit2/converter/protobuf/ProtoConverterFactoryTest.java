@@ -18,6 +18,8 @@ package retrofit2.converter.protobuf;
 import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -44,6 +46,9 @@ public final class ProtoConverterFactoryTest {
     @POST("/") Call<Phone> post(@Body Phone impl);
     @GET("/") Call<String> wrongClass();
     @GET("/") Call<List<String>> wrongType();
+    @GET("/") Call<Iterator<Phone>> getDelimited();
+    @POST("/") Call<Void> postDelimited(@Body Iterable<Phone> phones);
+    @POST("/") Call<Void> postList(@Body List<Phone> phones);
   }
   interface ServiceWithRegistry {
     @GET("/") Call<Phone> get();
@@ -84,6 +89,70 @@ public final class ProtoConverterFactoryTest {
     assertThat(request.getHeader("Content-Type")).isEqualTo("application/x-protobuf");
   }
 
+  @Test public void serializeSetsContentLength() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse());
+
+    Phone phone = Phone.newBuilder().setNumber("(519) 867-5309").build();
+    service.post(phone).execute();
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Content-Length"))
+        .isEqualTo(String.valueOf(phone.getSerializedSize()));
+  }
+
+  @Test public void deserializeUnknownLength() throws IOException {
+    ByteString encoded = ByteString.decodeBase64("Cg4oNTE5KSA4NjctNTMwOQ==");
+    server.enqueue(new MockResponse().setChunkedBody(new Buffer().write(encoded), 4));
+
+    Call<Phone> call = service.get();
+    Response<Phone> response = call.execute();
+    Phone body = response.body();
+    assertThat(body.getNumber()).isEqualTo("(519) 867-5309");
+  }
+
+  @Test public void serializeAndDeserializeDelimited() throws IOException, InterruptedException {
+    Phone first = Phone.newBuilder().setNumber("(519) 867-5309").build();
+    Phone second = Phone.newBuilder().setNumber("(555) 555-0100").build();
+    Buffer encoded = new Buffer();
+    first.writeDelimitedTo(encoded.outputStream());
+    second.writeDelimitedTo(encoded.outputStream());
+    ByteString expected = encoded.snapshot();
+    server.enqueue(new MockResponse().setBody(encoded));
+    server.enqueue(new MockResponse());
+
+    Iterator<Phone> phones = service.getDelimited().execute().body();
+    assertThat(phones.next()).isEqualTo(first);
+    assertThat(phones.next()).isEqualTo(second);
+    assertThat(phones.hasNext()).isFalse();
+
+    service.postDelimited(Arrays.asList(first, second)).execute();
+    server.takeRequest();
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getBody().readByteString()).isEqualTo(expected);
+    assertThat(request.getHeader("Content-Type")).isEqualTo("application/x-protobuf");
+  }
+
+  @Test public void listBodyIsNotDelimited() {
+    try {
+      service.postList(Arrays.asList(Phone.newBuilder().build()));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).startsWith("Unable to create @Body converter for java.util.List<");
+    }
+  }
+
+  @Test public void deserializeDelimitedTruncated() throws IOException {
+    server.enqueue(new MockResponse().setBody(new Buffer().writeByte(16).writeUtf8("abc")));
+
+    Iterator<Phone> phones = service.getDelimited().execute().body();
+    try {
+      phones.hasNext();
+      fail();
+    } catch (DelimitedReadException e) {
+      assertThat(e.getCause()).isInstanceOf(InvalidProtocolBufferException.class);
+    }
+  }
+
   @Test public void deserializeEmpty() throws IOException {
     server.enqueue(new MockResponse());
 
@@ -120,6 +189,7 @@ public final class ProtoConverterFactoryTest {
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
           + "   * retrofit2.converter.protobuf.ProtoConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
   }
@@ -140,6 +210,7 @@ public final class ProtoConverterFactoryTest {
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
           + "   * retrofit2.converter.protobuf.ProtoConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
   }
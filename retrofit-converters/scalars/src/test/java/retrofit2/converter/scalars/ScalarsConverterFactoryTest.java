@@ -93,6 +93,7 @@ public final class ScalarsConverterFactoryTest {
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
           + "   * retrofit2.converter.scalars.ScalarsConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
   }
@@ -233,6 +234,7 @@ public final class ScalarsConverterFactoryTest {
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
           + "   * retrofit2.converter.scalars.ScalarsConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
   }
@@ -18,7 +18,9 @@ package retrofit2.converter.wire;
 import com.squareup.wire.Message;
 import com.squareup.wire.ProtoAdapter;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Iterator;
 import javax.annotation.Nullable;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
@@ -29,6 +31,15 @@ import retrofit2.Retrofit;
  * A {@linkplain Converter.Factory converter} that uses Wire for protocol buffers.
  * <p>
  * This converter only applies for types which extend from {@link Message}.
+ * <p>
+ * A body of messages which are each prefixed with their length as a varint can be streamed by
+ * declaring an {@link Iterator} of messages as the response type or an {@link Iterable} of
+ * messages as a {@link retrofit2.http.Body @Body} parameter. Only the {@code Iterable} type itself
+ * is streamed; a {@code List} or other collection of messages is left to later converter
+ * factories. Messages are read and written one at a time so the body is never held in memory.
+ * Read the returned iterator to its end or close it (it implements {@link java.io.Closeable}) to
+ * release the connection. A failure reading the next message is thrown as a
+ * {@link DelimitedReadException}.
  */
 public final class WireConverterFactory extends Converter.Factory {
   public static WireConverterFactory create() {
@@ -40,6 +51,16 @@ public final class WireConverterFactory extends Converter.Factory {
 
   @Override public @Nullable Converter<ResponseBody, ?> responseBodyConverter(
       Type type, Annotation[] annotations, Retrofit retrofit) {
+    if (getRawType(type) == Iterator.class) {
+      Class<?> c = messageType(type);
+      if (c == null) {
+        return null;
+      }
+      //noinspection unchecked
+      ProtoAdapter<? extends Message> adapter = ProtoAdapter.get((Class<? extends Message>) c);
+      return new WireDelimitedResponseBodyConverter<>(adapter);
+    }
+
     if (!(type instanceof Class<?>)) {
       return null;
     }
@@ -54,6 +75,17 @@ public final class WireConverterFactory extends Converter.Factory {
 
   @Override public @Nullable Converter<?, RequestBody> requestBodyConverter(Type type,
       Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+    // Only Iterable itself, so that existing List or Set parameters keep their encoding.
+    if (getRawType(type) == Iterable.class) {
+      Class<?> c = messageType(type);
+      if (c == null) {
+        return null;
+      }
+      //noinspection unchecked
+      ProtoAdapter<? extends Message> adapter = ProtoAdapter.get((Class<? extends Message>) c);
+      return new WireDelimitedRequestBodyConverter<>(adapter);
+    }
+
     if (!(type instanceof Class<?>)) {
       return null;
     }
@@ -65,4 +97,24 @@ public final class WireConverterFactory extends Converter.Factory {
     ProtoAdapter<? extends Message> adapter = ProtoAdapter.get((Class<? extends Message>) c);
     return new WireRequestBodyConverter<>(adapter);
   }
+
+  /**
+   * Returns the message class of a single-parameter container type like {@code Iterator<Phone>},
+   * or null if its element type is not a message.
+   */
+  private static @Nullable Class<?> messageType(Type type) {
+    if (!(type instanceof ParameterizedType)) {
+      return null;
+    }
+    Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
+    if (typeArguments.length != 1) {
+      return null;
+    }
+    Type elementType = getParameterUpperBound(0, (ParameterizedType) type);
+    if (!(elementType instanceof Class<?>)) {
+      return null;
+    }
+    Class<?> c = (Class<?>) elementType;
+    return Message.class.isAssignableFrom(c) ? c : null;
+  }
 }
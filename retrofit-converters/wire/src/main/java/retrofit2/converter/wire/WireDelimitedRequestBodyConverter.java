@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.converter.wire;
+
+import com.squareup.wire.Message;
+import com.squareup.wire.ProtoAdapter;
+import java.io.IOException;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import retrofit2.Converter;
+
+/**
+ * Encodes each message of an {@link Iterable} prefixed with its length as a varint. Messages are
+ * written to the sink as they are iterated so the body is never held in memory.
+ */
+final class WireDelimitedRequestBodyConverter<T extends Message<T, ?>>
+    implements Converter<Iterable<T>, RequestBody> {
+  private static final MediaType MEDIA_TYPE = MediaType.get("application/x-protobuf");
+
+  private final ProtoAdapter<T> adapter;
+
+  WireDelimitedRequestBodyConverter(ProtoAdapter<T> adapter) {
+    this.adapter = adapter;
+  }
+
+  @Override public RequestBody convert(final Iterable<T> value) {
+    return new RequestBody() {
+      @Override public MediaType contentType() {
+        return MEDIA_TYPE;
+      }
+
+      @Override public void writeTo(BufferedSink sink) throws IOException {
+        for (T message : value) {
+          writeVarint32(sink, adapter.encodedSize(message));
+          adapter.encode(sink, message);
+        }
+      }
+    };
+  }
+
+  private static void writeVarint32(BufferedSink sink, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      sink.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    sink.writeByte(value);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.converter.wire;
+
+import com.squareup.wire.Message;
+import com.squareup.wire.ProtoAdapter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import retrofit2.Converter;
+
+/**
+ * Decodes a body of messages which are each prefixed with their length as a varint, one message
+ * at a time.
+ */
+final class WireDelimitedResponseBodyConverter<T extends Message<T, ?>>
+    implements Converter<ResponseBody, Iterator<T>> {
+  private final ProtoAdapter<T> adapter;
+
+  WireDelimitedResponseBodyConverter(ProtoAdapter<T> adapter) {
+    this.adapter = adapter;
+  }
+
+  @Override public Iterator<T> convert(ResponseBody value) {
+    return new DelimitedIterator<>(value, adapter);
+  }
+
+  /**
+   * Reads the next message from the body when it is asked for. The body is closed once it is
+   * exhausted or fails, or when the iterator is closed.
+   */
+  private static final class DelimitedIterator<T> implements Iterator<T>, Closeable {
+    private final ResponseBody body;
+    private final BufferedSource source;
+    private final ProtoAdapter<T> adapter;
+    private final Buffer message = new Buffer();
+    private @Nullable T next;
+    private boolean done;
+
+    DelimitedIterator(ResponseBody body, ProtoAdapter<T> adapter) {
+      this.body = body;
+      this.source = body.source();
+      this.adapter = adapter;
+    }
+
+    @Override public boolean hasNext() {
+      if (next != null) return true;
+      if (done) return false;
+
+      try {
+        if (source.exhausted()) {
+          close();
+          return false;
+        }
+        long length = readVarint32(source);
+        source.readFully(message, length);
+        next = adapter.decode(message);
+      } catch (IOException e) {
+        close();
+        // Iterator cannot throw checked exceptions. This is a data mismatch or a failed read.
+        throw new DelimitedReadException(e);
+      }
+      return true;
+    }
+
+    @Override public T next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      T result = next;
+      next = null;
+      return result;
+    }
+
+    @Override public void remove() {
+      throw new UnsupportedOperationException("remove");
+    }
+
+    @Override public void close() {
+      done = true;
+      message.clear();
+      body.close();
+    }
+  }
+
+  private static long readVarint32(BufferedSource source) throws IOException {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = source.readByte();
+      result |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return result & 0xffffffffL;
+      }
+    }
+    throw new ProtocolException("Malformed message length");
+  }
+}
@@ -17,6 +17,8 @@ package retrofit2.converter.wire;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -42,6 +44,9 @@ public final class WireConverterFactoryTest {
     @POST("/") Call<Phone> post(@Body Phone impl);
     @GET("/") Call<String> wrongClass();
     @GET("/") Call<List<String>> wrongType();
+    @GET("/") Call<Iterator<Phone>> getDelimited();
+    @POST("/") Call<Void> postDelimited(@Body Iterable<Phone> phones);
+    @POST("/") Call<Void> postList(@Body List<Phone> phones);
   }
 
   @Rule public final MockWebServer server = new MockWebServer();
@@ -70,6 +75,49 @@ public final class WireConverterFactoryTest {
     assertThat(request.getHeader("Content-Type")).isEqualTo("application/x-protobuf");
   }
 
+  @Test public void serializeAndDeserializeDelimited() throws IOException, InterruptedException {
+    ByteString message = ByteString.decodeBase64("Cg4oNTE5KSA4NjctNTMwOQ==");
+    Buffer encoded = new Buffer()
+        .writeByte(message.size()).write(message)
+        .writeByte(message.size()).write(message);
+    ByteString expected = encoded.snapshot();
+    server.enqueue(new MockResponse().setBody(encoded));
+    server.enqueue(new MockResponse());
+
+    Iterator<Phone> phones = service.getDelimited().execute().body();
+    assertThat(phones.next().number).isEqualTo("(519) 867-5309");
+    assertThat(phones.next().number).isEqualTo("(519) 867-5309");
+    assertThat(phones.hasNext()).isFalse();
+
+    Phone phone = new Phone("(519) 867-5309");
+    service.postDelimited(Arrays.asList(phone, phone)).execute();
+    server.takeRequest();
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getBody().readByteString()).isEqualTo(expected);
+    assertThat(request.getHeader("Content-Type")).isEqualTo("application/x-protobuf");
+  }
+
+  @Test public void listBodyIsNotDelimited() {
+    try {
+      service.postList(Arrays.asList(new Phone("(519) 867-5309")));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).startsWith("Unable to create @Body converter for java.util.List<");
+    }
+  }
+
+  @Test public void deserializeDelimitedTruncated() throws IOException {
+    server.enqueue(new MockResponse().setBody(new Buffer().writeByte(16).writeUtf8("abc")));
+
+    Iterator<Phone> phones = service.getDelimited().execute().body();
+    try {
+      phones.hasNext();
+      fail();
+    } catch (DelimitedReadException e) {
+      assertThat(e.getCause()).isInstanceOf(EOFException.class);
+    }
+  }
+
   @Test public void deserializeEmpty() throws IOException {
     server.enqueue(new MockResponse());
 
@@ -95,6 +143,7 @@ public final class WireConverterFactoryTest {
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
           + "   * retrofit2.converter.wire.WireConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
   }
@@ -115,6 +164,7 @@ public final class WireConverterFactoryTest {
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
           + "   * retrofit2.converter.wire.WireConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
   }
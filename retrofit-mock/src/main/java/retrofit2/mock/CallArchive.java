@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.mock;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ByteString;
+import retrofit2.Invocation;
+
+/**
+ * The on-disk format shared by {@link RecordingCallFactory} and {@link ReplayCallFactory}.
+ * <p>
+ * An archive is a flat sequence of records, each holding the invocation key, status line, headers,
+ * the time the exchange took, and the raw body bytes. Strings are stored as a length-prefixed UTF-8
+ * byte sequence. Records are only ever appended so recording is a sequential write, and replay maps
+ * the whole file read-only so bodies are copied straight out of the page cache.
+ */
+final class CallArchive {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final ByteString NORMALIZED_BOUNDARY = ByteString.encodeUtf8("boundary");
+
+  private CallArchive() {
+    // No instances.
+  }
+
+  /**
+   * The key under which an exchange for {@code request} is stored. Requests created by Retrofit are
+   * keyed on their {@link Invocation} method, including its parameter types so overloads do not
+   * collide, and on the content of the request: its HTTP method, the path and query of its URL, and
+   * a hash of its body. The scheme, host and port are left out so that replay does not depend on
+   * the base URL of the recording environment, and arguments are never keyed on their
+   * {@code toString()} which is rarely stable across runs.
+   */
+  static String key(Request request) throws IOException {
+    StringBuilder key = new StringBuilder();
+    Invocation invocation = request.tag(Invocation.class);
+    if (invocation != null) {
+      Method method = invocation.method();
+      key.append(method.getDeclaringClass().getName()).append('.').append(method.getName());
+      key.append('(');
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      for (int i = 0; i < parameterTypes.length; i++) {
+        if (i > 0) key.append(',');
+        key.append(parameterTypes[i].getName());
+      }
+      key.append(") ");
+    }
+    HttpUrl url = request.url();
+    key.append(request.method()).append(' ');
+    if (invocation != null) {
+      key.append(url.encodedPath());
+      String query = url.encodedQuery();
+      if (query != null) key.append('?').append(query);
+    } else {
+      key.append(url);
+    }
+    RequestBody body = request.body();
+    if (body != null) {
+      key.append(' ').append(bodyHash(body));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Multipart bodies are written with a random boundary, so it is replaced with a fixed one before
+   * hashing. Otherwise the same parts would hash differently on every run.
+   */
+  private static String bodyHash(RequestBody body) throws IOException {
+    Buffer buffer = new Buffer();
+    body.writeTo(buffer);
+    MediaType contentType = body.contentType();
+    String boundary = contentType != null ? boundary(contentType) : null;
+    if (boundary == null) return buffer.sha1().hex();
+
+    ByteString random = ByteString.encodeUtf8(boundary);
+    Buffer normalized = new Buffer();
+    for (long index; (index = buffer.indexOf(random)) != -1; ) {
+      normalized.write(buffer, index);
+      buffer.skip(random.size());
+      normalized.write(NORMALIZED_BOUNDARY);
+    }
+    normalized.writeAll(buffer);
+    return normalized.sha1().hex();
+  }
+
+  private static @Nullable String boundary(MediaType contentType) {
+    if (!"multipart".equals(contentType.type())) return null;
+    String value = contentType.toString();
+    int start = value.toLowerCase(Locale.US).indexOf("boundary=");
+    if (start == -1) return null;
+    start += "boundary=".length();
+    int end = value.indexOf(';', start);
+    String boundary = value.substring(start, end != -1 ? end : value.length()).trim();
+    if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+      boundary = boundary.substring(1, boundary.length() - 1);
+    }
+    return boundary.isEmpty() ? null : boundary;
+  }
+
+  /**
+   * Returns {@code request} with its body read into memory, so that it can be written to the
+   * network and then again for {@link #key}. Bodies such as a streamed {@code InputStream} can only
+   * be written once.
+   */
+  static Request buffer(Request request) throws IOException {
+    RequestBody body = request.body();
+    if (body == null) return request;
+    Buffer buffer = new Buffer();
+    body.writeTo(buffer);
+    return request.newBuilder()
+        .method(request.method(), RequestBody.create(body.contentType(), buffer.readByteString()))
+        .build();
+  }
+
+  static final class Writer implements Closeable {
+    private final DataOutputStream out;
+
+    Writer(File file) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    synchronized void write(String key, okhttp3.Response response, byte[] body)
+        throws IOException {
+      writeString(key);
+      out.writeInt(response.code());
+      writeString(response.message());
+      Headers headers = response.headers();
+      out.writeInt(headers.size());
+      for (int i = 0, size = headers.size(); i < size; i++) {
+        writeString(headers.name(i));
+        writeString(headers.value(i));
+      }
+      out.writeLong(response.receivedResponseAtMillis() - response.sentRequestAtMillis());
+      out.writeInt(body.length);
+      out.write(body);
+      out.flush();
+    }
+
+    private void writeString(String value) throws IOException {
+      byte[] bytes = value.getBytes(UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    @Override public synchronized void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /** A read-only, memory-mapped view of an archive indexed by key. */
+  static final class Reader {
+    private final MappedByteBuffer buffer;
+    private final Map<String, int[]> offsets;
+
+    Reader(File file) throws IOException {
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+      try {
+        FileChannel channel = randomAccessFile.getChannel();
+        // The mapping stays valid after the channel is closed.
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        randomAccessFile.close();
+      }
+      offsets = index(buffer.duplicate());
+    }
+
+    /**
+     * Returns the offsets of every record stored for {@code key} in recording order, or null if
+     * there are none.
+     */
+    @Nullable int[] offsets(String key) {
+      return offsets.get(key);
+    }
+
+    Record read(int offset) {
+      ByteBuffer in = buffer.duplicate();
+      in.position(offset);
+      readString(in); // Key.
+      int code = in.getInt();
+      String message = readString(in);
+      Headers.Builder headers = new Headers.Builder();
+      for (int i = 0, size = in.getInt(); i < size; i++) {
+        headers.add(readString(in), readString(in));
+      }
+      long durationMillis = in.getLong();
+      byte[] body = new byte[in.getInt()];
+      in.get(body);
+      return new Record(code, message, headers.build(), durationMillis, body);
+    }
+
+    private static Map<String, int[]> index(ByteBuffer in) {
+      Map<String, List<Integer>> positions = new LinkedHashMap<>();
+      while (in.hasRemaining()) {
+        int offset = in.position();
+        String key = readString(in);
+        in.getInt(); // Code.
+        skipString(in); // Message.
+        for (int i = 0, size = in.getInt() * 2; i < size; i++) {
+          skipString(in); // Header names and values.
+        }
+        in.getLong(); // Duration.
+        int bodyLength = in.getInt();
+        in.position(in.position() + bodyLength);
+
+        List<Integer> list = positions.get(key);
+        if (list == null) {
+          list = new ArrayList<>();
+          positions.put(key, list);
+        }
+        list.add(offset);
+      }
+
+      Map<String, int[]> result = new LinkedHashMap<>(positions.size() * 2);
+      for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+        List<Integer> list = entry.getValue();
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = list.get(i);
+        }
+        result.put(entry.getKey(), array);
+      }
+      return result;
+    }
+
+    private static String readString(ByteBuffer in) {
+      byte[] bytes = new byte[in.getInt()];
+      in.get(bytes);
+      return new String(bytes, UTF_8);
+    }
+
+    private static void skipString(ByteBuffer in) {
+      int length = in.getInt();
+      in.position(in.position() + length);
+    }
+  }
+
+  static final class Record {
+    final int code;
+    final String message;
+    final Headers headers;
+    final long durationMillis;
+    final byte[] body;
+
+    Record(int code, String message, Headers headers, long durationMillis, byte[] body) {
+      this.code = code;
+      this.message = message;
+      this.headers = headers;
+      this.durationMillis = durationMillis;
+      this.body = body;
+    }
+
+    ResponseBody responseBody() {
+      String contentType = headers.get("Content-Type");
+      return ResponseBody.create(contentType != null ? MediaType.parse(contentType) : null, body);
+    }
+  }
+}
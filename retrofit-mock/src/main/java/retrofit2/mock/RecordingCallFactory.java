@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.mock;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * A {@link Call.Factory} which records every exchange made through {@code delegate} to an archive
+ * file that can later be served back by {@link ReplayCallFactory}.
+ * <p>
+ * Exchanges are keyed on the service method from the {@link retrofit2.Invocation Invocation} tag of
+ * the request when present, together with the request's method, path, query and a hash of its
+ * body, so arguments which lack a stable {@code toString()} still replay across runs. Request and
+ * response bodies are buffered in full: a request body which can only be written once must still be
+ * hashed after it was sent, and a response body is written to the archive before being handed back.
+ * <pre><code>
+ * RecordingCallFactory recorder = RecordingCallFactory.create(client, new File("api.archive"));
+ * Retrofit retrofit = new Retrofit.Builder()
+ *     .baseUrl("https://api.example.com/")
+ *     .callFactory(recorder)
+ *     .build();
+ * // Exercise the service...
+ * recorder.close();
+ * </code></pre>
+ */
+public final class RecordingCallFactory implements Call.Factory, Closeable {
+  /**
+   * Create a factory which records exchanges from {@code delegate} by appending them to
+   * {@code archive}.
+   */
+  @SuppressWarnings("ConstantConditions") // Guarding public API nullability.
+  public static RecordingCallFactory create(Call.Factory delegate, File archive)
+      throws IOException {
+    if (delegate == null) throw new NullPointerException("delegate == null");
+    if (archive == null) throw new NullPointerException("archive == null");
+    return new RecordingCallFactory(delegate, new CallArchive.Writer(archive));
+  }
+
+  private final Call.Factory delegate;
+  private final CallArchive.Writer writer;
+
+  private RecordingCallFactory(Call.Factory delegate, CallArchive.Writer writer) {
+    this.delegate = delegate;
+    this.writer = writer;
+  }
+
+  @Override public Call newCall(Request request) {
+    Request buffered;
+    try {
+      buffered = CallArchive.buffer(request);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to buffer request body of " + request, e);
+    }
+    return new RecordingCall(delegate.newCall(buffered));
+  }
+
+  /** Flush and close the underlying archive. Calls completing afterwards will fail. */
+  @Override public void close() throws IOException {
+    writer.close();
+  }
+
+  /**
+   * Record {@code response} under the key of {@code request}, the request as it was made rather
+   * than the one which followed any redirects.
+   */
+  Response record(Request request, Response response) throws IOException {
+    ResponseBody body = response.body();
+    byte[] bytes = body != null ? body.bytes() : new byte[0];
+    writer.write(CallArchive.key(request), response, bytes);
+    return response.newBuilder()
+        .body(ResponseBody.create(body != null ? body.contentType() : null, bytes))
+        .build();
+  }
+
+  final class RecordingCall implements Call {
+    private final Call delegate;
+
+    RecordingCall(Call delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override public Request request() {
+      return delegate.request();
+    }
+
+    @Override public Response execute() throws IOException {
+      return record(delegate.request(), delegate.execute());
+    }
+
+    @Override public void enqueue(final Callback responseCallback) {
+      delegate.enqueue(new Callback() {
+        @Override public void onResponse(Call call, Response response) throws IOException {
+          Response recorded;
+          try {
+            recorded = record(delegate.request(), response);
+          } catch (IOException e) {
+            responseCallback.onFailure(RecordingCall.this, e);
+            return;
+          }
+          responseCallback.onResponse(RecordingCall.this, recorded);
+        }
+
+        @Override public void onFailure(Call call, IOException e) {
+          responseCallback.onFailure(RecordingCall.this, e);
+        }
+      });
+    }
+
+    @Override public void cancel() {
+      delegate.cancel();
+    }
+
+    @Override public boolean isExecuted() {
+      return delegate.isExecuted();
+    }
+
+    @Override public boolean isCanceled() {
+      return delegate.isCanceled();
+    }
+
+    @SuppressWarnings("CloneDoesntCallSuperClone") // Performing deep clone.
+    @Override public Call clone() {
+      return new RecordingCall(delegate.clone());
+    }
+  }
+}
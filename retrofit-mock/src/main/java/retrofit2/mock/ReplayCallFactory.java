@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * A {@link Call.Factory} which serves exchanges previously captured by
+ * {@link RecordingCallFactory} without touching the network.
+ * <p>
+ * The archive is memory-mapped when the factory is built. When several exchanges were recorded for
+ * the same key they are served in recording order, wrapping around once exhausted, which makes the
+ * factory a reproducible load source for benchmarking converters and call adapters. Requests with
+ * no recorded exchange fail with an {@link IOException}.
+ */
+public final class ReplayCallFactory implements Call.Factory {
+  private final CallArchive.Reader reader;
+  private final boolean replayTimings;
+  private final ExecutorService executor;
+  private final ConcurrentMap<String, AtomicInteger> cursors = new ConcurrentHashMap<>();
+
+  ReplayCallFactory(CallArchive.Reader reader, boolean replayTimings, ExecutorService executor) {
+    this.reader = reader;
+    this.replayTimings = replayTimings;
+    this.executor = executor;
+  }
+
+  @Override public Call newCall(Request request) {
+    return new ReplayCall(request);
+  }
+
+  /** Returns the next recorded exchange for {@code key}, or null if there are none. */
+  @Nullable CallArchive.Record next(String key) {
+    int[] offsets = reader.offsets(key);
+    if (offsets == null) return null;
+
+    AtomicInteger cursor = cursors.get(key);
+    if (cursor == null) {
+      AtomicInteger newCursor = new AtomicInteger();
+      cursor = cursors.putIfAbsent(key, newCursor);
+      if (cursor == null) cursor = newCursor;
+    }
+    int index = (cursor.getAndIncrement() & Integer.MAX_VALUE) % offsets.length;
+    return reader.read(offsets[index]);
+  }
+
+  final class ReplayCall implements Call {
+    private final Request request;
+    private volatile boolean canceled;
+    private boolean executed;
+
+    ReplayCall(Request request) {
+      this.request = request;
+    }
+
+    @Override public Request request() {
+      return request;
+    }
+
+    @Override public Response execute() throws IOException {
+      synchronized (this) {
+        if (executed) throw new IllegalStateException("Already Executed");
+        executed = true;
+      }
+      return replay();
+    }
+
+    @Override public void enqueue(final Callback responseCallback) {
+      synchronized (this) {
+        if (executed) throw new IllegalStateException("Already Executed");
+        executed = true;
+      }
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          Response response;
+          try {
+            response = replay();
+          } catch (IOException e) {
+            responseCallback.onFailure(ReplayCall.this, e);
+            return;
+          }
+          try {
+            responseCallback.onResponse(ReplayCall.this, response);
+          } catch (IOException e) {
+            // Mirror OkHttp: a failure thrown from onResponse is not reported to the callback.
+          }
+        }
+      });
+    }
+
+    Response replay() throws IOException {
+      if (canceled) throw new IOException("Canceled");
+
+      String key = CallArchive.key(request);
+      CallArchive.Record record = next(key);
+      if (record == null) {
+        throw new IOException("No recorded response for " + key);
+      }
+
+      long sentAt = System.currentTimeMillis();
+      if (replayTimings && record.durationMillis > 0) {
+        try {
+          Thread.sleep(record.durationMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while replaying " + key);
+        }
+        if (canceled) throw new IOException("Canceled");
+      }
+
+      return new Response.Builder()
+          .request(request)
+          .protocol(Protocol.HTTP_1_1)
+          .code(record.code)
+          .message(record.message)
+          .headers(record.headers)
+          .body(record.responseBody())
+          .sentRequestAtMillis(sentAt)
+          .receivedResponseAtMillis(sentAt + record.durationMillis)
+          .build();
+    }
+
+    @Override public void cancel() {
+      canceled = true;
+    }
+
+    @Override public synchronized boolean isExecuted() {
+      return executed;
+    }
+
+    @Override public boolean isCanceled() {
+      return canceled;
+    }
+
+    @SuppressWarnings("CloneDoesntCallSuperClone") // We are a final type & this saves clearing state.
+    @Override public Call clone() {
+      return new ReplayCall(request);
+    }
+  }
+
+  public static final class Builder {
+    private final File archive;
+    private boolean replayTimings;
+    private ExecutorService executor;
+
+    @SuppressWarnings("ConstantConditions") // Guarding public API nullability.
+    public Builder(File archive) {
+      if (archive == null) throw new NullPointerException("archive == null");
+      this.archive = archive;
+    }
+
+    /**
+     * When true, each replayed exchange is delayed by the time the original exchange took.
+     * Defaults to false, serving responses as fast as possible.
+     */
+    public Builder replayTimings(boolean replayTimings) {
+      this.replayTimings = replayTimings;
+      return this;
+    }
+
+    /** The executor on which {@linkplain Call#enqueue asynchronous calls} are replayed. */
+    @SuppressWarnings("ConstantConditions") // Guarding public API nullability.
+    public Builder backgroundExecutor(ExecutorService executor) {
+      if (executor == null) throw new NullPointerException("executor == null");
+      this.executor = executor;
+      return this;
+    }
+
+    /** Map the archive and create the factory. */
+    public ReplayCallFactory build() throws IOException {
+      if (executor == null) executor = Executors.newCachedThreadPool();
+      return new ReplayCallFactory(new CallArchive.Reader(archive), replayTimings, executor);
+    }
+  }
+}
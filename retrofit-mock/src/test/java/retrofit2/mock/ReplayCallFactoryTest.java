@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.Body;
+import retrofit2.http.GET;
+import retrofit2.http.Multipart;
+import retrofit2.http.POST;
+import retrofit2.http.Part;
+import retrofit2.http.Query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class ReplayCallFactoryTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  interface Service {
+    @GET("/") Call<ResponseBody> get(@Query("id") int id);
+    @GET("/") Call<ResponseBody> get(@Query("id") String id);
+    @POST("/") Call<ResponseBody> post(@Body RequestBody body);
+    @Multipart @POST("/") Call<ResponseBody> upload(@Part("name") RequestBody name,
+        @Part("file") InputStream file);
+  }
+
+  @Test public void recordThenReplay() throws IOException {
+    server.enqueue(new MockResponse().setBody("one").addHeader("Content-Type", "text/plain"));
+    server.enqueue(new MockResponse().setResponseCode(404).setBody("two"));
+
+    File archive = temporaryFolder.newFile();
+    RecordingCallFactory recorder = RecordingCallFactory.create(new OkHttpClient(), archive);
+    Service recording = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .callFactory(recorder)
+        .build()
+        .create(Service.class);
+    assertThat(recording.get(1).execute().body().string()).isEqualTo("one");
+    assertThat(recording.get(2).execute().errorBody().string()).isEqualTo("two");
+    recorder.close();
+
+    ReplayCallFactory replayer = new ReplayCallFactory.Builder(archive).build();
+    Service replaying = new Retrofit.Builder()
+        .baseUrl("http://example.com/")
+        .callFactory(replayer)
+        .build()
+        .create(Service.class);
+
+    Response<ResponseBody> one = replaying.get(1).execute();
+    assertThat(one.code()).isEqualTo(200);
+    assertThat(one.headers().get("Content-Type")).isEqualTo("text/plain");
+    assertThat(one.body().string()).isEqualTo("one");
+
+    Response<ResponseBody> two = replaying.get(2).execute();
+    assertThat(two.code()).isEqualTo(404);
+    assertThat(two.errorBody().string()).isEqualTo("two");
+
+    // Recordings are served repeatedly.
+    assertThat(replaying.get(1).execute().body().string()).isEqualTo("one");
+    assertThat(server.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test public void keyIsBasedOnContentAndParameterTypes() throws IOException {
+    server.enqueue(new MockResponse().setBody("int"));
+    server.enqueue(new MockResponse().setBody("string"));
+    server.enqueue(new MockResponse().setBody("one"));
+    server.enqueue(new MockResponse().setBody("two"));
+
+    File archive = temporaryFolder.newFile();
+    RecordingCallFactory recorder = RecordingCallFactory.create(new OkHttpClient(), archive);
+    Service recording = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .callFactory(recorder)
+        .build()
+        .create(Service.class);
+    MediaType mediaType = MediaType.parse("text/plain");
+    recording.get(1).execute().body().close();
+    recording.get("1").execute().body().close();
+    recording.post(RequestBody.create(mediaType, "one")).execute().body().close();
+    recording.post(RequestBody.create(mediaType, "two")).execute().body().close();
+    recorder.close();
+
+    ReplayCallFactory replayer = new ReplayCallFactory.Builder(archive).build();
+    Service replaying = new Retrofit.Builder()
+        .baseUrl("http://example.com/")
+        .callFactory(replayer)
+        .build()
+        .create(Service.class);
+
+    // Overloads with the same query are told apart by their parameter types.
+    assertThat(replaying.get("1").execute().body().string()).isEqualTo("string");
+    assertThat(replaying.get(1).execute().body().string()).isEqualTo("int");
+    // Bodies match on their bytes rather than on their identity.
+    assertThat(replaying.post(RequestBody.create(mediaType, "two")).execute().body().string())
+        .isEqualTo("two");
+    assertThat(replaying.post(RequestBody.create(mediaType, "one")).execute().body().string())
+        .isEqualTo("one");
+  }
+
+  @Test public void multipartReplaysDespiteRandomBoundary() throws Exception {
+    server.enqueue(new MockResponse().setBody("one"));
+    server.enqueue(new MockResponse().setBody("two"));
+
+    File archive = temporaryFolder.newFile();
+    RecordingCallFactory recorder = RecordingCallFactory.create(new OkHttpClient(), archive);
+    Service recording = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .callFactory(recorder)
+        .build()
+        .create(Service.class);
+    MediaType mediaType = MediaType.parse("text/plain");
+    recording.upload(RequestBody.create(mediaType, "kit"), stream("one")).execute().body().close();
+    recording.upload(RequestBody.create(mediaType, "kit"), stream("two")).execute().body().close();
+    recorder.close();
+
+    // The streamed part could only be written once, yet it still reached the server.
+    assertThat(server.takeRequest().getBody().readUtf8()).contains("\r\n\r\none\r\n");
+
+    ReplayCallFactory replayer = new ReplayCallFactory.Builder(archive).build();
+    Service replaying = new Retrofit.Builder()
+        .baseUrl("http://example.com/")
+        .callFactory(replayer)
+        .build()
+        .create(Service.class);
+
+    // Each call uses a new boundary but still matches the recording of the same parts.
+    assertThat(replaying.upload(RequestBody.create(mediaType, "kit"), stream("two")).execute()
+        .body().string()).isEqualTo("two");
+    assertThat(replaying.upload(RequestBody.create(mediaType, "kit"), stream("one")).execute()
+        .body().string()).isEqualTo("one");
+    try {
+      replaying.upload(RequestBody.create(mediaType, "kit"), stream("three")).execute();
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).startsWith("No recorded response for ");
+    }
+  }
+
+  @Test public void missingRecordingFails() throws IOException {
+    ReplayCallFactory replayer = new ReplayCallFactory.Builder(temporaryFolder.newFile()).build();
+    Service replaying = new Retrofit.Builder()
+        .baseUrl("http://example.com/")
+        .callFactory(replayer)
+        .build()
+        .create(Service.class);
+
+    try {
+      replaying.get(1).execute();
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).startsWith("No recorded response for ");
+    }
+  }
+
+  @Test public void archiveNullThrows() {
+    try {
+      new ReplayCallFactory.Builder(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertThat(e).hasMessage("archive == null");
+    }
+  }
+
+  private static InputStream stream(String content) {
+    return new ByteArrayInputStream(content.getBytes(Charset.forName("UTF-8")));
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+/**
+ * 把 {@link Tracing} 的各个阶段记录为 JDK Flight Recorder 事件。
+ * <p>
+ * 这个类单独放在 src/main/java-jfr 中，只有在 JDK 11+ 上构建时（jfr profile）才会编译，
+ * 因此用 JDK 7/8 也能构建 Retrofit。{@link Tracing#get()} 通过反射加载它。
+ */
+@IgnoreJRERequirement // Only classloaded and used when jdk.jfr is available.
+final class JfrTracing extends Tracing {
+    @Override
+    Object beginParseAnnotations(Method method) {
+        ParseAnnotationsEvent event = new ParseAnnotationsEvent();
+        if (!event.isEnabled()) return null;
+        event.set(method);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endParseAnnotations(@Nullable Object event) {
+        if (event == null) return;
+        ((ParseAnnotationsEvent) event).commit();
+    }
+
+    @Override
+    Object beginCreateRequest(Method method) {
+        CreateRequestEvent event = new CreateRequestEvent();
+        if (!event.isEnabled()) return null;
+        event.set(method);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endCreateRequest(@Nullable Object event, @Nullable Request request) {
+        if (event == null) return;
+        CreateRequestEvent createRequest = (CreateRequestEvent) event;
+        createRequest.end();
+        if (request != null) {
+            createRequest.httpMethod = request.method();
+            RequestBody body = request.body();
+            if (body != null) {
+                try {
+                    createRequest.requestBodySize = body.contentLength();
+                } catch (IOException ignored) {
+                    // 长度未知
+                }
+            }
+        }
+        createRequest.commit();
+    }
+
+    @Override
+    Object beginCall(Method method, boolean async) {
+        CallEvent event = new CallEvent();
+        if (!event.isEnabled()) return null;
+        event.set(method);
+        event.async = async;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endCall(@Nullable Object event, @Nullable okhttp3.Response rawResponse) {
+        if (event == null) return;
+        CallEvent call = (CallEvent) event;
+        call.end();
+        if (rawResponse != null) {
+            call.statusCode = rawResponse.code();
+            call.responseBodySize = contentLength(rawResponse);
+        }
+        call.commit();
+    }
+
+    @Override
+    Object beginParseResponse(Method method) {
+        ParseResponseEvent event = new ParseResponseEvent();
+        if (!event.isEnabled()) return null;
+        event.set(method);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endParseResponse(@Nullable Object event, okhttp3.Response rawResponse) {
+        if (event == null) return;
+        ParseResponseEvent parseResponse = (ParseResponseEvent) event;
+        parseResponse.end();
+        parseResponse.statusCode = rawResponse.code();
+        parseResponse.responseBodySize = contentLength(rawResponse);
+        parseResponse.commit();
+    }
+
+    @Override
+    Object beginAdapt(Method method) {
+        AdaptEvent event = new AdaptEvent();
+        if (!event.isEnabled()) return null;
+        event.set(method);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endAdapt(@Nullable Object event) {
+        if (event == null) return;
+        ((AdaptEvent) event).commit();
+    }
+
+    private static long contentLength(okhttp3.Response rawResponse) {
+        okhttp3.ResponseBody body = rawResponse.body();
+        return body != null ? body.contentLength() : -1L;
+    }
+
+    @IgnoreJRERequirement
+    @Category("Retrofit")
+    abstract static class ServiceMethodEvent extends Event {
+        @Label("Service")
+        String service;
+
+        @Label("Method")
+        String method;
+
+        final void set(Method method) {
+            this.service = method.getDeclaringClass().getName();
+            this.method = method.getName();
+        }
+    }
+
+    @IgnoreJRERequirement
+    @Name("retrofit.ParseAnnotations")
+    @Label("Parse Annotations")
+    @Description("Parsing the annotations of a service method, done once per method.")
+    static final class ParseAnnotationsEvent extends ServiceMethodEvent {
+    }
+
+    @IgnoreJRERequirement
+    @Name("retrofit.CreateRequest")
+    @Label("Create Request")
+    @Description("Converting the arguments of a service method call to an HTTP request.")
+    static final class CreateRequestEvent extends ServiceMethodEvent {
+        @Label("HTTP Method")
+        String httpMethod;
+
+        @Label("Request Body Size")
+        @DataAmount
+        long requestBodySize = -1L;
+    }
+
+    @IgnoreJRERequirement
+    @Name("retrofit.Call")
+    @Label("Call")
+    @Description("Executing a call, from execute() or enqueue() until its response is converted.")
+    static final class CallEvent extends ServiceMethodEvent {
+        @Label("Asynchronous")
+        boolean async;
+
+        @Label("Status Code")
+        int statusCode;
+
+        @Label("Response Body Size")
+        @DataAmount
+        long responseBodySize = -1L;
+    }
+
+    @IgnoreJRERequirement
+    @Name("retrofit.ParseResponse")
+    @Label("Parse Response")
+    @Description("Converting the body of a response.")
+    static final class ParseResponseEvent extends ServiceMethodEvent {
+        @Label("Status Code")
+        int statusCode;
+
+        @Label("Response Body Size")
+        @DataAmount
+        long responseBodySize = -1L;
+    }
+
+    @IgnoreJRERequirement
+    @Name("retrofit.Adapt")
+    @Label("Adapt Call")
+    @Description("Adapting a call to the return type of its service method with a CallAdapter.")
+    static final class AdaptEvent extends ServiceMethodEvent {
+    }
+}
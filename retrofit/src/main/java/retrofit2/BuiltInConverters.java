@@ -15,14 +15,27 @@
  */
 package retrofit2;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import javax.annotation.Nullable;
 
 import kotlin.Unit;
+import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 import retrofit2.http.Streaming;
 
 /**
@@ -34,6 +47,11 @@ final class BuiltInConverters extends Converter.Factory {
      */
     private boolean checkForKotlinUnit = true;
 
+    /**
+     * 文件和缓冲区请求体默认的媒体类型，可以通过 Content-Type 头覆盖
+     */
+    static final MediaType OCTET_STREAM = MediaType.get("application/octet-stream");
+
     @Override
     public @Nullable
     Converter<ResponseBody, ?> responseBodyConverter(
@@ -46,6 +64,28 @@ final class BuiltInConverters extends Converter.Factory {
         if (type == Void.class) {
             return VoidResponseBodyConverter.INSTANCE;
         }
+        if (Utils.getRawType(type) == MultipartReader.class) {
+            if (!(type instanceof ParameterizedType)) {
+                throw new IllegalStateException("MultipartReader return type must be parameterized"
+                        + " as MultipartReader<Foo> or MultipartReader<? extends Foo>");
+            }
+            // 每个 part 使用 part 类型对应的转换器
+            Type partType = Utils.getParameterUpperBound(0, (ParameterizedType) type);
+            Converter<ResponseBody, ?> partConverter =
+                    retrofit.responseBodyConverter(partType, annotations);
+            return new MultipartReaderConverter<>(partConverter);
+        }
+        if (Utils.getRawType(type) == Lazy.class) {
+            if (!(type instanceof ParameterizedType)) {
+                throw new IllegalStateException("Lazy return type must be parameterized"
+                        + " as Lazy<Foo> or Lazy<? extends Foo>");
+            }
+            // 先读入内存，第一次访问时再交给 Foo 的转换器
+            Type bodyType = Utils.getParameterUpperBound(0, (ParameterizedType) type);
+            Converter<ResponseBody, ?> bodyConverter =
+                    retrofit.responseBodyConverter(bodyType, annotations);
+            return new LazyConverter<>(bodyConverter);
+        }
         if (checkForKotlinUnit) {
             try {
                 if (type == Unit.class) {
@@ -62,9 +102,11 @@ final class BuiltInConverters extends Converter.Factory {
     public @Nullable
     Converter<?, RequestBody> requestBodyConverter(
             Type type, Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
-        if (RequestBody.class.isAssignableFrom(Utils.getRawType(type))) {
+        Class<?> rawType = Utils.getRawType(type);
+        if (RequestBody.class.isAssignableFrom(rawType)) {
             return RequestBodyConverter.INSTANCE;
         }
+        // 文件和缓冲区由排在用户转换器之后的 StreamingRequestBodyConverterFactory 处理
         return null;
     }
 
@@ -97,6 +139,274 @@ final class BuiltInConverters extends Converter.Factory {
         }
     }
 
+    static final class FileRequestBodyConverter implements Converter<File, RequestBody> {
+        static final FileRequestBodyConverter INSTANCE = new FileRequestBodyConverter();
+
+        @Override
+        public RequestBody convert(File value) {
+            return new FileRequestBody(value);
+        }
+    }
+
+    static final class FileChannelRequestBodyConverter
+            implements Converter<FileChannel, RequestBody> {
+        static final FileChannelRequestBodyConverter INSTANCE = new FileChannelRequestBodyConverter();
+
+        @Override
+        public RequestBody convert(FileChannel value) throws IOException {
+            // 从通道当前的位置发送到末尾
+            long position = value.position();
+            return new FileChannelRequestBody(value, position, value.size() - position);
+        }
+    }
+
+    static final class ByteBufferRequestBodyConverter
+            implements Converter<ByteBuffer, RequestBody> {
+        static final ByteBufferRequestBodyConverter INSTANCE = new ByteBufferRequestBodyConverter();
+
+        @Override
+        public RequestBody convert(ByteBuffer value) {
+            return new ByteBufferRequestBody(value);
+        }
+    }
+
+    static final class InputStreamRequestBodyConverter
+            implements Converter<InputStream, RequestBody> {
+        static final InputStreamRequestBodyConverter INSTANCE = new InputStreamRequestBodyConverter();
+
+        @Override
+        public RequestBody convert(InputStream value) {
+            return new InputStreamRequestBody(value);
+        }
+    }
+
+    @IgnoreJRERequirement // Only classloaded and used on Java 7.
+    static final class PathRequestBodyConverter implements Converter<Path, RequestBody> {
+        static final PathRequestBodyConverter INSTANCE = new PathRequestBodyConverter();
+
+        @Override
+        public RequestBody convert(Path value) throws IOException {
+            return new PathRequestBody(value, Files.size(value));
+        }
+    }
+
+    /**
+     * 每次写入都重新打开文件，所以请求可以被重试。
+     */
+    static final class FileRequestBody extends RequestBody {
+        private final File file;
+
+        FileRequestBody(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return file.length();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            FileInputStream input = new FileInputStream(file);
+            try {
+                transfer(input.getChannel(), 0L, file.length(), sink);
+            } finally {
+                input.close();
+            }
+        }
+    }
+
+    /**
+     * 使用绝对位置读取通道，不改变通道的位置，也不关闭调用方的通道。
+     */
+    static final class FileChannelRequestBody extends RequestBody {
+        private final FileChannel channel;
+        private final long position;
+        private final long byteCount;
+
+        FileChannelRequestBody(FileChannel channel, long position, long byteCount) {
+            this.channel = channel;
+            this.position = position;
+            this.byteCount = byteCount;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return byteCount;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            transfer(channel, position, byteCount, sink);
+        }
+    }
+
+    /**
+     * 写入缓冲区的副本，调用方缓冲区的 position 保持不变。MappedByteBuffer 也走这里。
+     */
+    static final class ByteBufferRequestBody extends RequestBody {
+        private final ByteBuffer buffer;
+
+        ByteBufferRequestBody(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            sink.write(buffer.duplicate());
+        }
+    }
+
+    /**
+     * 长度未知，使用分块传输编码发送。流只能读取一次，写入后关闭，
+     * 所以 OkHttp 不会在重试或 307/308 重定向时重发它。
+     */
+    static final class InputStreamRequestBody extends OneShotRequestBody {
+        private final InputStream input;
+
+        InputStreamRequestBody(InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            Source source = Okio.source(input);
+            try {
+                sink.writeAll(source);
+            } finally {
+                source.close();
+            }
+        }
+    }
+
+    @IgnoreJRERequirement // Only classloaded and used on Java 7.
+    static final class PathRequestBody extends RequestBody {
+        private final Path path;
+        private final long byteCount;
+
+        PathRequestBody(Path path, long byteCount) {
+            this.path = path;
+            this.byteCount = byteCount;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return byteCount;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            FileChannel channel = FileChannel.open(path);
+            try {
+                transfer(channel, 0L, byteCount, sink);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * 把通道中 [position, position + byteCount) 的内容传输到 sink。BufferedSink 本身就是
+     * WritableByteChannel，数据不经过 byte[]。
+     */
+    static void transfer(FileChannel channel, long position, long byteCount, BufferedSink sink)
+            throws IOException {
+        long end = position + byteCount;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, sink);
+            if (transferred <= 0L) {
+                throw new IOException("Expected " + byteCount + " bytes but the file ended at " + position);
+            }
+            position += transferred;
+        }
+    }
+
+    static final class MultipartReaderConverter<T>
+            implements Converter<ResponseBody, MultipartReader<T>> {
+        private final Converter<ResponseBody, T> partConverter;
+
+        MultipartReaderConverter(Converter<ResponseBody, T> partConverter) {
+            this.partConverter = partConverter;
+        }
+
+        @Override
+        public MultipartReader<T> convert(ResponseBody value) throws IOException {
+            MediaType contentType = value.contentType();
+            String boundary = contentType != null && "multipart".equals(contentType.type())
+                    ? boundary(contentType.toString())
+                    : null;
+            if (boundary == null) {
+                value.close();
+                throw new IOException("Expected a multipart body with a boundary but was "
+                        + contentType);
+            }
+            return new MultipartReader<>(value, boundary, partConverter);
+        }
+
+        /**
+         * 从 "multipart/mixed; boundary=xyz" 中取出 boundary 参数，可能带引号
+         */
+        static @Nullable
+        String boundary(String contentType) {
+            for (String parameter : contentType.split(";")) {
+                int equals = parameter.indexOf('=');
+                if (equals == -1
+                        || !"boundary".equalsIgnoreCase(parameter.substring(0, equals).trim())) {
+                    continue;
+                }
+                String value = parameter.substring(equals + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value.isEmpty() ? null : value;
+            }
+            return null;
+        }
+    }
+
+    static final class LazyConverter<T> implements Converter<ResponseBody, Lazy<T>> {
+        private final Converter<ResponseBody, T> bodyConverter;
+
+        LazyConverter(Converter<ResponseBody, T> bodyConverter) {
+            this.bodyConverter = bodyConverter;
+        }
+
+        @Override
+        public Lazy<T> convert(ResponseBody value) throws IOException {
+            return Lazy.read(bodyConverter, value);
+        }
+    }
+
     static final class StreamingResponseBodyConverter
             implements Converter<ResponseBody, ResponseBody> {
         static final StreamingResponseBodyConverter INSTANCE = new StreamingResponseBodyConverter();
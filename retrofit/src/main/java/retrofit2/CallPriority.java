@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+/**
+ * 请求的优先级，作为 Request 的 tag 保存，由 {@link LimitingCallFactory} 在排队时使用
+ */
+final class CallPriority {
+    final int value;
+
+    CallPriority(int value) {
+        this.value = value;
+    }
+
+    static int of(okhttp3.Request request) {
+        CallPriority priority = request.tag(CallPriority.class);
+        return priority != null ? priority.value : 0;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 合并回调的执行器：同一时间最多只向 {@link #delegate} 提交一个任务，该任务一次执行队列中
+ * 积攒的多个回调。在 Android 上，一批同时完成的请求只需要向主线程 Handler 投递一条消息。
+ */
+final class CoalescingExecutor implements Executor, Runnable {
+    /**
+     * 每次最多执行的回调数量，超出的部分重新提交，让出线程给其他任务（例如绘制下一帧）
+     */
+    static final int MAX_BATCH_SIZE = 64;
+
+    final Executor delegate;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    CoalescingExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        queue.offer(command);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            delegate.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                Runnable command = queue.poll();
+                if (command == null) break;
+                command.run();
+            }
+        } finally {
+            // 即使某个回调抛出了异常，剩下的回调也要继续执行
+            scheduled.set(false);
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
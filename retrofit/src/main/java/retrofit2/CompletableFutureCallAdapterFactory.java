@@ -20,10 +20,14 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import javax.annotation.Nullable;
 
 import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 
+import static retrofit2.Utils.checkNotNull;
+
 /**
  * A {@linkplain CallAdapter.Factory call adapter} which creates Java 8 futures.
  * <p>
@@ -44,10 +48,40 @@ import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
  * {@link Response} object for all HTTP responses and sets {@link IOException} for network
  * errors</li>
  * </ul>
+ * Cancelling a returned future, or completing it by other means such as a timeout, cancels the
+ * underlying HTTP call. Use {@link #create(Executor)} to complete futures on a specific executor.
  */
 @IgnoreJRERequirement
-final class CompletableFutureCallAdapterFactory extends CallAdapter.Factory {
-    static final CallAdapter.Factory INSTANCE = new CompletableFutureCallAdapterFactory();
+public final class CompletableFutureCallAdapterFactory extends CallAdapter.Factory {
+    static final CompletableFutureCallAdapterFactory INSTANCE = new CompletableFutureCallAdapterFactory(null);
+
+    /**
+     * Returns an instance which completes futures on OkHttp's dispatcher thread. This is the
+     * factory Retrofit installs by default on Java 8.
+     */
+    public static CompletableFutureCallAdapterFactory create() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns an instance which completes futures on {@code completionExecutor}. Dependent stages
+     * which are not explicitly async then also run on that executor, keeping heavy work off of the
+     * threads which OkHttp sizes for I/O.
+     * <p>
+     * Add it with {@link Retrofit.Builder#addCallAdapterFactory} so it takes precedence over the
+     * default instance.
+     */
+    public static CompletableFutureCallAdapterFactory create(Executor completionExecutor) {
+        return new CompletableFutureCallAdapterFactory(
+                checkNotNull(completionExecutor, "completionExecutor == null"));
+    }
+
+    private final @Nullable
+    Executor completionExecutor;
+
+    private CompletableFutureCallAdapterFactory(@Nullable Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+    }
 
     @Override
     public @Nullable
@@ -64,7 +98,7 @@ final class CompletableFutureCallAdapterFactory extends CallAdapter.Factory {
 
         if (getRawType(innerType) != Response.class) {
             // Generic type is not Response<T>. Use it for body-only adapter.
-            return new BodyCallAdapter<>(innerType);
+            return new BodyCallAdapter<>(innerType, completionExecutor);
         }
 
         // Generic type is Response<T>. Extract T and create the Response version of the adapter.
@@ -73,15 +107,18 @@ final class CompletableFutureCallAdapterFactory extends CallAdapter.Factory {
                     + " as Response<Foo> or Response<? extends Foo>");
         }
         Type responseType = getParameterUpperBound(0, (ParameterizedType) innerType);
-        return new ResponseCallAdapter<>(responseType);
+        return new ResponseCallAdapter<>(responseType, completionExecutor);
     }
 
     @IgnoreJRERequirement
     private static final class BodyCallAdapter<R> implements CallAdapter<R, CompletableFuture<R>> {
         private final Type responseType;
+        private final @Nullable
+        Executor completionExecutor;
 
-        BodyCallAdapter(Type responseType) {
+        BodyCallAdapter(Type responseType, @Nullable Executor completionExecutor) {
             this.responseType = responseType;
+            this.completionExecutor = completionExecutor;
         }
 
         @Override
@@ -90,33 +127,9 @@ final class CompletableFutureCallAdapterFactory extends CallAdapter.Factory {
         }
 
         @Override
-        public CompletableFuture<R> adapt(final Call<R> call) {
-            final CompletableFuture<R> future = new CompletableFuture<R>() {
-                @Override
-                public boolean cancel(boolean mayInterruptIfRunning) {
-                    if (mayInterruptIfRunning) {
-                        call.cancel();
-                    }
-                    return super.cancel(mayInterruptIfRunning);
-                }
-            };
-
-            call.enqueue(new Callback<R>() {
-                @Override
-                public void onResponse(Call<R> call, Response<R> response) {
-                    if (response.isSuccessful()) {
-                        future.complete(response.body());
-                    } else {
-                        future.completeExceptionally(new HttpException(response));
-                    }
-                }
-
-                @Override
-                public void onFailure(Call<R> call, Throwable t) {
-                    future.completeExceptionally(t);
-                }
-            });
-
+        public CompletableFuture<R> adapt(Call<R> call) {
+            BodyCallbackFuture<R> future = new BodyCallbackFuture<>(call, completionExecutor);
+            call.enqueue(future);
             return future;
         }
     }
@@ -125,9 +138,12 @@ final class CompletableFutureCallAdapterFactory extends CallAdapter.Factory {
     private static final class ResponseCallAdapter<R>
             implements CallAdapter<R, CompletableFuture<Response<R>>> {
         private final Type responseType;
+        private final @Nullable
+        Executor completionExecutor;
 
-        ResponseCallAdapter(Type responseType) {
+        ResponseCallAdapter(Type responseType, @Nullable Executor completionExecutor) {
             this.responseType = responseType;
+            this.completionExecutor = completionExecutor;
         }
 
         @Override
@@ -136,30 +152,141 @@ final class CompletableFutureCallAdapterFactory extends CallAdapter.Factory {
         }
 
         @Override
-        public CompletableFuture<Response<R>> adapt(final Call<R> call) {
-            final CompletableFuture<Response<R>> future = new CompletableFuture<Response<R>>() {
-                @Override
-                public boolean cancel(boolean mayInterruptIfRunning) {
-                    if (mayInterruptIfRunning) {
-                        call.cancel();
-                    }
-                    return super.cancel(mayInterruptIfRunning);
-                }
-            };
+        public CompletableFuture<Response<R>> adapt(Call<R> call) {
+            ResponseCallbackFuture<R> future = new ResponseCallbackFuture<>(call, completionExecutor);
+            call.enqueue(future);
+            return future;
+        }
+    }
+
+    /**
+     * A future which is also the {@link Callback} of the call it represents, so that adapting a
+     * call allocates a single object.
+     * <p>
+     * Completing the future from the outside (including by {@link #cancel} or a Java 9
+     * {@code orTimeout}) cancels the underlying call so that it stops occupying a connection.
+     */
+    @IgnoreJRERequirement
+    private abstract static class CallbackFuture<T, R> extends CompletableFuture<T>
+            implements Callback<R>, Runnable {
+        private final Call<R> call;
+        private final @Nullable
+        Executor completionExecutor;
+        // Handed to completionExecutor through run(). Its execute() provides the happens-before edge.
+        private @Nullable
+        Response<R> response;
+        private @Nullable
+        Throwable failure;
+
+        CallbackFuture(Call<R> call, @Nullable Executor completionExecutor) {
+            this.call = call;
+            this.completionExecutor = completionExecutor;
+        }
 
-            call.enqueue(new Callback<R>() {
-                @Override
-                public void onResponse(Call<R> call, Response<R> response) {
-                    future.complete(response);
+        /** Complete this future from {@code response}, which is never null. */
+        abstract void deliver(Response<R> response);
+
+        @Override
+        public final void onResponse(Call<R> call, Response<R> response) {
+            if (completionExecutor == null) {
+                deliver(response);
+            } else {
+                this.response = response;
+                try {
+                    completionExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // OkHttpCall 会吞掉回调抛出的异常，不在这里完成的话 future 永远不会完成
+                    fail(e);
                 }
+            }
+        }
 
-                @Override
-                public void onFailure(Call<R> call, Throwable t) {
-                    future.completeExceptionally(t);
+        @Override
+        public final void onFailure(Call<R> call, Throwable t) {
+            if (completionExecutor == null) {
+                fail(t);
+            } else {
+                this.failure = t;
+                try {
+                    completionExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    fail(t);
                 }
-            });
+            }
+        }
 
-            return future;
+        @Override
+        public final void run() {
+            Throwable failure = this.failure;
+            if (failure != null) {
+                fail(failure);
+            } else {
+                //noinspection ConstantConditions Set whenever failure is not.
+                deliver(response);
+            }
+        }
+
+        final void succeed(@Nullable T value) {
+            super.complete(value);
+        }
+
+        final void fail(Throwable t) {
+            super.completeExceptionally(t);
+        }
+
+        @Override
+        public boolean complete(T value) {
+            boolean completed = super.complete(value);
+            if (completed) {
+                call.cancel();
+            }
+            return completed;
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable ex) {
+            boolean completed = super.completeExceptionally(ex);
+            if (completed) {
+                call.cancel();
+            }
+            return completed;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean canceled = super.cancel(mayInterruptIfRunning);
+            if (canceled) {
+                call.cancel();
+            }
+            return canceled;
+        }
+    }
+
+    @IgnoreJRERequirement
+    private static final class BodyCallbackFuture<R> extends CallbackFuture<R, R> {
+        BodyCallbackFuture(Call<R> call, @Nullable Executor completionExecutor) {
+            super(call, completionExecutor);
+        }
+
+        @Override
+        void deliver(Response<R> response) {
+            if (response.isSuccessful()) {
+                succeed(response.body());
+            } else {
+                fail(new HttpException(response));
+            }
+        }
+    }
+
+    @IgnoreJRERequirement
+    private static final class ResponseCallbackFuture<R> extends CallbackFuture<Response<R>, R> {
+        ResponseCallbackFuture(Call<R> call, @Nullable Executor completionExecutor) {
+            super(call, completionExecutor);
+        }
+
+        @Override
+        void deliver(Response<R> response) {
+            succeed(response);
         }
     }
 }
@@ -0,0 +1,470 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import okhttp3.Request;
+
+/**
+ * Limits how many calls may be in flight at once, adjusting the limit to the latency observed for
+ * each host or each service interface. Calls beyond the limit wait in a queue and are rejected with
+ * an {@link IOException} once the queue is full. Waiting calls have not been handed to the
+ * {@linkplain Retrofit#callFactory() call factory} yet, so they hold no connection or thread.
+ * <p>
+ * Unlike a fixed {@link okhttp3.Dispatcher#setMaxRequestsPerHost(int) per-host maximum}, the limit
+ * grows while a backend answers quickly and shrinks when its latency rises or it starts failing,
+ * which sheds load before the backend is overwhelmed.
+ * <p>
+ * Waiting calls are started in order of their {@link retrofit2.http.Priority @Priority}, so
+ * interactive calls overtake background traffic. A call which has waited longer than the
+ * {@linkplain Builder#starvationThreshold starvation threshold} goes first regardless of priority.
+ * <pre><code>
+ * ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+ *     .algorithm(ConcurrencyLimiter.Algorithm.GRADIENT)
+ *     .partition(ConcurrencyLimiter.Partition.SERVICE)
+ *     .build();
+ * Retrofit retrofit = new Retrofit.Builder()
+ *     .baseUrl("https://api.example.com/")
+ *     .concurrencyLimiter(limiter)
+ *     .build();
+ * </code></pre>
+ * The current state of each partition is available from {@link #limit(String)},
+ * {@link #inFlight(String)}, {@link #queued(String)} and {@link #rejected(String)} for export as
+ * metrics.
+ */
+public final class ConcurrencyLimiter {
+    /**
+     * How the limit reacts to the round-trip time of completed calls.
+     */
+    public enum Algorithm {
+        /**
+         * Additive increase, multiplicative decrease. The limit grows by one while it is being used
+         * and shrinks by 10% when a call fails. Latency is ignored.
+         */
+        AIMD,
+        /**
+         * Estimates the number of queued calls from the ratio of the lowest round-trip time seen to
+         * the current one, like TCP Vegas, growing the limit while the estimated queue is short and
+         * shrinking it when the queue builds up.
+         */
+        VEGAS,
+        /**
+         * Scales the limit by the ratio of the long-term average round-trip time to the current one,
+         * so it shrinks as soon as latency rises above its usual level.
+         */
+        GRADIENT
+    }
+
+    /**
+     * The calls which share a limit.
+     */
+    public enum Partition {
+        /**
+         * One limit for each host.
+         */
+        HOST,
+        /**
+         * One limit for each service interface. Calls not created by a service method fall back to
+         * their host.
+         */
+        SERVICE,
+        /**
+         * One limit shared by all calls, named {@code "*"}.
+         */
+        GLOBAL
+    }
+
+    final Algorithm algorithm;
+    final Partition partition;
+    final int initialLimit;
+    final int minLimit;
+    final int maxLimit;
+    final int maxQueueSize;
+    final long starvationThresholdNanos;
+
+    @GuardedBy("limits")
+    private final Map<String, Limit> limits = new LinkedHashMap<>();
+
+    ConcurrencyLimiter(Builder builder) {
+        this.algorithm = builder.algorithm;
+        this.partition = builder.partition;
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.starvationThresholdNanos = builder.starvationThresholdNanos;
+    }
+
+    /**
+     * Returns the names of the partitions which have seen calls: host names or fully-qualified
+     * service interface names.
+     */
+    public Set<String> partitions() {
+        synchronized (limits) {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(limits.keySet()));
+        }
+    }
+
+    /**
+     * Returns the number of calls currently allowed in flight for {@code partition}.
+     */
+    public int limit(String partition) {
+        Limit limit = existing(partition);
+        return limit != null ? limit.limit() : initialLimit;
+    }
+
+    /**
+     * Returns the number of calls in flight for {@code partition}.
+     */
+    public int inFlight(String partition) {
+        Limit limit = existing(partition);
+        return limit != null ? limit.inFlight() : 0;
+    }
+
+    /**
+     * Returns the number of calls waiting for {@code partition}'s limit.
+     */
+    public int queued(String partition) {
+        Limit limit = existing(partition);
+        return limit != null ? limit.queued() : 0;
+    }
+
+    /**
+     * Returns the number of calls rejected for {@code partition} because its queue was full.
+     */
+    public long rejected(String partition) {
+        Limit limit = existing(partition);
+        return limit != null ? limit.rejected() : 0L;
+    }
+
+    private @Nullable
+    Limit existing(String partition) {
+        Utils.checkNotNull(partition, "partition == null");
+        synchronized (limits) {
+            return limits.get(partition);
+        }
+    }
+
+    /**
+     * 返回请求所属分区的限制，不存在时创建
+     */
+    Limit limitFor(Request request) {
+        String name = null;
+        if (partition == Partition.GLOBAL) {
+            name = "*";
+        } else if (partition == Partition.SERVICE) {
+            Invocation invocation = request.tag(Invocation.class);
+            if (invocation != null) {
+                name = invocation.method().getDeclaringClass().getName();
+            }
+        }
+        if (name == null) {
+            name = request.url().host();
+        }
+        synchronized (limits) {
+            Limit limit = limits.get(name);
+            if (limit == null) {
+                limit = new Limit(name);
+                limits.put(name, limit);
+            }
+            return limit;
+        }
+    }
+
+    /**
+     * 一个分区的并发限制：统计正在执行和排队的请求，并根据每个请求的耗时调整限制
+     */
+    final class Limit {
+        final String name;
+        @GuardedBy("this")
+        private final CallQueue queue = new CallQueue();
+        @GuardedBy("this")
+        private double estimate = initialLimit;
+        @GuardedBy("this")
+        private int limit = initialLimit;
+        @GuardedBy("this")
+        private int inFlight;
+        @GuardedBy("this")
+        private long rejected;
+        // VEGAS：观察到的最短耗时
+        @GuardedBy("this")
+        private long minRttNanos = Long.MAX_VALUE;
+        // GRADIENT：耗时的长期平均值
+        @GuardedBy("this")
+        private double longRttNanos;
+
+        Limit(String name) {
+            this.name = name;
+        }
+
+        synchronized int limit() {
+            return limit;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        synchronized int queued() {
+            return queue.size();
+        }
+
+        synchronized long rejected() {
+            return rejected;
+        }
+
+        /**
+         * 有空位时立即占用并返回 true；否则放入队列并返回 false，队列已满时拒绝
+         */
+        synchronized boolean acquire(LimitingCallFactory.LimitedCall call) throws IOException {
+            if (inFlight < limit && queue.isEmpty()) {
+                inFlight++;
+                return true;
+            }
+            if (queue.size() >= maxQueueSize) {
+                rejected++;
+                throw new IOException("Concurrency limit exceeded for " + name + ": " + inFlight
+                        + " calls in flight, " + queue.size() + " queued");
+            }
+            call.enqueuedNanos = System.nanoTime();
+            queue.add(call);
+            return false;
+        }
+
+        /**
+         * 从队列中移除还没有开始的请求，已经开始时返回 false
+         */
+        synchronized boolean remove(LimitingCallFactory.LimitedCall call) {
+            return queue.remove(call);
+        }
+
+        /**
+         * 请求结束时释放占用的位置。{@code rttNanos} 为 -1 表示请求被取消，不参与限制的调整。
+         * 返回可以开始执行的排队请求，由调用方在锁外启动。
+         */
+        List<LimitingCallFactory.LimitedCall> release(long rttNanos, boolean dropped) {
+            List<LimitingCallFactory.LimitedCall> ready = null;
+            synchronized (this) {
+                if (rttNanos != -1L) {
+                    update(Math.max(1L, rttNanos), dropped);
+                }
+                inFlight--;
+                long now = System.nanoTime();
+                while (inFlight < limit && !queue.isEmpty()) {
+                    if (ready == null) ready = new ArrayList<>();
+                    ready.add(queue.poll(now, starvationThresholdNanos));
+                    inFlight++;
+                }
+            }
+            return ready != null ? ready : Collections.<LimitingCallFactory.LimitedCall>emptyList();
+        }
+
+        @GuardedBy("this")
+        private void update(long rttNanos, boolean dropped) {
+            // 只有限制被充分使用时才增长，否则空闲时限制会无限增大
+            boolean saturated = inFlight * 2 >= limit;
+            switch (algorithm) {
+                case AIMD:
+                    if (dropped) {
+                        estimate = estimate * 0.9;
+                    } else if (saturated) {
+                        estimate = estimate + 1.0;
+                    }
+                    break;
+
+                case VEGAS:
+                    minRttNanos = Math.min(minRttNanos, rttNanos);
+                    double step = Math.max(1.0, Math.log10(limit));
+                    double queueSize = limit * (1.0 - (double) minRttNanos / rttNanos);
+                    if (dropped || queueSize > 6.0 * step) {
+                        estimate = limit - step;
+                    } else if (queueSize < 3.0 * step && saturated) {
+                        estimate = limit + step;
+                    }
+                    break;
+
+                case GRADIENT:
+                    longRttNanos = longRttNanos == 0.0
+                            ? rttNanos
+                            : longRttNanos * 0.95 + rttNanos * 0.05;
+                    double gradient = dropped
+                            ? 0.5
+                            : Math.max(0.5, Math.min(1.0, longRttNanos / rttNanos));
+                    double target = limit * gradient + Math.sqrt(limit);
+                    if (!saturated && target > limit) {
+                        target = limit;
+                    }
+                    estimate = estimate * 0.8 + target * 0.2;
+                    break;
+
+                default:
+                    throw new AssertionError();
+            }
+            estimate = Math.max(minLimit, Math.min(maxLimit, estimate));
+            limit = (int) estimate;
+        }
+    }
+
+    /**
+     * 等待中的请求：优先级高的先出队，同一优先级先进先出。
+     * 各优先级的队首就是该优先级等待最久的请求，等待超过阈值时其中最早的一个先出队，防止饿死。
+     */
+    static final class CallQueue {
+        private final TreeMap<Integer, ArrayDeque<LimitingCallFactory.LimitedCall>> levels =
+                new TreeMap<>(Collections.<Integer>reverseOrder());
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(LimitingCallFactory.LimitedCall call) {
+            ArrayDeque<LimitingCallFactory.LimitedCall> level = levels.get(call.priority);
+            if (level == null) {
+                level = new ArrayDeque<>();
+                levels.put(call.priority, level);
+            }
+            level.add(call);
+            size++;
+        }
+
+        boolean remove(LimitingCallFactory.LimitedCall call) {
+            ArrayDeque<LimitingCallFactory.LimitedCall> level = levels.get(call.priority);
+            if (level == null || !level.remove(call)) return false;
+            if (level.isEmpty()) levels.remove(call.priority);
+            size--;
+            return true;
+        }
+
+        LimitingCallFactory.LimitedCall poll(long now, long starvationThresholdNanos) {
+            ArrayDeque<LimitingCallFactory.LimitedCall> chosen = null;
+            LimitingCallFactory.LimitedCall oldest = null;
+            for (ArrayDeque<LimitingCallFactory.LimitedCall> level : levels.values()) {
+                LimitingCallFactory.LimitedCall head = level.peek();
+                if (now - head.enqueuedNanos >= starvationThresholdNanos
+                        && (oldest == null || head.enqueuedNanos - oldest.enqueuedNanos < 0L)) {
+                    chosen = level;
+                    oldest = head;
+                }
+            }
+            if (chosen == null) {
+                chosen = levels.firstEntry().getValue();
+            }
+            LimitingCallFactory.LimitedCall call = chosen.poll();
+            if (chosen.isEmpty()) levels.remove(call.priority);
+            size--;
+            return call;
+        }
+    }
+
+    /**
+     * Build a new {@link ConcurrencyLimiter}.
+     */
+    public static final class Builder {
+        Algorithm algorithm = Algorithm.GRADIENT;
+        Partition partition = Partition.HOST;
+        int initialLimit = 20;
+        int minLimit = 1;
+        int maxLimit = 200;
+        int maxQueueSize = 100;
+        long starvationThresholdNanos = TimeUnit.SECONDS.toNanos(5);
+
+        /**
+         * The algorithm which adjusts the limit. Defaults to {@link Algorithm#GRADIENT}.
+         */
+        public Builder algorithm(Algorithm algorithm) {
+            this.algorithm = Utils.checkNotNull(algorithm, "algorithm == null");
+            return this;
+        }
+
+        /**
+         * Which calls share a limit. Defaults to {@link Partition#HOST}.
+         */
+        public Builder partition(Partition partition) {
+            this.partition = Utils.checkNotNull(partition, "partition == null");
+            return this;
+        }
+
+        /**
+         * The limit of a partition before any of its calls complete. Defaults to 20.
+         */
+        public Builder initialLimit(int initialLimit) {
+            if (initialLimit < 1) throw new IllegalArgumentException("initialLimit < 1: " + initialLimit);
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * The range the limit is kept within. Defaults to 1 through 200.
+         */
+        public Builder limitRange(int minLimit, int maxLimit) {
+            if (minLimit < 1) throw new IllegalArgumentException("minLimit < 1: " + minLimit);
+            if (maxLimit < minLimit) {
+                throw new IllegalArgumentException("maxLimit < minLimit: " + maxLimit + " < " + minLimit);
+            }
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * The number of calls of each partition which may wait for the limit. Calls beyond it fail
+         * immediately. Defaults to 100; zero rejects every call over the limit.
+         */
+        public Builder maxQueueSize(int maxQueueSize) {
+            if (maxQueueSize < 0) throw new IllegalArgumentException("maxQueueSize < 0: " + maxQueueSize);
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * How long a call may wait before it is started ahead of calls with a higher
+         * {@link retrofit2.http.Priority @Priority}. Defaults to 5 seconds; zero starts calls in the
+         * order they were made.
+         */
+        public Builder starvationThreshold(long duration, TimeUnit unit) {
+            Utils.checkNotNull(unit, "unit == null");
+            if (duration < 0L) throw new IllegalArgumentException("duration < 0: " + duration);
+            this.starvationThresholdNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            if (initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalStateException("initialLimit " + initialLimit
+                        + " is outside of the limit range " + minLimit + ".." + maxLimit);
+            }
+            return new ConcurrencyLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A point in time by which a call must complete. Calls made while a deadline is
+ * {@linkplain #current() current} on the calling thread inherit it, so a call started from the
+ * callback of another call shares the remaining budget of the original call instead of starting
+ * afresh. A call whose deadline has already passed fails with an
+ * {@link java.io.InterruptedIOException InterruptedIOException} without being sent, and a call
+ * which is still running when its deadline passes is canceled.
+ * <pre><code>
+ * Deadline previous = Deadline.after(2, SECONDS).attach();
+ * try {
+ *   User user = service.user(id).execute().body();
+ *   List&lt;Repo&gt; repos = service.repos(user.login).execute().body();
+ * } finally {
+ *   Deadline.detach(previous);
+ * }
+ * </code></pre>
+ * Retrofit makes the deadline of a call current while invoking its {@link Callback}. Use
+ * {@link retrofit2.http.Timeout @Timeout} to give every call of a method its own deadline.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 以 {@link System#nanoTime()} 表示的截止时间
+     */
+    final long nanoTime;
+
+    private Deadline(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Returns a deadline {@code duration} from now.
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        if (duration < 0L) throw new IllegalArgumentException("duration < 0: " + duration);
+        Utils.checkNotNull(unit, "unit == null");
+        return afterNanos(unit.toNanos(duration));
+    }
+
+    static Deadline afterNanos(long nanos) {
+        return new Deadline(System.nanoTime() + nanos);
+    }
+
+    /**
+     * Returns the deadline attached to the calling thread, or null if there is none.
+     */
+    public static @Nullable
+    Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Make this the {@linkplain #current() current} deadline of the calling thread and return the
+     * previous one, which must be restored with {@link #detach(Deadline)}.
+     */
+    public @Nullable
+    Deadline attach() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    /**
+     * Restore {@code previous}, as returned by {@link #attach()}, as the current deadline.
+     */
+    public static void detach(@Nullable Deadline previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Returns the time left before this deadline, which is negative once it has passed.
+     */
+    public long timeRemaining(TimeUnit unit) {
+        return unit.convert(nanoTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return nanoTime - System.nanoTime() <= 0L;
+    }
+
+    /**
+     * 返回两个截止时间中较早的一个
+     */
+    static @Nullable
+    Deadline earliest(@Nullable Deadline a, @Nullable Deadline b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.nanoTime - b.nanoTime <= 0L ? a : b;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline(" + timeRemaining(TimeUnit.MILLISECONDS) + "ms remaining)";
+    }
+}
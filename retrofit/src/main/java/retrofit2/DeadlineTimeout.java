@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import okio.AsyncTimeout;
+
+/**
+ * 在截止时间到达时取消 OkHttp 的请求。使用 Okio 的 watchdog 线程，不需要额外的线程池。
+ */
+final class DeadlineTimeout extends AsyncTimeout {
+    private final okhttp3.Call call;
+
+    DeadlineTimeout(okhttp3.Call call, Deadline deadline) {
+        this.call = call;
+        deadlineNanoTime(deadline.nanoTime);
+    }
+
+    @Override
+    protected void timedOut() {
+        call.cancel();
+    }
+
+    /**
+     * 停止计时。如果请求是因为超时而失败的，返回 InterruptedIOException 代替原来的异常。
+     */
+    Throwable exit(Throwable cause) {
+        if (!exit() || !(cause instanceof IOException)) return cause;
+        InterruptedIOException e = new InterruptedIOException("Deadline exceeded");
+        e.initCause(cause);
+        return e;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ProtocolException;
+import java.nio.channels.FileChannel;
+import javax.annotation.Nullable;
+
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * {@link retrofit2.http.Destination @Destination} 下载的目标文件，作为 tag 附加在请求上。
+ * 响应体不经过转换器，由 {@link OkHttpCall} 直接交给 {@link #write} 写入磁盘。
+ * <p>
+ * 可续传的下载在写入期间把响应的 ETag 或 Last-Modified 保存在旁边的 {@link #validatorFile} 中，
+ * 续传时作为 If-Range 发送：服务器上的文件变化后会返回完整内容，而不是接在旧内容后面。
+ * 下载完成后删除这个文件。
+ */
+final class DownloadTarget {
+    /**
+     * 每次 transferFrom 的最大字节数，也是进度回调的粒度
+     */
+    static final long CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 占位转换器：下载方法的响应体由 {@link #write} 处理，不会调用到这里
+     */
+    static final Converter<ResponseBody, File> CONVERTER = new Converter<ResponseBody, File>() {
+        @Override
+        public File convert(ResponseBody value) {
+            throw new AssertionError("Downloads are written by their DownloadTarget.");
+        }
+    };
+
+    final File file;
+    final boolean resume;
+    final @Nullable
+    ProgressListener listener;
+    // 上次下载保存的 ETag 或 Last-Modified，没有时无法确认已有内容仍然有效
+    final @Nullable
+    String validator;
+    // 发起请求时文件中已有的字节数，只有 resume 并且有 validator 时才会大于 0
+    final long offset;
+
+    DownloadTarget(File file, boolean resume, @Nullable ProgressListener listener) {
+        this.file = file;
+        this.resume = resume;
+        this.listener = listener;
+        this.validator = resume ? readValidator(validatorFile(file)) : null;
+        this.offset = validator != null ? file.length() : 0L;
+    }
+
+    /**
+     * 保存 {@code file} 续传校验值的文件
+     */
+    static File validatorFile(File file) {
+        return new File(file.getPath() + ".validator");
+    }
+
+    /**
+     * 续传时添加 Range 和 If-Range 头，没有可续传的内容时什么也不做
+     */
+    void addRangeHeaders(Request.Builder requestBuilder) {
+        String validator = this.validator;
+        if (offset > 0L && validator != null) {
+            requestBuilder.header("Range", "bytes=" + offset + "-");
+            requestBuilder.header("If-Range", validator);
+        }
+    }
+
+    /**
+     * 将响应体写入文件并返回该文件。206 响应追加在已有内容之后，其他成功响应覆盖整个文件。
+     */
+    File write(ResponseBody body, okhttp3.Response rawResponse) throws IOException {
+        try {
+            long start = 0L;
+            if (rawResponse.code() == 206) {
+                start = contentRangeStart(rawResponse.header("Content-Range"));
+                if (start != offset) {
+                    throw new ProtocolException("Expected range starting at " + offset
+                            + " but was " + rawResponse.header("Content-Range"));
+                }
+            }
+
+            if (resume) {
+                saveValidator(rawResponse);
+            }
+
+            long contentLength = body.contentLength();
+            long total = contentLength != -1L ? start + contentLength : -1L;
+
+            RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel channel = output.getChannel();
+                channel.truncate(start);
+
+                // BufferedSource 本身就是 ReadableByteChannel，数据直接从 Okio 的 Segment 写入文件通道
+                BufferedSource source = body.source();
+                long position = start;
+                long transferred;
+                while ((transferred = channel.transferFrom(source, position, CHUNK_SIZE)) > 0L) {
+                    position += transferred;
+                    if (listener != null) {
+                        listener.onProgress(position, total);
+                    }
+                }
+
+                if (total != -1L && position != total) {
+                    throw new ProtocolException(
+                            "Expected " + contentLength + " bytes but received " + (position - start));
+                }
+            } finally {
+                output.close();
+            }
+            if (resume) {
+                // 下载完成，不再需要续传
+                validatorFile(file).delete();
+            }
+            return file;
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * 保存这次响应的校验值，供中断后续传使用。If-Range 只能使用强 ETag，弱 ETag 时退回 Last-Modified
+     */
+    private void saveValidator(okhttp3.Response rawResponse) throws IOException {
+        File validatorFile = validatorFile(file);
+        String validator = rawResponse.header("ETag");
+        if (validator == null || validator.startsWith("W/")) {
+            validator = rawResponse.header("Last-Modified");
+        }
+        if (validator == null) {
+            validatorFile.delete();
+            return;
+        }
+        BufferedSink sink = Okio.buffer(Okio.sink(validatorFile));
+        try {
+            sink.writeUtf8(validator);
+        } finally {
+            sink.close();
+        }
+    }
+
+    @Nullable
+    private static String readValidator(File validatorFile) {
+        if (!validatorFile.isFile()) return null;
+        try {
+            BufferedSource source = Okio.buffer(Okio.source(validatorFile));
+            try {
+                String validator = source.readUtf8().trim();
+                return validator.isEmpty() ? null : validator;
+            } finally {
+                source.close();
+            }
+        } catch (IOException e) {
+            return null; // 读不到时重新下载整个文件
+        }
+    }
+
+    /**
+     * 解析 "bytes 100-199/200" 形式的 Content-Range 头中的起始位置
+     */
+    private static long contentRangeStart(@Nullable String contentRange) throws ProtocolException {
+        if (contentRange != null && contentRange.startsWith("bytes ")) {
+            int dash = contentRange.indexOf('-', 6);
+            if (dash != -1) {
+                try {
+                    return Long.parseLong(contentRange.substring(6, dash).trim());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        throw new ProtocolException("Malformed Content-Range: " + contentRange);
+    }
+}
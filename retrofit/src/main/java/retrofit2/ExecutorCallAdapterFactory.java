@@ -71,32 +71,60 @@ final class ExecutorCallAdapterFactory extends CallAdapter.Factory {
         public void enqueue(final Callback<T> callback) {
             checkNotNull(callback, "callback == null");
 
-            delegate.enqueue(new Callback<T>() {
-                @Override
-                public void onResponse(Call<T> call, final Response<T> response) {
-                    callbackExecutor.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (delegate.isCanceled()) {
-                                // Emulate OkHttp's behavior of throwing/delivering an IOException on cancellation.
-                                callback.onFailure(ExecutorCallbackCall.this, new IOException("Canceled"));
-                            } else {
-                                callback.onResponse(ExecutorCallbackCall.this, response);
-                            }
-                        }
-                    });
-                }
+            delegate.enqueue(new DeliveringCallback(callback));
+        }
+
+        /**
+         * 同时作为 OkHttpCall 的回调和提交给执行器的任务，每个响应不需要再额外创建 Runnable
+         */
+        final class DeliveringCallback implements Callback<T>, Runnable {
+            private final Callback<T> callback;
+            // 由执行器的提交保证对执行线程可见
+            private @Nullable
+            Response<T> response;
+            private @Nullable
+            Throwable failure;
+            // 请求的截止时间，在执行线程上回调时继续生效，使回调中发起的请求继承它
+            private @Nullable
+            Deadline deadline;
+
+            DeliveringCallback(Callback<T> callback) {
+                this.callback = callback;
+            }
+
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                this.response = response;
+                this.deadline = Deadline.current();
+                callbackExecutor.execute(this);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                this.failure = t;
+                this.deadline = Deadline.current();
+                callbackExecutor.execute(this);
+            }
 
-                @Override
-                public void onFailure(Call<T> call, final Throwable t) {
-                    callbackExecutor.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            callback.onFailure(ExecutorCallbackCall.this, t);
-                        }
-                    });
+            @Override
+            public void run() {
+                Deadline deadline = this.deadline;
+                Deadline previous = deadline != null ? deadline.attach() : null;
+                try {
+                    Throwable failure = this.failure;
+                    if (failure != null) {
+                        callback.onFailure(ExecutorCallbackCall.this, failure);
+                    } else if (delegate.isCanceled()) {
+                        // Emulate OkHttp's behavior of throwing/delivering an IOException on cancellation.
+                        callback.onFailure(ExecutorCallbackCall.this, new IOException("Canceled"));
+                    } else {
+                        //noinspection ConstantConditions Set before this was submitted.
+                        callback.onResponse(ExecutorCallbackCall.this, response);
+                    }
+                } finally {
+                    if (deadline != null) Deadline.detach(previous);
                 }
-            });
+            }
         }
 
         @Override
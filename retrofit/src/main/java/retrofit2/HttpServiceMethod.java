@@ -15,18 +15,26 @@
  */
 package retrofit2;
 
+import java.io.File;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
 
+import kotlin.coroutines.Continuation;
 import okhttp3.ResponseBody;
+import retrofit2.http.Bulkhead;
+import retrofit2.http.Streaming;
 
 import static retrofit2.Utils.methodError;
 
 /**
  * 将接口方法的调用调整为HTTP调用
  */
-final class HttpServiceMethod<ResponseT, ReturnT> extends ServiceMethod<ReturnT> {
+abstract class HttpServiceMethod<ResponseT, ReturnT> extends ServiceMethod<ReturnT> {
     /**
      * Inspects the annotations on an interface method to construct a reusable service method that
      * speaks HTTP. This requires potentially-expensive reflection so it is best to build each service
@@ -42,7 +50,31 @@ final class HttpServiceMethod<ResponseT, ReturnT> extends ServiceMethod<ReturnT>
      */
     static <ResponseT, ReturnT> HttpServiceMethod<ResponseT, ReturnT> parseAnnotations(
             Retrofit retrofit, Method method, RequestFactory requestFactory) {
-        CallAdapter<ResponseT, ReturnT> callAdapter = createCallAdapter(retrofit, method);
+        boolean isKotlinSuspendFunction = requestFactory.isKotlinSuspendFunction;
+        boolean continuationWantsResponse = false;
+
+        Type adapterType;
+        if (isKotlinSuspendFunction) {
+            // suspend 方法的真实返回类型在最后一个参数 Continuation<? super T> 的下界中
+            Type[] parameterTypes = method.getGenericParameterTypes();
+            Type responseType = Utils.getParameterLowerBound(0,
+                    (ParameterizedType) parameterTypes[parameterTypes.length - 1]);
+            if (Utils.getRawType(responseType) == Response.class
+                    && responseType instanceof ParameterizedType) {
+                // suspend fun foo(): Response<T>
+                responseType = Utils.getParameterUpperBound(0, (ParameterizedType) responseType);
+                continuationWantsResponse = true;
+            }
+            // 把 suspend 方法当作返回 Call<T> 来查找适配器，再由协程挂起等待结果
+            adapterType = new Utils.ParameterizedTypeImpl(null, Call.class, responseType);
+        } else {
+            adapterType = method.getGenericReturnType();
+        }
+        // 使用规范化的类型，所有方法中相同的返回类型共享同一个实例
+        adapterType = Utils.canonicalize(adapterType, retrofit.canonicalTypes);
+
+        CallAdapter<ResponseT, ReturnT> callAdapter =
+                createCallAdapter(retrofit, method, adapterType);
         Type responseType = callAdapter.responseType(); // 这里的返回类型解释上界
         // 上界的类型不能是 Response 类型，否则直接抛异常
         if (responseType == Response.class || responseType == okhttp3.Response.class) {
@@ -57,16 +89,83 @@ final class HttpServiceMethod<ResponseT, ReturnT> extends ServiceMethod<ReturnT>
         }
 
         // 获得返回结果的转换器
-        Converter<ResponseBody, ResponseT> responseConverter =
-                createResponseConverter(retrofit, method, responseType);
+        Converter<ResponseBody, ResponseT> responseConverter;
+        if (requestFactory.isDownload) {
+            // @Destination 方法的响应体直接写入文件，不经过转换器
+            if (responseType != File.class) {
+                throw methodError(method, "@Destination methods must use File as response type.");
+            }
+            //noinspection unchecked ResponseT is File.
+            responseConverter = (Converter<ResponseBody, ResponseT>) (Converter<?, ?>) DownloadTarget.CONVERTER;
+        } else {
+            responseConverter = createResponseConverter(retrofit, method, responseType);
+        }
 
-        okhttp3.Call.Factory callFactory = retrofit.callFactory;
-        return new HttpServiceMethod<>(requestFactory, callFactory, callAdapter, responseConverter);
+        okhttp3.Call.Factory callFactory = callFactory(retrofit, method);
+        Executor conversionExecutor = conversionExecutor(requestFactory, method, responseType);
+        if (!isKotlinSuspendFunction) {
+            return new CallAdapted<>(requestFactory, callFactory, responseConverter,
+                    conversionExecutor, callAdapter);
+        } else if (continuationWantsResponse) {
+            //noinspection unchecked Kotlin compiler guarantees ReturnT to be Object.
+            return (HttpServiceMethod<ResponseT, ReturnT>) new SuspendForResponse<>(requestFactory,
+                    callFactory, responseConverter, conversionExecutor,
+                    (CallAdapter<ResponseT, Call<ResponseT>>) callAdapter);
+        } else {
+            //noinspection unchecked Kotlin compiler guarantees ReturnT to be Object.
+            return (HttpServiceMethod<ResponseT, ReturnT>) new SuspendForBody<>(requestFactory,
+                    callFactory, responseConverter, conversionExecutor,
+                    (CallAdapter<ResponseT, Call<ResponseT>>) callAdapter);
+        }
+    }
+
+    /**
+     * 只有可能耗时的转换才交给转换线程池，响应体会先在 I/O 线程上读入内存。
+     * 下载到文件、@Streaming 方法和边读边转换的类型（Iterator、MultipartReader）必须在 I/O 线程上读取，
+     * 内置转换器处理的 ResponseBody、Void、Unit 和 Lazy 没有什么计算量，也不切换线程。
+     */
+    private static @Nullable
+    Executor conversionExecutor(RequestFactory requestFactory, Method method, Type responseType) {
+        Executor conversionExecutor = requestFactory.conversionExecutor;
+        if (conversionExecutor == null
+                || requestFactory.isDownload
+                || method.isAnnotationPresent(Streaming.class)) {
+            return null;
+        }
+        Class<?> rawType = Utils.getRawType(responseType);
+        if (Iterator.class.isAssignableFrom(rawType)
+                || rawType == MultipartReader.class
+                || rawType == Lazy.class
+                || rawType == ResponseBody.class
+                || rawType == Void.class
+                || rawType.getName().equals("kotlin.Unit")) {
+            return null;
+        }
+        return conversionExecutor;
+    }
+
+    /**
+     * 方法或者接口上有 @Bulkhead 时使用对应的隔离区，否则使用 Retrofit 的 Call.Factory
+     */
+    private static okhttp3.Call.Factory callFactory(Retrofit retrofit, Method method) {
+        Bulkhead bulkhead = method.getAnnotation(Bulkhead.class);
+        if (bulkhead == null) {
+            bulkhead = method.getDeclaringClass().getAnnotation(Bulkhead.class);
+        }
+        if (bulkhead == null) {
+            return retrofit.callFactory;
+        }
+        okhttp3.Call.Factory callFactory = retrofit.bulkheads.get(bulkhead.value());
+        if (callFactory == null) {
+            throw methodError(method,
+                    "No bulkhead named \"%s\". Register it with Retrofit.Builder.bulkhead().",
+                    bulkhead.value());
+        }
+        return callFactory;
     }
 
     private static <ResponseT, ReturnT> CallAdapter<ResponseT, ReturnT> createCallAdapter(
-            Retrofit retrofit, Method method) {
-        Type returnType = method.getGenericReturnType(); // 获取方法的返回值类型
+            Retrofit retrofit, Method method, Type returnType) {
         Annotation[] annotations = method.getAnnotations(); // 获得当前方法中的所有注解
         try {
             return (CallAdapter<ResponseT, ReturnT>) retrofit.callAdapter(returnType, annotations);
@@ -96,22 +195,22 @@ final class HttpServiceMethod<ResponseT, ReturnT> extends ServiceMethod<ReturnT>
 
     private final RequestFactory requestFactory;
     private final okhttp3.Call.Factory callFactory;
-    private final CallAdapter<ResponseT, ReturnT> callAdapter;
     private final Converter<ResponseBody, ResponseT> responseConverter;
+    private final @Nullable
+    Executor conversionExecutor;
 
     /**
      * @param requestFactory    请求体（请求类型、url等）
      * @param callFactory       网络请求的底层实现（默认是OkHttp）
-     * @param callAdapter       网络请求适配器【还有点迷糊】
      * @param responseConverter 对返回的数据进行转换（转换成泛型指定的格式）
      */
-    private HttpServiceMethod(RequestFactory requestFactory, okhttp3.Call.Factory callFactory,
-                              CallAdapter<ResponseT, ReturnT> callAdapter,
-                              Converter<ResponseBody, ResponseT> responseConverter) {
+    HttpServiceMethod(RequestFactory requestFactory, okhttp3.Call.Factory callFactory,
+                      Converter<ResponseBody, ResponseT> responseConverter,
+                      @Nullable Executor conversionExecutor) {
         this.requestFactory = requestFactory;
         this.callFactory = callFactory;
-        this.callAdapter = callAdapter;
         this.responseConverter = responseConverter;
+        this.conversionExecutor = conversionExecutor;
     }
 
     /**
@@ -121,8 +220,89 @@ final class HttpServiceMethod<ResponseT, ReturnT> extends ServiceMethod<ReturnT>
      * @return
      */
     @Override
-    ReturnT invoke(Object[] args) {
-        return callAdapter.adapt(
-                new OkHttpCall<>(requestFactory, args, callFactory, responseConverter));
+    final @Nullable ReturnT invoke(Object[] args) {
+        Call<ResponseT> call = new OkHttpCall<>(requestFactory, args, callFactory, responseConverter,
+                conversionExecutor);
+        Tracing tracing = Tracing.get();
+        Object event = tracing.beginAdapt(requestFactory.method);
+        try {
+            return adapt(call, args);
+        } finally {
+            tracing.endAdapt(event);
+        }
+    }
+
+    /**
+     * 将 Call 转换为方法的返回值
+     */
+    protected abstract @Nullable ReturnT adapt(Call<ResponseT> call, Object[] args);
+
+    /**
+     * 普通方法：交给 CallAdapter 适配
+     */
+    static final class CallAdapted<ResponseT, ReturnT> extends HttpServiceMethod<ResponseT, ReturnT> {
+        private final CallAdapter<ResponseT, ReturnT> callAdapter;
+
+        CallAdapted(RequestFactory requestFactory, okhttp3.Call.Factory callFactory,
+                    Converter<ResponseBody, ResponseT> responseConverter,
+                    @Nullable Executor conversionExecutor,
+                    CallAdapter<ResponseT, ReturnT> callAdapter) {
+            super(requestFactory, callFactory, responseConverter, conversionExecutor);
+            this.callAdapter = callAdapter;
+        }
+
+        @Override
+        protected ReturnT adapt(Call<ResponseT> call, Object[] args) {
+            return callAdapter.adapt(call);
+        }
+    }
+
+    /**
+     * suspend 方法，返回 Response&lt;T&gt;：异步执行，不会阻塞线程
+     */
+    static final class SuspendForResponse<ResponseT> extends HttpServiceMethod<ResponseT, Object> {
+        private final CallAdapter<ResponseT, Call<ResponseT>> callAdapter;
+
+        SuspendForResponse(RequestFactory requestFactory, okhttp3.Call.Factory callFactory,
+                           Converter<ResponseBody, ResponseT> responseConverter,
+                           @Nullable Executor conversionExecutor,
+                           CallAdapter<ResponseT, Call<ResponseT>> callAdapter) {
+            super(requestFactory, callFactory, responseConverter, conversionExecutor);
+            this.callAdapter = callAdapter;
+        }
+
+        @Override
+        protected Object adapt(Call<ResponseT> call, Object[] args) {
+            call = callAdapter.adapt(call);
+
+            //noinspection unchecked Checked by reflection inside RequestFactory.
+            Continuation<Response<ResponseT>> continuation =
+                    (Continuation<Response<ResponseT>>) args[args.length - 1];
+            return KotlinExtensions.awaitResponse(call, continuation);
+        }
+    }
+
+    /**
+     * suspend 方法，直接返回响应体：异步执行，不会阻塞线程
+     */
+    static final class SuspendForBody<ResponseT> extends HttpServiceMethod<ResponseT, Object> {
+        private final CallAdapter<ResponseT, Call<ResponseT>> callAdapter;
+
+        SuspendForBody(RequestFactory requestFactory, okhttp3.Call.Factory callFactory,
+                       Converter<ResponseBody, ResponseT> responseConverter,
+                       @Nullable Executor conversionExecutor,
+                       CallAdapter<ResponseT, Call<ResponseT>> callAdapter) {
+            super(requestFactory, callFactory, responseConverter, conversionExecutor);
+            this.callAdapter = callAdapter;
+        }
+
+        @Override
+        protected Object adapt(Call<ResponseT> call, Object[] args) {
+            call = callAdapter.adapt(call);
+
+            //noinspection unchecked Checked by reflection inside RequestFactory.
+            Continuation<ResponseT> continuation = (Continuation<ResponseT>) args[args.length - 1];
+            return KotlinExtensions.await(call, continuation);
+        }
     }
 }
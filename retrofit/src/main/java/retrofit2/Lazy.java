@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * A response body which is converted only when it is first {@linkplain #get() requested}. Use it
+ * for calls whose callers often look only at the status code or headers.
+ * <pre><code>
+ * &#64;GET("/repos/{owner}/{repo}/commits")
+ * Call&lt;Lazy&lt;List&lt;Commit&gt;&gt;&gt; commits(@Path("owner") String owner, @Path("repo") String repo);
+ *
+ * Response&lt;Lazy&lt;List&lt;Commit&gt;&gt;&gt; response = service.commits("square", "retrofit").execute();
+ * if (!etag.equals(response.headers().get("ETag"))) {
+ *   List&lt;Commit&gt; commits = response.body().get();
+ * }
+ * </code></pre>
+ * The raw bytes of the body are read into memory when the response arrives, so the connection is
+ * released right away and the {@linkplain Converter converter} for {@code T} later runs without
+ * I/O. Bodies longer than {@link #MAX_DEFERRED_SIZE} bytes are converted immediately instead of
+ * being held in memory. The converted value, or the exception thrown converting it, is cached.
+ * <p>
+ * A {@linkplain Retrofit.Builder#conversionExecutor conversion executor} is not used for
+ * {@code Lazy} responses. Small bodies are only copied into memory on the I/O thread. Large bodies
+ * are streamed into the converter on the I/O thread, or on the calling thread for
+ * {@link Call#execute()}, rather than being buffered whole just to move them to the executor.
+ */
+public final class Lazy<T> {
+    /** The size in bytes of the largest body whose conversion is deferred. */
+    public static final long MAX_DEFERRED_SIZE = 1024 * 1024;
+
+    @GuardedBy("this")
+    private @Nullable
+    Converter<ResponseBody, T> converter;
+    @GuardedBy("this")
+    private @Nullable
+    ResponseBody body;
+    @GuardedBy("this")
+    private @Nullable
+    T value;
+    @GuardedBy("this")
+    private @Nullable
+    IOException ioFailure;
+    @GuardedBy("this")
+    private @Nullable
+    RuntimeException runtimeFailure;
+
+    private Lazy(@Nullable Converter<ResponseBody, T> converter, @Nullable ResponseBody body,
+            @Nullable T value) {
+        this.converter = converter;
+        this.body = body;
+        this.value = value;
+    }
+
+    /**
+     * Read {@code body} into memory for conversion on first access, or convert it now if it is
+     * longer than {@link #MAX_DEFERRED_SIZE}.
+     */
+    static <T> Lazy<T> read(Converter<ResponseBody, T> converter, ResponseBody body)
+            throws IOException {
+        BufferedSource source = body.source();
+        // Buffers without consuming, so a large body can still be handed to the converter whole.
+        if (source.request(MAX_DEFERRED_SIZE + 1)) {
+            return new Lazy<>(null, null, converter.convert(body));
+        }
+        try {
+            Buffer buffer = new Buffer();
+            source.readAll(buffer);
+            ResponseBody buffered = ResponseBody.create(body.contentType(), buffer.size(), buffer);
+            return new Lazy<>(converter, buffered, null);
+        } finally {
+            body.close();
+        }
+    }
+
+    /** Returns true if the body has been converted, successfully or not. */
+    public synchronized boolean isConverted() {
+        return converter == null;
+    }
+
+    /**
+     * Returns the converted body, converting it on the first call. The raw bytes are released
+     * afterwards.
+     * <p>
+     * The conversion runs on the thread that calls this method, even when a
+     * {@linkplain Retrofit.Builder#conversionExecutor conversion executor} is configured.
+     * Callers on a UI thread should call it from a background thread if {@code T} is expensive
+     * to convert.
+     */
+    public synchronized @Nullable
+    T get() throws IOException {
+        Converter<ResponseBody, T> converter = this.converter;
+        if (converter != null) {
+            ResponseBody body = this.body;
+            this.converter = null;
+            this.body = null;
+            try {
+                //noinspection ConstantConditions Set together with the converter.
+                value = converter.convert(body);
+            } catch (IOException e) {
+                ioFailure = e;
+            } catch (RuntimeException e) {
+                runtimeFailure = e;
+            }
+        }
+        if (ioFailure != null) throw ioFailure;
+        if (runtimeFailure != null) throw runtimeFailure;
+        return value;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return isConverted() ? "Lazy(" + value + ")" : "Lazy(unconverted)";
+    }
+}
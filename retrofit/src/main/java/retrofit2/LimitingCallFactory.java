@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * 在 {@link ConcurrencyLimiter} 允许之前不把请求交给真正的 Call.Factory。
+ * 排队的请求在有空位时由结束的请求所在的线程启动。
+ * <p>
+ * 请求占用的位置在响应体关闭时才归还，耗时也记录到那时，这样流式读取的响应体也计入并发数。
+ */
+final class LimitingCallFactory implements okhttp3.Call.Factory {
+    final okhttp3.Call.Factory delegate;
+    final ConcurrencyLimiter limiter;
+    // 异步请求被拒绝或在排队时被取消，不能在 enqueue() 或 cancel() 的调用线程上回调
+    private final Executor failureExecutor;
+
+    LimitingCallFactory(okhttp3.Call.Factory delegate, ConcurrencyLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.failureExecutor = delegate instanceof OkHttpClient
+                ? ((OkHttpClient) delegate).dispatcher().executorService()
+                : ExecutorHolder.EXECUTOR;
+    }
+
+    @Override
+    public okhttp3.Call newCall(Request request) {
+        return new LimitedCall(request);
+    }
+
+    /**
+     * 429 和 503 表示服务端已经过载，和网络错误一样使限制减小
+     */
+    static boolean isDropped(int code) {
+        return code == 429 || code == 503;
+    }
+
+    /**
+     * 与 OkHttp 的 Dispatcher 一样在后台线程上通知失败
+     */
+    void failAsync(final Callback callback, final okhttp3.Call call, final IOException e) {
+        failureExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onFailure(call, e);
+            }
+        });
+    }
+
+    static void start(List<LimitedCall> ready) {
+        for (int i = 0, size = ready.size(); i < size; i++) {
+            ready.get(i).admitted();
+        }
+    }
+
+    final class LimitedCall implements okhttp3.Call {
+        private final Request request;
+        final int priority;
+        // 进入等待队列的时间，由 Limit 的锁保护
+        long enqueuedNanos;
+        private volatile boolean canceled;
+
+        @GuardedBy("this")
+        private boolean executed;
+        // 等待中的异步请求的回调，同步请求为 null
+        @GuardedBy("this")
+        private @Nullable
+        Callback responseCallback;
+        @GuardedBy("this")
+        private boolean admitted;
+        @GuardedBy("this")
+        private @Nullable
+        okhttp3.Call call;
+        @GuardedBy("this")
+        private boolean finished;
+        private volatile @Nullable
+        ConcurrencyLimiter.Limit limit;
+
+        LimitedCall(Request request) {
+            this.request = request;
+            this.priority = CallPriority.of(request);
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            synchronized (this) {
+                if (executed) throw new IllegalStateException("Already Executed");
+                executed = true;
+            }
+            ConcurrencyLimiter.Limit limit = this.limit = limiter.limitFor(request);
+            if (!limit.acquire(this)) {
+                awaitAdmission(limit);
+            }
+
+            okhttp3.Call call = newCall();
+            long startNanos = System.nanoTime();
+            Response response;
+            try {
+                response = call.execute();
+            } catch (IOException e) {
+                finish(startNanos, true);
+                throw e;
+            } catch (RuntimeException | Error e) {
+                finish(-1L, false);
+                throw e;
+            }
+            return finishOnClose(response, startNanos);
+        }
+
+        private void awaitAdmission(ConcurrencyLimiter.Limit limit) throws IOException {
+            boolean interrupted = false;
+            synchronized (this) {
+                while (!admitted && !canceled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        break;
+                    }
+                }
+            }
+            if (!interrupted && !canceled) return;
+
+            if (!limit.remove(this)) {
+                // 在取消的同时被允许执行，归还位置
+                start(limit.release(-1L, false));
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the concurrency limit");
+            }
+            throw new IOException("Canceled");
+        }
+
+        @Override
+        public void enqueue(Callback responseCallback) {
+            synchronized (this) {
+                if (executed) throw new IllegalStateException("Already Executed");
+                executed = true;
+                this.responseCallback = responseCallback;
+            }
+            ConcurrencyLimiter.Limit limit = this.limit = limiter.limitFor(request);
+            boolean acquired;
+            try {
+                acquired = limit.acquire(this);
+            } catch (IOException e) {
+                failAsync(responseCallback, this, e);
+                return;
+            }
+            if (acquired) {
+                admitted();
+            }
+        }
+
+        /**
+         * 获得了位置：同步请求唤醒等待的线程，异步请求交给真正的 Call.Factory
+         */
+        void admitted() {
+            Callback responseCallback;
+            synchronized (this) {
+                admitted = true;
+                notifyAll();
+                responseCallback = this.responseCallback;
+            }
+            if (responseCallback == null) return;
+
+            final Callback callback = responseCallback;
+            final long startNanos = System.nanoTime();
+            newCall().enqueue(new Callback() {
+                @Override
+                public void onResponse(okhttp3.Call call, Response response) throws IOException {
+                    callback.onResponse(LimitedCall.this, finishOnClose(response, startNanos));
+                }
+
+                @Override
+                public void onFailure(okhttp3.Call call, IOException e) {
+                    finish(startNanos, true);
+                    callback.onFailure(LimitedCall.this, e);
+                }
+            });
+        }
+
+        private okhttp3.Call newCall() {
+            okhttp3.Call call = delegate.newCall(request);
+            synchronized (this) {
+                this.call = call;
+            }
+            if (canceled) {
+                call.cancel();
+            }
+            return call;
+        }
+
+        /**
+         * 响应体关闭时才调用 {@link #finish}，没有响应体时立即调用
+         */
+        Response finishOnClose(Response response, long startNanos) {
+            boolean dropped = isDropped(response.code());
+            ResponseBody body = response.body();
+            if (body == null) {
+                finish(startNanos, dropped);
+                return response;
+            }
+            return response.newBuilder()
+                    .body(new FinishingResponseBody(body, startNanos, dropped))
+                    .build();
+        }
+
+        /**
+         * 归还位置并记录耗时。被取消的请求不反映服务端的状态，不参与调整。响应体可能被关闭多次，只归还一次。
+         */
+        void finish(long startNanos, boolean dropped) {
+            synchronized (this) {
+                if (finished) return;
+                finished = true;
+            }
+            long rttNanos = startNanos != -1L && !canceled ? System.nanoTime() - startNanos : -1L;
+            //noinspection ConstantConditions Set before the call was admitted.
+            start(limit.release(rttNanos, dropped));
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+
+            okhttp3.Call call;
+            Callback responseCallback;
+            synchronized (this) {
+                call = this.call;
+                responseCallback = this.responseCallback;
+                notifyAll();
+            }
+            if (call != null) {
+                call.cancel();
+            } else if (responseCallback != null && limit != null && limit.remove(this)) {
+                // 还在排队的异步请求不会再开始，直接通知取消
+                failAsync(responseCallback, this, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone") // We are a final type & this saves clearing state.
+        @Override
+        public okhttp3.Call clone() {
+            return new LimitedCall(request);
+        }
+
+        /**
+         * 关闭时归还请求占用的位置
+         */
+        final class FinishingResponseBody extends ResponseBody {
+            private final ResponseBody delegate;
+            private final BufferedSource source;
+
+            FinishingResponseBody(ResponseBody delegate, final long startNanos,
+                                  final boolean dropped) {
+                this.delegate = delegate;
+                this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            finish(startNanos, dropped);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public MediaType contentType() {
+                return delegate.contentType();
+            }
+
+            @Override
+            public long contentLength() {
+                return delegate.contentLength();
+            }
+
+            @Override
+            public BufferedSource source() {
+                return source;
+            }
+        }
+    }
+
+    /**
+     * 没有 OkHttpClient 的 Dispatcher 时，第一次需要时才创建通知失败的线程
+     */
+    private static final class ExecutorHolder {
+        static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Retrofit LimitingCallFactory");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ProtocolException;
+import javax.annotation.Nullable;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * Reads the parts of a {@code multipart/*} response body one at a time as they arrive.
+ * <pre><code>
+ * &#64;GET("/batch")
+ * Call&lt;MultipartReader&lt;Item&gt;&gt; batch();
+ * </code></pre>
+ * Each part is presented to the {@linkplain Converter converter} for {@code T} as a
+ * {@link ResponseBody} with the part's own {@code Content-Type}, so only one part is held in
+ * memory at a time. Use {@code MultipartReader<ResponseBody>} on a
+ * {@link retrofit2.http.Streaming @Streaming} method to read raw part bodies without buffering
+ * them; such a body must be consumed before the next call to {@link #nextPart()}, which skips any
+ * unread bytes.
+ * <p>
+ * The reader holds the underlying connection open and must be {@linkplain #close() closed}.
+ */
+public final class MultipartReader<T> implements Closeable {
+    private static final ByteString CRLF = ByteString.encodeUtf8("\r\n");
+    private static final ByteString DASHDASH = ByteString.encodeUtf8("--");
+
+    private final ResponseBody body;
+    private final BufferedSource source;
+    private final Converter<ResponseBody, T> converter;
+    private final ByteString dashDashBoundary;
+    private final ByteString crlfDashDashBoundary;
+
+    private int partCount;
+    private boolean closed;
+    private boolean noMoreParts;
+    @Nullable
+    PartSource currentPart;
+
+    MultipartReader(ResponseBody body, String boundary, Converter<ResponseBody, T> converter) {
+        this.body = body;
+        this.source = body.source();
+        this.converter = converter;
+        this.dashDashBoundary = new Buffer().writeUtf8("--").writeUtf8(boundary).readByteString();
+        this.crlfDashDashBoundary =
+                new Buffer().writeUtf8("\r\n--").writeUtf8(boundary).readByteString();
+    }
+
+    /**
+     * Returns the next part of the body, or null once every part has been read. Any unread bytes
+     * of the previous part are skipped.
+     */
+    public @Nullable
+    Part<T> nextPart() throws IOException {
+        if (closed) throw new IllegalStateException("closed");
+        if (noMoreParts) return null;
+
+        if (partCount == 0 && source.rangeEquals(0L, dashDashBoundary)) {
+            // 第一个分隔符前面没有 CRLF
+            source.skip(dashDashBoundary.size());
+        } else {
+            // 跳过当前 part 中还没有读取的内容
+            long toSkip;
+            while ((toSkip = currentPartBytesRemaining(8192L)) > 0L) {
+                source.skip(toSkip);
+            }
+            source.skip(crlfDashDashBoundary.size());
+        }
+
+        // 分隔符之后是 "--"（结束）或者 CRLF（下一个 part），中间允许空白填充
+        while (true) {
+            if (source.rangeEquals(0L, DASHDASH)) {
+                source.skip(DASHDASH.size());
+                noMoreParts = true;
+                currentPart = null;
+                return null;
+            }
+            if (source.rangeEquals(0L, CRLF)) {
+                source.skip(CRLF.size());
+                break;
+            }
+            byte b = source.readByte();
+            if (b != ' ' && b != '\t') {
+                throw new ProtocolException("Unexpected character after multipart boundary: " + b);
+            }
+        }
+
+        Headers.Builder headers = new Headers.Builder();
+        for (String line; !(line = source.readUtf8LineStrict()).isEmpty(); ) {
+            headers.add(line);
+        }
+        Headers partHeaders = headers.build();
+
+        PartSource partSource = new PartSource();
+        currentPart = partSource;
+        partCount++;
+
+        String contentType = partHeaders.get("Content-Type");
+        String contentLength = partHeaders.get("Content-Length");
+        ResponseBody partBody = ResponseBody.create(
+                contentType != null ? MediaType.parse(contentType) : null,
+                contentLength != null ? parseLength(contentLength) : -1L,
+                Okio.buffer(partSource));
+        return new Part<>(partHeaders, converter.convert(partBody));
+    }
+
+    /**
+     * Returns the number of bytes up to {@code maxResult} which may be read from the current part,
+     * or 0 if it is exhausted.
+     */
+    long currentPartBytesRemaining(long maxResult) throws IOException {
+        source.require(crlfDashDashBoundary.size());
+
+        long delimiterIndex = source.buffer().indexOf(crlfDashDashBoundary);
+        if (delimiterIndex == -1L) {
+            // 分隔符可能跨越缓冲区的末尾，保留可能属于分隔符的字节
+            return Math.min(maxResult, source.buffer().size() - crlfDashDashBoundary.size() + 1);
+        }
+        return Math.min(maxResult, delimiterIndex);
+    }
+
+    private static long parseLength(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        currentPart = null;
+        body.close();
+    }
+
+    /** Reads the bytes of the current part up to the next boundary. */
+    final class PartSource implements Source {
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            if (byteCount < 0L) throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+            if (currentPart != this) throw new IllegalStateException("closed");
+            if (byteCount == 0L) return 0L; // 不能把 0 当作到达分隔符
+
+            long limit = currentPartBytesRemaining(byteCount);
+            if (limit == 0L) return -1L; // 到达下一个分隔符
+            return source.read(sink, limit);
+        }
+
+        @Override
+        public Timeout timeout() {
+            return source.timeout();
+        }
+
+        @Override
+        public void close() {
+            // 由 nextPart() 跳过剩余内容，底层连接由 MultipartReader 关闭
+        }
+    }
+
+    /** A single part of a multipart response. */
+    public static final class Part<T> {
+        private final Headers headers;
+        private final T body;
+
+        Part(Headers headers, T body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /** The headers of this part, such as {@code Content-Disposition}. */
+        public Headers headers() {
+            return headers;
+        }
+
+        /** The converted body of this part. */
+        public T body() {
+            return body;
+        }
+    }
+}
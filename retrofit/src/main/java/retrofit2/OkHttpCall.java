@@ -16,6 +16,9 @@
 package retrofit2;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
@@ -27,6 +30,7 @@ import okio.BufferedSource;
 import okio.ForwardingSource;
 import okio.Okio;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static retrofit2.Utils.checkNotNull;
 import static retrofit2.Utils.throwIfFatal;
 
@@ -35,6 +39,9 @@ final class OkHttpCall<T> implements Call<T> {
     private final Object[] args;
     private final okhttp3.Call.Factory callFactory;
     private final Converter<ResponseBody, T> responseConverter;
+    // 异步请求在这里创建请求和转换响应体，为 null 时在调用线程和 OkHttp 的线程上进行
+    private final @Nullable
+    Executor conversionExecutor;
 
     private volatile boolean canceled;
 
@@ -50,17 +57,19 @@ final class OkHttpCall<T> implements Call<T> {
     private boolean executed;
 
     OkHttpCall(RequestFactory requestFactory, Object[] args,
-               okhttp3.Call.Factory callFactory, Converter<ResponseBody, T> responseConverter) {
+               okhttp3.Call.Factory callFactory, Converter<ResponseBody, T> responseConverter,
+               @Nullable Executor conversionExecutor) {
         this.requestFactory = requestFactory;
         this.args = args;
         this.callFactory = callFactory;
         this.responseConverter = responseConverter;
+        this.conversionExecutor = conversionExecutor;
     }
 
     @SuppressWarnings("CloneDoesntCallSuperClone") // We are a final type & this saves clearing state.
     @Override
     public OkHttpCall<T> clone() {
-        return new OkHttpCall<>(requestFactory, args, callFactory, responseConverter);
+        return new OkHttpCall<>(requestFactory, args, callFactory, responseConverter, conversionExecutor);
     }
 
     @Override
@@ -93,15 +102,56 @@ final class OkHttpCall<T> implements Call<T> {
     @Override
     public void enqueue(final Callback<T> callback) {
         checkNotNull(callback, "callback == null");
+        final Tracing tracing = Tracing.get();
+        final Object event = tracing.beginCall(requestFactory.method, true);
 
-        okhttp3.Call call;
-        Throwable failure;
-
+        boolean created;
         synchronized (this) {
             // 任务只能开启一次
             if (executed) throw new IllegalStateException("Already executed.");
             executed = true;
+            created = rawCall != null || creationFailure != null;
+        }
+
+        if (conversionExecutor != null && !created) {
+            // 序列化请求体可能很耗时，不在调用线程上创建请求。调用线程上的截止时间仍然有效。
+            final Deadline current = Deadline.current();
+            Runnable enqueueRawCall = new Runnable() {
+                @Override
+                public void run() {
+                    Deadline previous = current != null ? current.attach() : null;
+                    try {
+                        enqueueRawCall(callback, tracing, event);
+                    } finally {
+                        if (current != null) Deadline.detach(previous);
+                    }
+                }
+            };
+            if (!submit(enqueueRawCall)) {
+                tracing.endCall(event, null);
+                callback.onFailure(this, new IOException("Conversion executor rejected the call"));
+            }
+        } else {
+            enqueueRawCall(callback, tracing, event);
+        }
+    }
+
+    private boolean submit(Runnable runnable) {
+        try {
+            //noinspection ConstantConditions Only called with a conversion executor.
+            conversionExecutor.execute(runnable);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void enqueueRawCall(final Callback<T> callback, final Tracing tracing,
+                                final @Nullable Object event) {
+        okhttp3.Call call;
+        Throwable failure;
 
+        synchronized (this) {
             call = rawCall;
             failure = creationFailure;
             if (call == null && failure == null) {
@@ -115,6 +165,7 @@ final class OkHttpCall<T> implements Call<T> {
         }
 
         if (failure != null) {
+            tracing.endCall(event, null);
             callback.onFailure(this, failure);
             return;
         }
@@ -124,9 +175,49 @@ final class OkHttpCall<T> implements Call<T> {
             call.cancel();
         }
 
-        call.enqueue(new okhttp3.Callback() {
+        // @Timeout 或者调用方的截止时间：到期时取消请求，回调期间作为当前截止时间
+        final Deadline deadline = call.request().tag(Deadline.class);
+        final DeadlineTimeout timeout = deadline != null ? new DeadlineTimeout(call, deadline) : null;
+
+        // 限流：需要等待时在共享的调度线程上延后开始，不阻塞调用线程
+        long delayNanos = requestFactory.reservePermit(call.request(),
+                deadline != null ? deadline.timeRemaining(NANOSECONDS) : Long.MAX_VALUE);
+        if (delayNanos == -1L) {
+            tracing.endCall(event, null);
+            callback.onFailure(this,
+                    new InterruptedIOException("Deadline exceeded while waiting for the rate limit"));
+            return;
+        }
+        if (timeout != null) timeout.enter();
+
+        final okhttp3.Callback rawCallback = new okhttp3.Callback() {
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response rawResponse) {
+                if (conversionExecutor == null) {
+                    deliver(rawResponse);
+                    return;
+                }
+
+                // 在 I/O 线程上读完响应体，转换交给转换线程池
+                final okhttp3.Response bufferedResponse;
+                try {
+                    bufferedResponse = bufferBody(rawResponse);
+                } catch (IOException e) {
+                    callFailure(e);
+                    return;
+                }
+                boolean submitted = submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(bufferedResponse);
+                    }
+                });
+                if (!submitted) {
+                    callFailure(new IOException("Conversion executor rejected the response"));
+                }
+            }
+
+            private void deliver(okhttp3.Response rawResponse) {
                 Response<T> response;
                 try {
                     response = parseResponse(rawResponse);
@@ -135,11 +226,16 @@ final class OkHttpCall<T> implements Call<T> {
                     callFailure(e);
                     return;
                 }
+                if (timeout != null) timeout.exit();
+                tracing.endCall(event, rawResponse);
 
+                Deadline previous = deadline != null ? deadline.attach() : null;
                 try {
                     callback.onResponse(OkHttpCall.this, response);
                 } catch (Throwable t) {
                     t.printStackTrace();
+                } finally {
+                    if (deadline != null) Deadline.detach(previous);
                 }
             }
 
@@ -149,13 +245,30 @@ final class OkHttpCall<T> implements Call<T> {
             }
 
             private void callFailure(Throwable e) {
+                if (timeout != null) e = timeout.exit(e);
+                tracing.endCall(event, null);
+
+                Deadline previous = deadline != null ? deadline.attach() : null;
                 try {
                     callback.onFailure(OkHttpCall.this, e);
                 } catch (Throwable t) {
                     t.printStackTrace();
+                } finally {
+                    if (deadline != null) Deadline.detach(previous);
                 }
             }
-        });
+        };
+        if (delayNanos > 0L) {
+            final okhttp3.Call delayedCall = call;
+            RateLimiter.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    delayedCall.enqueue(rawCallback);
+                }
+            }, delayNanos);
+        } else {
+            call.enqueue(rawCallback);
+        }
     }
 
     @Override
@@ -165,6 +278,39 @@ final class OkHttpCall<T> implements Call<T> {
 
     @Override
     public Response<T> execute() throws IOException {
+        Tracing tracing = Tracing.get();
+        Object event = tracing.beginCall(requestFactory.method, false);
+        Response<T> response = null;
+        try {
+            response = executeCall();
+            return response;
+        } finally {
+            tracing.endCall(event, response != null ? response.raw() : null);
+        }
+    }
+
+    /**
+     * 同步请求在调用线程上等待令牌，{@link #cancel()} 会提前结束等待
+     */
+    private void awaitPermit(long delayNanos) throws IOException {
+        long endNanos = System.nanoTime() + delayNanos;
+        synchronized (this) {
+            for (long remaining = delayNanos; remaining > 0L && !canceled;
+                 remaining = endNanos - System.nanoTime()) {
+                try {
+                    NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+                }
+            }
+        }
+        if (canceled) {
+            throw new IOException("Canceled");
+        }
+    }
+
+    private Response<T> executeCall() throws IOException {
         okhttp3.Call call;
 
         synchronized (this) {
@@ -199,17 +345,61 @@ final class OkHttpCall<T> implements Call<T> {
             call.cancel();
         }
 
-        return parseResponse(call.execute());
+        Deadline deadline = call.request().tag(Deadline.class);
+        long delayNanos = requestFactory.reservePermit(call.request(),
+                deadline != null ? deadline.timeRemaining(NANOSECONDS) : Long.MAX_VALUE);
+        if (delayNanos == -1L) {
+            throw new InterruptedIOException("Deadline exceeded while waiting for the rate limit");
+        }
+        if (delayNanos > 0L) {
+            awaitPermit(delayNanos);
+        }
+        if (deadline == null) {
+            return parseResponse(call.execute());
+        }
+
+        DeadlineTimeout timeout = new DeadlineTimeout(call, deadline);
+        timeout.enter();
+        try {
+            Response<T> response = parseResponse(call.execute());
+            timeout.exit();
+            return response;
+        } catch (IOException e) {
+            throw (IOException) timeout.exit(e);
+        } catch (RuntimeException | Error e) {
+            timeout.exit();
+            throw e;
+        }
     }
 
     private okhttp3.Call createRawCall() throws IOException {
-        okhttp3.Call call = callFactory.newCall(requestFactory.create(args));
+        Request request = requestFactory.create(args);
+        Deadline deadline = request.tag(Deadline.class);
+        if (deadline != null && deadline.isExpired()) {
+            // 剩余时间已经用完，请求不会被发出
+            throw new InterruptedIOException("Deadline exceeded before the call was started");
+        }
+        okhttp3.Call call = callFactory.newCall(request);
         if (call == null) {
             throw new NullPointerException("Call.Factory returned null.");
         }
         return call;
     }
 
+    /**
+     * 把响应体全部读入内存，之后的转换不再有 I/O
+     */
+    static okhttp3.Response bufferBody(okhttp3.Response rawResponse) throws IOException {
+        ResponseBody rawBody = rawResponse.body();
+        try {
+            return rawResponse.newBuilder()
+                    .body(Utils.buffer(rawBody))
+                    .build();
+        } finally {
+            rawBody.close();
+        }
+    }
+
     /**
      * 解析相应，并通过回调的方式进行通知
      * @param rawResponse
@@ -226,6 +416,10 @@ final class OkHttpCall<T> implements Call<T> {
                 .build();
 
         int code = rawResponse.code();
+        if (code == 429) {
+            // Too Many Requests：按照 Retry-After 暂停后续的请求
+            requestFactory.rateLimited(rawResponse);
+        }
         if (code < 200 || code >= 300) {
             try {
                 // Buffer the entire body to avoid future I/O.
@@ -241,7 +435,24 @@ final class OkHttpCall<T> implements Call<T> {
             return Response.success(null, rawResponse);
         }
 
+        Tracing tracing = Tracing.get();
+        Object event = tracing.beginParseResponse(requestFactory.method);
+        try {
+            return convertBody(rawBody, rawResponse);
+        } finally {
+            tracing.endParseResponse(event, rawResponse);
+        }
+    }
+
+    private Response<T> convertBody(ResponseBody rawBody, okhttp3.Response rawResponse) throws IOException {
         ExceptionCatchingResponseBody catchingBody = new ExceptionCatchingResponseBody(rawBody);
+        DownloadTarget downloadTarget = rawResponse.request().tag(DownloadTarget.class);
+        if (downloadTarget != null) {
+            // @Destination 方法：响应体直接写入文件，返回值就是该文件
+            //noinspection unchecked HttpServiceMethod checked that T is File.
+            T body = (T) downloadTarget.write(catchingBody, rawResponse);
+            return Response.success(body, rawResponse);
+        }
         try {
             T body = responseConverter.convert(catchingBody);
             return Response.success(body, rawResponse);
@@ -259,6 +470,8 @@ final class OkHttpCall<T> implements Call<T> {
         okhttp3.Call call;
         synchronized (this) {
             call = rawCall;
+            // 唤醒等待令牌的同步请求
+            notifyAll();
         }
         if (call != null) {
             call.cancel();
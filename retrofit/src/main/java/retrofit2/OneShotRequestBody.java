@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import javax.annotation.Nullable;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.internal.http.UnrepeatableRequestBody;
+import okio.BufferedSink;
+
+/**
+ * 只能写入一次的请求体，OkHttp 不会在重试或 307/308 重定向时重发它。
+ * <p>
+ * OkHttp 3.11 只通过内部类型 {@code okhttp3.internal.http.UnrepeatableRequestBody} 识别这类请求体，
+ * 它不是公开的 API。这里是 Retrofit 中唯一引用它的地方，升级 OkHttp 时只需修改这个类
+ * （OkHttp 3.14 起改为覆盖 {@code RequestBody.isOneShot()}）。
+ */
+abstract class OneShotRequestBody extends RequestBody implements UnrepeatableRequestBody {
+    static boolean isOneShot(RequestBody body) {
+        return body instanceof UnrepeatableRequestBody;
+    }
+
+    /**
+     * 包装请求体时保留只能写入一次的标记：{@code original} 只能写入一次时返回同样标记的 {@code wrapper}
+     */
+    static RequestBody sameAs(RequestBody original, RequestBody wrapper) {
+        if (!isOneShot(original) || isOneShot(wrapper)) return wrapper;
+        return new Forwarding(wrapper);
+    }
+
+    private static final class Forwarding extends OneShotRequestBody {
+        private final RequestBody delegate;
+
+        Forwarding(RequestBody delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public @Nullable
+        MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            delegate.writeTo(sink);
+        }
+    }
+}
@@ -15,9 +15,13 @@
  */
 package retrofit2;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.UUID;
 import javax.annotation.Nullable;
 
 import okhttp3.Headers;
@@ -220,6 +224,133 @@ abstract class ParameterHandler<T> {
         }
     }
 
+    /**
+     * 默认的 toString() 转换器遇到这些类型时不需要百分号编码：数字、布尔值和 UUID 的字符串形式
+     * 只包含 URL 和表单中都安全的字符，枚举常量的编码结果在解析方法时就计算好。
+     * 注意 OkHttp 的 addEncoded* 方法仍会扫描一遍这些字符串，这里省掉的只是转换器调用和编码本身。
+     */
+    static final class EncodedValues {
+        static final int QUERY = 0;
+        static final int FORM = 1;
+        static final int PATH = 2;
+
+        private static final EncodedValues TO_STRING = new EncodedValues(null);
+
+        // 按 ordinal 排列的枚举常量编码结果，其他类型为 null
+        private final @Nullable
+        String[] constants;
+
+        private EncodedValues(@Nullable String[] constants) {
+            this.constants = constants;
+        }
+
+        /**
+         * 返回 {@code type} 的预编码值，如果它的字符串形式可能需要编码则返回 null
+         */
+        static @Nullable
+        EncodedValues forType(Type type, int component, boolean encoded) {
+            if (!(type instanceof Class)) return null;
+            Class<?> cls = (Class<?>) type;
+            if (cls == int.class || cls == Integer.class
+                    || cls == long.class || cls == Long.class
+                    || cls == short.class || cls == Short.class
+                    || cls == byte.class || cls == Byte.class
+                    || cls == boolean.class || cls == Boolean.class
+                    || cls == UUID.class) {
+                return TO_STRING;
+            }
+            if (cls.isEnum()) {
+                Object[] enumConstants = cls.getEnumConstants();
+                String[] constants = new String[enumConstants.length];
+                for (int i = 0; i < enumConstants.length; i++) {
+                    String value = enumConstants[i].toString();
+                    constants[i] = value == null || encoded ? value : encode(value, component);
+                }
+                return new EncodedValues(constants);
+            }
+            return null;
+        }
+
+        static String encode(String value, int component) {
+            switch (component) {
+                case QUERY:
+                    return RequestBuilder.encodeQueryComponent(value);
+                case FORM:
+                    return RequestBuilder.encodeFormComponent(value);
+                case PATH:
+                    return RequestBuilder.encodePathSegment(value);
+                default:
+                    throw new AssertionError();
+            }
+        }
+
+        @Nullable
+        String encode(Object value) {
+            String[] constants = this.constants;
+            return constants != null ? constants[((Enum<?>) value).ordinal()] : value.toString();
+        }
+    }
+
+    static final class EncodedQuery<T> extends ParameterHandler<T> {
+        private final String encodedName;
+        private final EncodedValues values;
+
+        EncodedQuery(String encodedName, EncodedValues values) {
+            this.encodedName = checkNotNull(encodedName, "encodedName == null");
+            this.values = values;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable T value) {
+            if (value == null) return; // Skip null values.
+
+            String queryValue = values.encode(value);
+            if (queryValue == null) return; // Skip converted but null values
+
+            builder.addQueryParam(encodedName, queryValue, true);
+        }
+    }
+
+    static final class EncodedField<T> extends ParameterHandler<T> {
+        private final String encodedName;
+        private final EncodedValues values;
+
+        EncodedField(String encodedName, EncodedValues values) {
+            this.encodedName = checkNotNull(encodedName, "encodedName == null");
+            this.values = values;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable T value) {
+            if (value == null) return; // Skip null values.
+
+            String fieldValue = values.encode(value);
+            if (fieldValue == null) return; // Skip null converted values
+
+            builder.addFormField(encodedName, fieldValue, true);
+        }
+    }
+
+    static final class EncodedPath<T> extends ParameterHandler<T> {
+        private final String name;
+        private final EncodedValues values;
+
+        EncodedPath(String name, EncodedValues values) {
+            this.name = checkNotNull(name, "name == null");
+            this.values = values;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable T value) {
+            String pathValue = value != null ? values.encode(value) : null;
+            if (pathValue == null) {
+                throw new IllegalArgumentException(
+                        "Path parameter \"" + name + "\" value must not be null.");
+            }
+            builder.addPathParam(name, pathValue, true);
+        }
+    }
+
     static final class Field<T> extends ParameterHandler<T> {
         private final String name;
         private final Converter<T, String> valueConverter;
@@ -304,7 +435,103 @@ abstract class ParameterHandler<T> {
             } catch (IOException e) {
                 throw new RuntimeException("Unable to convert " + value + " to RequestBody", e);
             }
-            builder.addPart(headers, body);
+
+            builder.addPart(headersFor(headers, value), body);
+        }
+
+        static Headers headersFor(Headers headers, Object value) {
+            if (value instanceof File) {
+                // 上传文件时在 Content-Disposition 中带上文件名
+                StringBuilder disposition = new StringBuilder(headers.get("Content-Disposition"))
+                        .append("; filename=");
+                appendQuotedString(disposition, ((File) value).getName());
+                return headers.newBuilder()
+                        .set("Content-Disposition", disposition.toString())
+                        .build();
+            }
+            return headers;
+        }
+
+        /**
+         * 与 OkHttp 的 MultipartBody.Part.createFormData 一样转义引号和换行，
+         * 否则文件名中的 " 或 CR/LF 会破坏头部，甚至注入新的头部
+         */
+        static void appendQuotedString(StringBuilder target, String key) {
+            target.append('"');
+            for (int i = 0, len = key.length(); i < len; i++) {
+                char ch = key.charAt(i);
+                switch (ch) {
+                    case '\n':
+                        target.append("%0A");
+                        break;
+                    case '\r':
+                        target.append("%0D");
+                        break;
+                    case '"':
+                        target.append("%22");
+                        break;
+                    default:
+                        target.append(ch);
+                        break;
+                }
+            }
+            target.append('"');
+        }
+    }
+
+    /**
+     * 写入请求体时才从迭代器中取出并转换每个 part，同一时间只有一个 part 的请求体在内存中
+     */
+    static final class PartIterator<T> extends ParameterHandler<Iterator<T>> {
+        private final Headers headers;
+        private final Converter<T, RequestBody> converter;
+
+        PartIterator(Headers headers, Converter<T, RequestBody> converter) {
+            this.headers = headers;
+            this.converter = converter;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable final Iterator<T> values) {
+            if (values == null) return; // Skip null values.
+
+            builder.addParts(new Iterator<MultipartBody.Part>() {
+                @Override
+                public boolean hasNext() {
+                    return values.hasNext();
+                }
+
+                @Override
+                public MultipartBody.Part next() {
+                    T value = values.next();
+                    RequestBody body;
+                    try {
+                        body = converter.convert(value);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Unable to convert " + value + " to RequestBody", e);
+                    }
+                    return MultipartBody.Part.create(Part.headersFor(headers, value), body);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            });
+        }
+    }
+
+    static final class RawPartIterator extends ParameterHandler<Iterator<MultipartBody.Part>> {
+        static final RawPartIterator INSTANCE = new RawPartIterator();
+
+        private RawPartIterator() {
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable Iterator<MultipartBody.Part> values) {
+            if (values != null) { // Skip null values.
+                builder.addParts(values);
+            }
         }
     }
 
@@ -379,4 +606,36 @@ abstract class ParameterHandler<T> {
             builder.setBody(body);
         }
     }
+
+    static final class Destination extends ParameterHandler<File> {
+        private final boolean resume;
+
+        Destination(boolean resume) {
+            this.resume = resume;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable File value) {
+            checkNotNull(value, "@Destination parameter is null.");
+            builder.setDestination(value, resume);
+        }
+    }
+
+    static final class Progress extends ParameterHandler<ProgressListener> {
+        @Override
+        void apply(RequestBuilder builder, @Nullable ProgressListener value) {
+            if (value == null) return; // Skip null values.
+
+            builder.setProgressListener(value);
+        }
+    }
+
+    static final class Priority extends ParameterHandler<Integer> {
+        @Override
+        void apply(RequestBuilder builder, @Nullable Integer value) {
+            if (value == null) return; // 使用方法上的优先级
+
+            builder.setPriority(new CallPriority(value));
+        }
+    }
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+/**
+ * Receives progress updates for a transfer. Invoked on the thread performing the transfer, which
+ * for {@linkplain Call#enqueue asynchronous calls} is a background thread, so implementations
+ * should be quick and must not block.
+ */
+public interface ProgressListener {
+    /**
+     * Called after each chunk of the transfer completes.
+     *
+     * @param bytesTransferred the total number of bytes transferred so far, including any bytes
+     *                         present before a resumed transfer started.
+     * @param contentLength    the total length of the transfer, or -1 if it is unknown.
+     */
+    void onProgress(long bytesTransferred, long contentLength);
+}
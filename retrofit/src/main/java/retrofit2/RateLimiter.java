@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * 令牌桶限流，按照 GCRA（generic cell rate algorithm）实现：只保存下一个令牌的理论到达时间，
+ * 用 CAS 更新，多个线程同时申请时不需要加锁。桶的容量为 {@code permits}，允许同样数量的突发请求。
+ */
+final class RateLimiter {
+    static final long MAX_PAUSE_NANOS = TimeUnit.DAYS.toNanos(1);
+
+    private final long periodNanos;
+    // 每个令牌的间隔
+    private final long intervalNanos;
+    // 允许提前的时间，即桶中除当前令牌外还能存放的令牌
+    private final long toleranceNanos;
+    // 理论到达时间，以 System.nanoTime() 表示
+    private final AtomicLong theoreticalArrival;
+
+    RateLimiter(int permits, long periodNanos) {
+        this.periodNanos = periodNanos;
+        this.intervalNanos = Math.max(1L, periodNanos / permits);
+        this.toleranceNanos = periodNanos - intervalNanos;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 申请一个令牌，返回需要等待的纳秒数，0 表示可以立即执行。需要等待超过 {@code maxDelayNanos}
+     * 时不占用令牌，返回 -1，否则等不到的请求也会把后面的请求推迟。
+     */
+    long reserve(long maxDelayNanos) {
+        for (; ; ) {
+            long now = System.nanoTime();
+            long arrival = theoreticalArrival.get();
+            long start = arrival - now > 0L ? arrival : now;
+            long delay = start - toleranceNanos - now;
+            if (delay < 0L) delay = 0L;
+            if (delay > maxDelayNanos) return -1L;
+            if (theoreticalArrival.compareAndSet(arrival, start + intervalNanos)) {
+                return delay;
+            }
+        }
+    }
+
+    /**
+     * 归还 {@link #reserve} 占用的令牌，用于另一个令牌桶拒绝了同一个请求的情况
+     */
+    void unreserve() {
+        for (; ; ) {
+            long now = System.nanoTime();
+            long arrival = theoreticalArrival.get();
+            long target = arrival - intervalNanos;
+            if (target - now < 0L) target = now;
+            if (target - arrival >= 0L || theoreticalArrival.compareAndSet(arrival, target)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 服务端返回 429 时，在 Retry-After 指定的时间内（没有时为一个周期）不再发放令牌
+     */
+    void rateLimited(okhttp3.Response response) {
+        // 限制暂停的时间，否则很大的 Retry-After 会让 nanoTime 的加法溢出，反而立即放行
+        long pauseNanos = Math.min(MAX_PAUSE_NANOS,
+                retryAfterNanos(response.header("Retry-After"), periodNanos));
+        for (; ; ) {
+            long arrival = theoreticalArrival.get();
+            long target = System.nanoTime() + pauseNanos + toleranceNanos;
+            if (target - arrival <= 0L || theoreticalArrival.compareAndSet(arrival, target)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 解析 Retry-After：秒数或者 HTTP 日期
+     */
+    static long retryAfterNanos(@Nullable String retryAfter, long defaultNanos) {
+        if (retryAfter == null) return defaultNanos;
+        retryAfter = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(retryAfter);
+            return seconds > 0L ? TimeUnit.SECONDS.toNanos(seconds) : 0L;
+        } catch (NumberFormatException ignored) {
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(retryAfter);
+            long millis = date.getTime() - System.currentTimeMillis();
+            return millis > 0L ? TimeUnit.MILLISECONDS.toNanos(millis) : 0L;
+        } catch (ParseException e) {
+            return defaultNanos;
+        }
+    }
+
+    /**
+     * 在共享的调度线程上延后执行，不占用调用方的线程
+     */
+    static void schedule(Runnable runnable, long delayNanos) {
+        SchedulerHolder.SCHEDULER.schedule(runnable, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 第一次使用时才创建调度线程
+     */
+    private static final class SchedulerHolder {
+        static final ScheduledExecutorService SCHEDULER;
+
+        static {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Retrofit RateLimiter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            SCHEDULER = scheduler;
+        }
+    }
+}
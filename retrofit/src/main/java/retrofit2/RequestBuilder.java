@@ -15,7 +15,10 @@
  */
 package retrofit2;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.zip.Deflater;
 import javax.annotation.Nullable;
 
 import okhttp3.FormBody;
@@ -27,6 +30,10 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okio.Buffer;
 import okio.BufferedSink;
+import okio.DeflaterSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
 
 final class RequestBuilder {
     private static final char[] HEX_DIGITS =
@@ -47,11 +54,21 @@ final class RequestBuilder {
 
     private final boolean hasBody;
     private @Nullable
-    MultipartBody.Builder multipartBuilder;
+    StreamingMultipartBody.Builder multipartBuilder;
     private @Nullable
     FormBody.Builder formBuilder;
     private @Nullable
     RequestBody body;
+    private @Nullable
+    File destination;
+    private boolean resumeDownload;
+    private @Nullable
+    ProgressListener progressListener;
+    private @Nullable
+    String contentEncoding;
+    private long compressionThreshold;
+    private @Nullable
+    CallPriority priority;
 
     RequestBuilder(String method, HttpUrl baseUrl,
                    @Nullable String relativeUrl, @Nullable Headers headers, @Nullable MediaType contentType,
@@ -72,8 +89,7 @@ final class RequestBuilder {
             formBuilder = new FormBody.Builder();
         } else if (isMultipart) {
             // Will be set to 'body' in 'build'.
-            multipartBuilder = new MultipartBody.Builder();
-            multipartBuilder.setType(MultipartBody.FORM);
+            multipartBuilder = new StreamingMultipartBody.Builder();
         }
     }
 
@@ -93,6 +109,28 @@ final class RequestBuilder {
         }
     }
 
+    static boolean isSupportedContentEncoding(String encoding) {
+        return "gzip".equals(encoding) || "deflate".equals(encoding);
+    }
+
+    void setCompression(String contentEncoding, long compressionThreshold) {
+        this.contentEncoding = contentEncoding;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    void setDestination(File destination, boolean resume) {
+        this.destination = destination;
+        this.resumeDownload = resume;
+    }
+
+    void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    void setPriority(CallPriority priority) {
+        this.priority = priority;
+    }
+
     void addPathParam(String name, String value, boolean encoded) {
         if (relativeUrl == null) {
             // The relative URL is cleared when the first query parameter is set.
@@ -150,6 +188,33 @@ final class RequestBuilder {
         }
     }
 
+    /**
+     * 按查询参数的规则编码名称或值。只在解析方法时调用，结果会被缓存。
+     */
+    static String encodeQueryComponent(String value) {
+        HttpUrl url = new HttpUrl.Builder()
+                .scheme("http")
+                .host("localhost")
+                .addQueryParameter(value, null)
+                .build();
+        //noinspection ConstantConditions The URL has a query.
+        return url.encodedQuery();
+    }
+
+    /**
+     * 按表单字段的规则编码名称或值。只在解析方法时调用，结果会被缓存。
+     */
+    static String encodeFormComponent(String value) {
+        return new FormBody.Builder().add(value, "").build().encodedName(0);
+    }
+
+    /**
+     * 按路径参数的规则编码值。只在解析方法时调用，结果会被缓存。
+     */
+    static String encodePathSegment(String value) {
+        return canonicalizeForPath(value, false);
+    }
+
     void addQueryParam(String name, @Nullable String value, boolean encoded) {
         if (relativeUrl != null) {
             // Do a one-time combination of the built relative URL and the base URL.
@@ -183,7 +248,7 @@ final class RequestBuilder {
     @SuppressWarnings("ConstantConditions")
         // Only called when isMultipart was true.
     void addPart(Headers headers, RequestBody body) {
-        multipartBuilder.addPart(headers, body);
+        multipartBuilder.addPart(MultipartBody.Part.create(headers, body));
     }
 
     @SuppressWarnings("ConstantConditions")
@@ -192,11 +257,17 @@ final class RequestBuilder {
         multipartBuilder.addPart(part);
     }
 
+    @SuppressWarnings("ConstantConditions")
+        // Only called when isMultipart was true.
+    void addParts(Iterator<MultipartBody.Part> parts) {
+        multipartBuilder.addParts(parts);
+    }
+
     void setBody(RequestBody body) {
         this.body = body;
     }
 
-    Request.Builder get() {
+    Request.Builder get() throws IOException {
         HttpUrl url;
         HttpUrl.Builder urlBuilder = this.urlBuilder;
         if (urlBuilder != null) {
@@ -224,20 +295,78 @@ final class RequestBuilder {
             }
         }
 
+        String contentEncoding = this.contentEncoding;
+        if (body != null && contentEncoding != null) {
+            // 长度未知的请求体总是压缩，长度已知时只压缩不小于阈值的请求体
+            long contentLength = body.contentLength();
+            if (contentLength == -1L || contentLength >= compressionThreshold) {
+                body = OneShotRequestBody.sameAs(body,
+                        new CompressedRequestBody(body, contentEncoding));
+                requestBuilder.header("Content-Encoding", contentEncoding);
+            }
+        }
+
         MediaType contentType = this.contentType;
         if (contentType != null) {
             if (body != null) {
-                body = new ContentTypeOverridingRequestBody(body, contentType);
+                body = OneShotRequestBody.sameAs(body,
+                        new ContentTypeOverridingRequestBody(body, contentType));
             } else {
                 requestBuilder.addHeader("Content-Type", contentType.toString());
             }
         }
 
+        File destination = this.destination;
+        if (destination != null) {
+            // 下载到文件：记录目标，续传时只请求文件中还没有的部分
+            DownloadTarget target = new DownloadTarget(destination, resumeDownload, progressListener);
+            target.addRangeHeaders(requestBuilder);
+            requestBuilder.tag(DownloadTarget.class, target);
+        }
+
+        if (priority != null) {
+            requestBuilder.tag(CallPriority.class, priority);
+        }
+
         return requestBuilder
                 .url(url)
                 .method(method, body);
     }
 
+    /**
+     * 写入时压缩，不缓冲压缩前或压缩后的内容，所以长度未知
+     */
+    private static final class CompressedRequestBody extends RequestBody {
+        private final RequestBody delegate;
+        private final String contentEncoding;
+
+        CompressedRequestBody(RequestBody delegate, String contentEncoding) {
+            this.delegate = delegate;
+            this.contentEncoding = contentEncoding;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return -1L;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            Sink compressingSink = "gzip".equals(contentEncoding)
+                    ? new GzipSink(sink)
+                    : new DeflaterSink(sink, new Deflater());
+            BufferedSink compressed = Okio.buffer(compressingSink);
+            delegate.writeTo(compressed);
+            // 关闭时写出剩余的压缩数据和结尾
+            compressed.close();
+        }
+    }
+
     private static class ContentTypeOverridingRequestBody extends RequestBody {
         private final RequestBody delegate;
         private final MediaType contentType;
@@ -15,6 +15,7 @@
  */
 package retrofit2;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
@@ -22,21 +23,26 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
+import kotlin.coroutines.Continuation;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
 import retrofit2.http.Body;
+import retrofit2.http.Compress;
 import retrofit2.http.DELETE;
+import retrofit2.http.Destination;
 import retrofit2.http.Field;
 import retrofit2.http.FieldMap;
 import retrofit2.http.FormUrlEncoded;
@@ -50,12 +56,16 @@ import retrofit2.http.OPTIONS;
 import retrofit2.http.PATCH;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
+import retrofit2.http.Progress;
 import retrofit2.http.Part;
 import retrofit2.http.PartMap;
+import retrofit2.http.Priority;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
 import retrofit2.http.QueryMap;
 import retrofit2.http.QueryName;
+import retrofit2.http.RateLimit;
+import retrofit2.http.Timeout;
 import retrofit2.http.Url;
 
 import static retrofit2.Utils.methodError;
@@ -72,7 +82,7 @@ final class RequestFactory {
     }
 
     // 具体的执行方法
-    private final Method method;
+    final Method method;
     // 基本域名
     private final HttpUrl baseUrl;
     // 请求类型 GET POST ...
@@ -92,6 +102,25 @@ final class RequestFactory {
     private final boolean isMultipart;
     // 保存参数的注解对象（这个注解对象由程序整理过的）
     private final ParameterHandler<?>[] parameterHandlers;
+    // 表示是 Kotlin 的 suspend 方法，最后一个参数是 Continuation，没有对应的 ParameterHandler
+    final boolean isKotlinSuspendFunction;
+    // 表示响应体通过 @Destination 参数直接写入文件
+    final boolean isDownload;
+    // @Compress 指定的请求体压缩方式，不压缩时为 null
+    private final @Nullable
+    String contentEncoding;
+    private final long compressionThreshold;
+    // @Timeout 指定的整个请求的时限，没有时为 -1
+    private final long timeoutNanos;
+    // @RateLimit 指定的方法级限流，同一个方法的所有请求共享
+    private final @Nullable
+    RateLimiter rateLimiter;
+    private final Map<String, RateLimiter> hostRateLimiters;
+    // @Priority 指定的方法优先级，没有时为 null
+    private final @Nullable
+    CallPriority priority;
+    final @Nullable
+    Executor conversionExecutor;
 
     RequestFactory(Builder builder) {
         method = builder.method;
@@ -104,9 +133,67 @@ final class RequestFactory {
         isFormEncoded = builder.isFormEncoded;
         isMultipart = builder.isMultipart;
         parameterHandlers = builder.parameterHandlers;
+        isKotlinSuspendFunction = builder.isKotlinSuspendFunction;
+        isDownload = builder.gotDestination;
+        contentEncoding = builder.contentEncoding;
+        compressionThreshold = builder.retrofit.compressionThreshold;
+        timeoutNanos = builder.timeoutNanos;
+        rateLimiter = builder.rateLimiter;
+        hostRateLimiters = builder.retrofit.hostRateLimiters;
+        priority = builder.priority;
+        conversionExecutor = builder.retrofit.conversionExecutor;
+    }
+
+    /**
+     * 从方法和 host 的令牌桶中各申请一个令牌，返回请求需要延后的纳秒数。
+     * 需要等待超过 {@code maxDelayNanos} 时不占用任何令牌，返回 -1。
+     */
+    long reservePermit(okhttp3.Request request, long maxDelayNanos) {
+        long delayNanos = 0L;
+        if (rateLimiter != null) {
+            delayNanos = rateLimiter.reserve(maxDelayNanos);
+            if (delayNanos == -1L) return -1L;
+        }
+        RateLimiter hostRateLimiter = hostRateLimiters.isEmpty()
+                ? null
+                : hostRateLimiters.get(request.url().host());
+        if (hostRateLimiter != null) {
+            long hostDelayNanos = hostRateLimiter.reserve(maxDelayNanos);
+            if (hostDelayNanos == -1L) {
+                if (rateLimiter != null) rateLimiter.unreserve();
+                return -1L;
+            }
+            delayNanos = Math.max(delayNanos, hostDelayNanos);
+        }
+        return delayNanos;
+    }
+
+    /**
+     * 服务端返回了 429，暂停发放令牌
+     */
+    void rateLimited(okhttp3.Response response) {
+        if (rateLimiter != null) {
+            rateLimiter.rateLimited(response);
+        }
+        RateLimiter hostRateLimiter = hostRateLimiters.get(response.request().url().host());
+        if (hostRateLimiter != null) {
+            hostRateLimiter.rateLimited(response);
+        }
     }
 
     okhttp3.Request create(Object[] args) throws IOException {
+        Tracing tracing = Tracing.get();
+        Object event = tracing.beginCreateRequest(method);
+        okhttp3.Request request = null;
+        try {
+            request = createRequest(args);
+            return request;
+        } finally {
+            tracing.endCreateRequest(event, request);
+        }
+    }
+
+    private okhttp3.Request createRequest(Object[] args) throws IOException {
         @SuppressWarnings("unchecked") // It is an error to invoke a method with the wrong arg types.
                 ParameterHandler<Object>[] handlers = (ParameterHandler<Object>[]) parameterHandlers;
 
@@ -118,6 +205,17 @@ final class RequestFactory {
 
         RequestBuilder requestBuilder = new RequestBuilder(httpMethod, baseUrl, relativeUrl,
                 headers, contentType, hasBody, isFormEncoded, isMultipart);
+        if (contentEncoding != null) {
+            requestBuilder.setCompression(contentEncoding, compressionThreshold);
+        }
+        if (priority != null) {
+            requestBuilder.setPriority(priority);
+        }
+
+        if (isKotlinSuspendFunction) {
+            // 最后一个参数是 Continuation，它在 handlers 中对应的位置是 null
+            argumentCount--;
+        }
 
         // 保存形参所对应的值
         List<Object> argumentList = new ArrayList<>(argumentCount);
@@ -126,9 +224,16 @@ final class RequestFactory {
             handlers[p].apply(requestBuilder, args[p]);
         }
 
+        // 继承调用方线程上的截止时间，和 @Timeout 取较早的一个
+        Deadline deadline = Deadline.current();
+        if (timeoutNanos != -1L) {
+            deadline = Deadline.earliest(deadline, Deadline.afterNanos(timeoutNanos));
+        }
+
         // 构建一个 OkHttp 的 Request 对象
         return requestBuilder.get()
                 .tag(Invocation.class, new Invocation(method, argumentList))
+                .tag(Deadline.class, deadline)
                 .build();
     }
 
@@ -161,6 +266,8 @@ final class RequestFactory {
         boolean gotQueryMap;
         // 是否得到url
         boolean gotUrl;
+        boolean gotDestination;
+        boolean gotProgress;
         String httpMethod;
         boolean hasBody;
         boolean isFormEncoded;
@@ -175,12 +282,24 @@ final class RequestFactory {
         Set<String> relativeUrlParamNames;
         // 保存参数的注解对象（这个注解对象由程序整理过的）
         ParameterHandler<?>[] parameterHandlers;
+        boolean isKotlinSuspendFunction;
+        String contentEncoding;
+        long timeoutNanos = -1L;
+        @Nullable
+        RateLimiter rateLimiter;
+        @Nullable
+        CallPriority priority;
+        boolean gotPriority;
 
         Builder(Retrofit retrofit, Method method) {
             this.retrofit = retrofit;
             this.method = method;
             this.methodAnnotations = method.getAnnotations();
             this.parameterTypes = method.getGenericParameterTypes();
+            // 使用规范化的类型，所有方法中相同的参数类型共享同一个实例
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypes[i] = Utils.canonicalize(parameterTypes[i], retrofit.canonicalTypes);
+            }
             this.parameterAnnotationsArray = method.getParameterAnnotations();
         }
 
@@ -212,8 +331,9 @@ final class RequestFactory {
             int parameterCount = parameterAnnotationsArray.length;
             parameterHandlers = new ParameterHandler<?>[parameterCount];
             // 一次性解析一个参数注解
-            for (int p = 0; p < parameterCount; p++) {
-                parameterHandlers[p] = parseParameter(p, parameterTypes[p], parameterAnnotationsArray[p]);
+            for (int p = 0, lastParameter = parameterCount - 1; p < parameterCount; p++) {
+                parameterHandlers[p] = parseParameter(p, parameterTypes[p], parameterAnnotationsArray[p],
+                        p == lastParameter);
             }
 
             // 如果 relativeUrl 为空，表明使用的应该是@url方式
@@ -229,6 +349,12 @@ final class RequestFactory {
             if (isMultipart && !gotPart) { // 多部分方法必须至少包含一个@Part
                 throw methodError(method, "Multipart method must contain at least one @Part.");
             }
+            if (contentEncoding != null && !hasBody) { // 没有请求体的方法不能压缩
+                throw methodError(method, "@Compress can only be used with HTTP methods that have a body.");
+            }
+            if (gotProgress && !gotDestination) { // @Progress 只用于报告下载进度
+                throw methodError(method, "@Progress parameter requires a @Destination parameter.");
+            }
             return new RequestFactory(this);
         }
 
@@ -269,6 +395,34 @@ final class RequestFactory {
                     throw methodError(method, "Only one encoding annotation is allowed.");
                 }
                 isFormEncoded = true;
+            } else if (annotation instanceof Compress) {
+                String encoding = ((Compress) annotation).value();
+                if (!RequestBuilder.isSupportedContentEncoding(encoding)) {
+                    throw methodError(method,
+                            "Unsupported @Compress encoding: %s. Supported encodings are gzip and deflate.",
+                            encoding);
+                }
+                contentEncoding = encoding;
+            } else if (annotation instanceof Timeout) {
+                Timeout timeout = (Timeout) annotation;
+                if (timeout.value() <= 0L) {
+                    throw methodError(method, "@Timeout value must be greater than zero but was %s.",
+                            timeout.value());
+                }
+                timeoutNanos = timeout.unit().toNanos(timeout.value());
+            } else if (annotation instanceof RateLimit) {
+                RateLimit rateLimit = (RateLimit) annotation;
+                if (rateLimit.permits() <= 0 || rateLimit.period() <= 0L) {
+                    throw methodError(method,
+                            "@RateLimit permits and period must be greater than zero but were %s and %s.",
+                            rateLimit.permits(), rateLimit.period());
+                }
+                rateLimiter = new RateLimiter(rateLimit.permits(), rateLimit.unit().toNanos(rateLimit.period()));
+            } else if (annotation instanceof Priority) {
+                int value = ((Priority) annotation).value();
+                if (value != 0) {
+                    priority = new CallPriority(value);
+                }
             }
         }
 
@@ -340,9 +494,11 @@ final class RequestFactory {
          * @param p             索引
          * @param parameterType 方法的参数
          * @param annotations   方法参数所追加的注解
-         * @return
+         * @param allowContinuation 是否是最后一个参数，只有最后一个参数可能是 Kotlin 的 Continuation
+         * @return 参数处理器，如果是 Continuation 则返回 null
          */
-        private ParameterHandler<?> parseParameter(int p, Type parameterType, @Nullable Annotation[] annotations) {
+        private @Nullable ParameterHandler<?> parseParameter(int p, Type parameterType,
+                @Nullable Annotation[] annotations, boolean allowContinuation) {
             ParameterHandler<?> result = null;
             if (annotations != null) {
                 for (Annotation annotation : annotations) {
@@ -363,6 +519,17 @@ final class RequestFactory {
             }
             // 如果没找到注解，也会抛出异常
             if (result == null) {
+                if (allowContinuation) {
+                    try {
+                        // suspend 方法编译后会在最后追加一个 Continuation 参数
+                        if (Utils.getRawType(parameterType) == Continuation.class) {
+                            isKotlinSuspendFunction = true;
+                            return null;
+                        }
+                    } catch (NoClassDefFoundError ignored) {
+                        // 没有 Kotlin 标准库，不可能是 suspend 方法
+                    }
+                }
                 throw parameterError(method, p, "No Retrofit annotation found.");
             }
             return result;
@@ -439,6 +606,13 @@ final class RequestFactory {
                 validatePathName(p, name);
 
                 Converter<?, String> converter = retrofit.stringConverter(type, annotations);
+                if (converter == BuiltInConverters.ToStringConverter.INSTANCE) {
+                    ParameterHandler.EncodedValues values = ParameterHandler.EncodedValues.forType(
+                            type, ParameterHandler.EncodedValues.PATH, path.encoded());
+                    if (values != null) {
+                        return new ParameterHandler.EncodedPath<>(name, values);
+                    }
+                }
                 return new ParameterHandler.Path<>(name, converter, path.encoded());
 
             } else if (annotation instanceof Query) {
@@ -460,16 +634,16 @@ final class RequestFactory {
                     Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
                     Converter<?, String> converter =
                             retrofit.stringConverter(iterableType, annotations);
-                    return new ParameterHandler.Query<>(name, converter, encoded).iterable();
+                    return queryHandler(name, iterableType, converter, encoded).iterable();
                 } else if (rawParameterType.isArray()) {
                     Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
                     Converter<?, String> converter =
                             retrofit.stringConverter(arrayComponentType, annotations);
-                    return new ParameterHandler.Query<>(name, converter, encoded).array();
+                    return queryHandler(name, arrayComponentType, converter, encoded).array();
                 } else {
                     Converter<?, String> converter =
                             retrofit.stringConverter(type, annotations);
-                    return new ParameterHandler.Query<>(name, converter, encoded);
+                    return queryHandler(name, type, converter, encoded);
                 }
 
             } else if (annotation instanceof QueryName) {
@@ -599,16 +773,16 @@ final class RequestFactory {
                     Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
                     Converter<?, String> converter =
                             retrofit.stringConverter(iterableType, annotations);
-                    return new ParameterHandler.Field<>(name, converter, encoded).iterable();
+                    return fieldHandler(name, iterableType, converter, encoded).iterable();
                 } else if (rawParameterType.isArray()) {
                     Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
                     Converter<?, String> converter =
                             retrofit.stringConverter(arrayComponentType, annotations);
-                    return new ParameterHandler.Field<>(name, converter, encoded).array();
+                    return fieldHandler(name, arrayComponentType, converter, encoded).array();
                 } else {
                     Converter<?, String> converter =
                             retrofit.stringConverter(type, annotations);
-                    return new ParameterHandler.Field<>(name, converter, encoded);
+                    return fieldHandler(name, type, converter, encoded);
                 }
 
             } else if (annotation instanceof FieldMap) {
@@ -671,6 +845,15 @@ final class RequestFactory {
                                     "@Part annotation must supply a name or use MultipartBody.Part parameter type.");
                         }
                         return ParameterHandler.RawPart.INSTANCE.array();
+                    } else if (Iterator.class.isAssignableFrom(rawParameterType)) {
+                        // 迭代器中的 part 在写入请求体时才被取出
+                        if (!(type instanceof ParameterizedType)
+                                || !MultipartBody.Part.class.isAssignableFrom(Utils.getRawType(
+                                Utils.getParameterUpperBound(0, (ParameterizedType) type)))) {
+                            throw parameterError(method, p,
+                                    "@Part annotation must supply a name or use MultipartBody.Part parameter type.");
+                        }
+                        return ParameterHandler.RawPartIterator.INSTANCE;
                     } else if (MultipartBody.Part.class.isAssignableFrom(rawParameterType)) {
                         return ParameterHandler.RawPart.INSTANCE;
                     } else {
@@ -699,6 +882,22 @@ final class RequestFactory {
                         Converter<?, RequestBody> converter =
                                 retrofit.requestBodyConverter(iterableType, annotations, methodAnnotations);
                         return new ParameterHandler.Part<>(headers, converter).iterable();
+                    } else if (Iterator.class.isAssignableFrom(rawParameterType)) {
+                        if (!(type instanceof ParameterizedType)) {
+                            throw parameterError(method, p, rawParameterType.getSimpleName()
+                                    + " must include generic type (e.g., "
+                                    + rawParameterType.getSimpleName()
+                                    + "<String>)");
+                        }
+                        Type iteratorType = Utils.getParameterUpperBound(0, (ParameterizedType) type);
+                        if (MultipartBody.Part.class.isAssignableFrom(Utils.getRawType(iteratorType))) {
+                            throw parameterError(method, p,
+                                    "@Part parameters using the MultipartBody.Part must not "
+                                            + "include a part name in the annotation.");
+                        }
+                        Converter<?, RequestBody> converter =
+                                retrofit.requestBodyConverter(iteratorType, annotations, methodAnnotations);
+                        return new ParameterHandler.PartIterator<>(headers, converter);
                     } else if (rawParameterType.isArray()) {
                         Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
                         if (MultipartBody.Part.class.isAssignableFrom(arrayComponentType)) {
@@ -774,11 +973,71 @@ final class RequestFactory {
                 }
                 gotBody = true;
                 return new ParameterHandler.Body<>(converter);
+
+            } else if (annotation instanceof Destination) {
+                if (gotDestination) {
+                    throw parameterError(method, p, "Multiple @Destination method annotations found.");
+                }
+                if (type != File.class) {
+                    throw parameterError(method, p, "@Destination parameter type must be java.io.File.");
+                }
+                gotDestination = true;
+                return new ParameterHandler.Destination(((Destination) annotation).resume());
+
+            } else if (annotation instanceof Progress) {
+                if (gotProgress) {
+                    throw parameterError(method, p, "Multiple @Progress method annotations found.");
+                }
+                if (type != ProgressListener.class) {
+                    throw parameterError(method, p,
+                            "@Progress parameter type must be retrofit2.ProgressListener.");
+                }
+                gotProgress = true;
+                return new ParameterHandler.Progress();
+
+            } else if (annotation instanceof Priority) {
+                if (gotPriority) {
+                    throw parameterError(method, p, "Multiple @Priority parameters found.");
+                }
+                if (type != int.class && type != Integer.class) {
+                    throw parameterError(method, p, "@Priority parameter type must be int or Integer.");
+                }
+                gotPriority = true;
+                return new ParameterHandler.Priority();
             }
 
             return null; // 没有定义 Retrofit 注解
         }
 
+        /**
+         * 使用默认 toString() 转换器的数字、布尔值、UUID 和枚举参数，名称和值都在这里预先编码
+         */
+        private static ParameterHandler<?> queryHandler(
+                String name, Type type, Converter<?, String> converter, boolean encoded) {
+            if (converter == BuiltInConverters.ToStringConverter.INSTANCE) {
+                ParameterHandler.EncodedValues values = ParameterHandler.EncodedValues.forType(
+                        type, ParameterHandler.EncodedValues.QUERY, encoded);
+                if (values != null) {
+                    String encodedName = encoded ? name : RequestBuilder.encodeQueryComponent(name);
+                    return new ParameterHandler.EncodedQuery<>(encodedName, values);
+                }
+            }
+            return new ParameterHandler.Query<>(name, converter, encoded);
+        }
+
+        private static ParameterHandler<?> fieldHandler(
+                String name, Type type, Converter<?, String> converter, boolean encoded) {
+            if (converter == BuiltInConverters.ToStringConverter.INSTANCE) {
+                ParameterHandler.EncodedValues values = ParameterHandler.EncodedValues.forType(
+                        type, ParameterHandler.EncodedValues.FORM, encoded);
+                if (values != null) {
+                    String encodedName = encoded ? name : RequestBuilder.encodeFormComponent(name);
+                    return new ParameterHandler.EncodedField<>(encodedName, values);
+                }
+            }
+            return new ParameterHandler.Field<>(name, converter, encoded);
+        }
+
         private void validateResolvableType(int p, Type type) {
             if (Utils.hasUnresolvableType(type)) {
                 throw parameterError(method, p,
@@ -21,12 +21,17 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
@@ -37,6 +42,7 @@ import retrofit2.http.Header;
 import retrofit2.http.Url;
 
 import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
 import static retrofit2.Utils.checkNotNull;
 
 /**
@@ -65,6 +71,18 @@ public final class Retrofit {
     // 作用：存储网络请求相关的配置，如网络请求的方法、数据转换器、网络请求适配器、网络请求工厂、基地址等
     private final Map<Method, ServiceMethod<?>> serviceMethodCache = new ConcurrentHashMap<>();
 
+    // 已解析的适配器与转换器，以 类型 + 注解 为键（见 ResolutionKey）
+    // 作用：解析大量方法时，相同的类型和注解只需要遍历一次工厂集合
+    private final Map<ResolutionKey, Object> resolutionCache = new ConcurrentHashMap<>();
+
+    // 规范化类型的驻留池，相等的类型只保留一个实例（见 Utils.canonicalize）
+    // 只属于这个实例：静态的池会一直引用服务接口的类和它们的类加载器，重新部署后也无法回收
+    final ConcurrentMap<Type, Type> canonicalTypes = new ConcurrentHashMap<>();
+
+    // 缓存键中注解的驻留池，相等的注解只保留一个实例，比较缓存键时只需比较引用
+    private final ConcurrentMap<Annotation, Annotation> canonicalAnnotations =
+            new ConcurrentHashMap<>();
+
     // 网络请求器
     // 默认使用 OkHttp
     final okhttp3.Call.Factory callFactory;
@@ -90,15 +108,34 @@ public final class Retrofit {
     // 作用：是否提前对业务接口中的注解进行验证转换的标志位
     final boolean validateEagerly;
 
+    // @Compress 方法中请求体小于这个字节数时不压缩
+    final long compressionThreshold;
+
+    // 每个 host 的限流，key 为 host
+    final Map<String, RateLimiter> hostRateLimiters;
+
+    // @Bulkhead 使用的隔离的 Call.Factory，key 为名称
+    final Map<String, okhttp3.Call.Factory> bulkheads;
+
+    // 异步请求在这里转换响应体和创建请求，为 null 时在 OkHttp 的线程上进行
+    final @Nullable
+    Executor conversionExecutor;
+
     Retrofit(okhttp3.Call.Factory callFactory, HttpUrl baseUrl,
              List<Converter.Factory> converterFactories, List<CallAdapter.Factory> callAdapterFactories,
-             @Nullable Executor callbackExecutor, boolean validateEagerly) {
+             @Nullable Executor callbackExecutor, boolean validateEagerly, long compressionThreshold,
+             Map<String, RateLimiter> hostRateLimiters, Map<String, okhttp3.Call.Factory> bulkheads,
+             @Nullable Executor conversionExecutor) {
         this.callFactory = callFactory;
         this.baseUrl = baseUrl;
         this.converterFactories = converterFactories; // Copy+unmodifiable at call site.
         this.callAdapterFactories = callAdapterFactories; // Copy+unmodifiable at call site.
         this.callbackExecutor = callbackExecutor;
         this.validateEagerly = validateEagerly;
+        this.compressionThreshold = compressionThreshold;
+        this.hostRateLimiters = hostRateLimiters; // Copy+unmodifiable at call site.
+        this.bulkheads = bulkheads; // Copy+unmodifiable at call site.
+        this.conversionExecutor = conversionExecutor;
     }
 
     /**
@@ -262,11 +299,20 @@ public final class Retrofit {
         checkNotNull(returnType, "returnType == null");
         checkNotNull(annotations, "annotations == null");
 
+        ResolutionKey key = new ResolutionKey(
+                ResolutionKey.CALL_ADAPTER, skipPast, returnType, annotations, null,
+                canonicalAnnotations);
+        CallAdapter<?, ?> cached = (CallAdapter<?, ?>) resolutionCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
         // 检索出指定的适配器
         int start = callAdapterFactories.indexOf(skipPast) + 1;
         for (int i = start, count = callAdapterFactories.size(); i < count; i++) {
             CallAdapter<?, ?> adapter = callAdapterFactories.get(i).get(returnType, annotations, this);
             if (adapter != null) {
+                resolutionCache.put(key, adapter);
                 return adapter;
             }
         }
@@ -323,12 +369,21 @@ public final class Retrofit {
         checkNotNull(parameterAnnotations, "parameterAnnotations == null");
         checkNotNull(methodAnnotations, "methodAnnotations == null");
 
+        ResolutionKey key = new ResolutionKey(ResolutionKey.REQUEST_BODY_CONVERTER, skipPast, type,
+                parameterAnnotations, methodAnnotations, canonicalAnnotations);
+        Object cached = resolutionCache.get(key);
+        if (cached != null) {
+            //noinspection unchecked
+            return (Converter<T, RequestBody>) cached;
+        }
+
         int start = converterFactories.indexOf(skipPast) + 1;
         for (int i = start, count = converterFactories.size(); i < count; i++) {
             Converter.Factory factory = converterFactories.get(i);
             Converter<?, RequestBody> converter =
                     factory.requestBodyConverter(type, parameterAnnotations, methodAnnotations, this);
             if (converter != null) {
+                resolutionCache.put(key, converter);
                 //noinspection unchecked
                 return (Converter<T, RequestBody>) converter;
             }
@@ -373,12 +428,22 @@ public final class Retrofit {
         checkNotNull(type, "type == null");
         checkNotNull(annotations, "annotations == null");
 
+        ResolutionKey key = new ResolutionKey(
+                ResolutionKey.RESPONSE_BODY_CONVERTER, skipPast, type, annotations, null,
+                canonicalAnnotations);
+        Object cached = resolutionCache.get(key);
+        if (cached != null) {
+            // noinspection unchecked
+            return (Converter<ResponseBody, T>) cached;
+        }
+
         // 获得指定的转化器
         int start = converterFactories.indexOf(skipPast) + 1;
         for (int i = start, count = converterFactories.size(); i < count; i++) {
             Converter<ResponseBody, ?> converter =
                     converterFactories.get(i).responseBodyConverter(type, annotations, this);
             if (converter != null) {
+                resolutionCache.put(key, converter);
                 // noinspection unchecked
                 return (Converter<ResponseBody, T>) converter;
             }
@@ -410,18 +475,28 @@ public final class Retrofit {
         checkNotNull(type, "type == null");
         checkNotNull(annotations, "annotations == null");
 
+        ResolutionKey key = new ResolutionKey(
+                ResolutionKey.STRING_CONVERTER, null, type, annotations, null,
+                canonicalAnnotations);
+        Object cached = resolutionCache.get(key);
+        if (cached != null) {
+            //noinspection unchecked
+            return (Converter<T, String>) cached;
+        }
+
+        Converter<?, String> result = BuiltInConverters.ToStringConverter.INSTANCE;
         for (int i = 0, count = converterFactories.size(); i < count; i++) {
             Converter<?, String> converter =
                     converterFactories.get(i).stringConverter(type, annotations, this);
             if (converter != null) {
-                //noinspection unchecked
-                return (Converter<T, String>) converter;
+                result = converter;
+                break;
             }
         }
-
         // Nothing matched. Resort to default converter which just calls toString().
+        resolutionCache.put(key, result);
         //noinspection unchecked
-        return (Converter<T, String>) BuiltInConverters.ToStringConverter.INSTANCE;
+        return (Converter<T, String>) result;
     }
 
     /**
@@ -437,6 +512,98 @@ public final class Retrofit {
         return new Builder(this);
     }
 
+    /**
+     * 适配器与转换器的缓存键
+     * 由查找的种类、跳过的工厂、类型和注解组成，哈希值在创建时计算一次
+     * 注：工厂会读取注解的值（例如 @Query 的名称、@Part 的 encoding），所以注解必须完整比较，
+     * 只有注解完全相等的查找才能共用结果。注解先换成驻留池中的规范实例，之后只需比较引用。
+     */
+    static final class ResolutionKey {
+        static final int CALL_ADAPTER = 0;
+        static final int REQUEST_BODY_CONVERTER = 1;
+        static final int RESPONSE_BODY_CONVERTER = 2;
+        static final int STRING_CONVERTER = 3;
+
+        private final int kind;
+        private final @Nullable Object skipPast;
+        private final Type type;
+        private final Annotation[] annotations;
+        private final @Nullable Annotation[] otherAnnotations;
+        private final int hashCode;
+
+        ResolutionKey(int kind, @Nullable Object skipPast, Type type, Annotation[] annotations,
+                      @Nullable Annotation[] otherAnnotations,
+                      ConcurrentMap<Annotation, Annotation> canonicalAnnotations) {
+            this.kind = kind;
+            this.skipPast = skipPast;
+            this.type = type;
+            this.annotations = canonicalize(annotations, canonicalAnnotations);
+            this.otherAnnotations = otherAnnotations != null
+                    ? canonicalize(otherAnnotations, canonicalAnnotations)
+                    : null;
+
+            int result = kind;
+            result = 31 * result + (skipPast != null ? System.identityHashCode(skipPast) : 0);
+            result = 31 * result + type.hashCode();
+            result = 31 * result + identityHashCode(this.annotations);
+            result = 31 * result + identityHashCode(this.otherAnnotations);
+            this.hashCode = result;
+        }
+
+        /**
+         * 把每个注解换成驻留池中与它相等的实例，保持原来的顺序
+         */
+        private static Annotation[] canonicalize(Annotation[] annotations,
+                                                 ConcurrentMap<Annotation, Annotation> table) {
+            Annotation[] result = new Annotation[annotations.length];
+            for (int i = 0; i < annotations.length; i++) {
+                Annotation annotation = annotations[i];
+                Annotation existing = table.putIfAbsent(annotation, annotation);
+                result[i] = existing != null ? existing : annotation;
+            }
+            return result;
+        }
+
+        private static int identityHashCode(@Nullable Annotation[] annotations) {
+            if (annotations == null) return 0;
+            int result = 1;
+            for (Annotation annotation : annotations) {
+                result = 31 * result + System.identityHashCode(annotation);
+            }
+            return result;
+        }
+
+        /**
+         * 注解都是规范实例，相等即同一个对象
+         */
+        private static boolean sameAnnotations(@Nullable Annotation[] a, @Nullable Annotation[] b) {
+            if (a == b) return true;
+            if (a == null || b == null || a.length != b.length) return false;
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ResolutionKey)) return false;
+            ResolutionKey other = (ResolutionKey) o;
+            return hashCode == other.hashCode
+                    && kind == other.kind
+                    && skipPast == other.skipPast // 工厂按实例比较
+                    && (type == other.type || Utils.equals(type, other.type)) // 规范化类型只需比较引用
+                    && sameAnnotations(annotations, other.annotations)
+                    && sameAnnotations(otherAnnotations, other.otherAnnotations);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
     /**
      * Build a new {@link Retrofit}.
      * <p>
@@ -453,6 +620,16 @@ public final class Retrofit {
         private @Nullable
         Executor callbackExecutor;
         private boolean validateEagerly;
+        private long compressionThreshold;
+        private boolean coalesceCallbacks;
+        private @Nullable
+        ConcurrencyLimiter concurrencyLimiter;
+        private final Map<String, RateLimiter> hostRateLimiters = new LinkedHashMap<>();
+        private final Map<String, okhttp3.Call.Factory> bulkheads = new LinkedHashMap<>();
+        // 由 build() 从 OkHttpClient 派生的隔离区，value 为最大并发请求数
+        private final Map<String, Integer> bulkheadSizes = new LinkedHashMap<>();
+        private @Nullable
+        Executor conversionExecutor;
 
         Builder(Platform platform) {
             this.platform = platform;
@@ -466,11 +643,17 @@ public final class Retrofit {
         Builder(Retrofit retrofit) {
             platform = Platform.get();
             callFactory = retrofit.callFactory;
+            if (callFactory instanceof LimitingCallFactory) {
+                // 还原成原始的 Call.Factory，build() 时再重新包装
+                concurrencyLimiter = ((LimitingCallFactory) callFactory).limiter;
+                callFactory = ((LimitingCallFactory) callFactory).delegate;
+            }
             baseUrl = retrofit.baseUrl;
 
-            // Do not add the default BuiltIntConverters and platform-aware converters added by build().
+            // Do not add the default BuiltIntConverters, StreamingRequestBodyConverterFactory and
+            // platform-aware converters added by build().
             for (int i = 1,
-                 size = retrofit.converterFactories.size() - platform.defaultConverterFactoriesSize();
+                 size = retrofit.converterFactories.size() - 1 - platform.defaultConverterFactoriesSize();
                  i < size; i++) {
                 converterFactories.add(retrofit.converterFactories.get(i));
             }
@@ -483,7 +666,24 @@ public final class Retrofit {
             }
 
             callbackExecutor = retrofit.callbackExecutor;
+            if (callbackExecutor instanceof CoalescingExecutor) {
+                // 还原成原始的执行器，build() 时再重新包装
+                callbackExecutor = ((CoalescingExecutor) callbackExecutor).delegate;
+                coalesceCallbacks = true;
+            }
             validateEagerly = retrofit.validateEagerly;
+            compressionThreshold = retrofit.compressionThreshold;
+            // 共享同一个令牌桶，两个实例的请求合计不超过限制
+            hostRateLimiters.putAll(retrofit.hostRateLimiters);
+            // 派生的隔离区已经创建，直接复用它们的线程池和连接池
+            for (Map.Entry<String, okhttp3.Call.Factory> entry : retrofit.bulkheads.entrySet()) {
+                okhttp3.Call.Factory factory = entry.getValue();
+                if (factory instanceof LimitingCallFactory) {
+                    factory = ((LimitingCallFactory) factory).delegate;
+                }
+                bulkheads.put(entry.getKey(), factory);
+            }
+            conversionExecutor = retrofit.conversionExecutor;
         }
 
         /**
@@ -606,6 +806,48 @@ public final class Retrofit {
             return this;
         }
 
+        /**
+         * The executor on which asynchronous calls convert their response body and create their
+         * request, including serializing its body. By default this work happens on the threads of
+         * the {@linkplain #callFactory call factory}, which are sized for I/O and are held up by slow
+         * converters. A pool sized to the number of CPU cores keeps decoding from delaying the
+         * network.
+         * <p>
+         * The response body is read in full on the I/O thread before it is handed to the converter.
+         * Methods that must read the body as it arrives stay on the I/O thread and are not
+         * buffered: {@link retrofit2.http.Streaming @Streaming} methods, downloads to a
+         * {@link retrofit2.http.Destination @Destination}, and {@link java.util.Iterator},
+         * {@link MultipartReader} and {@link Lazy} response types. So do {@code ResponseBody},
+         * {@code Void} and {@code Unit}, whose built-in converters do no real work. Synchronous
+         * calls convert on the calling thread.
+         */
+        public Builder conversionExecutor(Executor executor) {
+            this.conversionExecutor = checkNotNull(executor, "executor == null");
+            return this;
+        }
+
+        /**
+         * When true, {@link Callback} methods which become ready at the same time are delivered
+         * together in a single task on the {@linkplain #callbackExecutor callback executor}, rather
+         * than one task each. On Android this posts one message to the main thread for a burst of
+         * completed calls instead of one message per call. Callbacks still run in completion order.
+         * Defaults to false.
+         */
+        public Builder coalesceCallbacks(boolean coalesceCallbacks) {
+            this.coalesceCallbacks = coalesceCallbacks;
+            return this;
+        }
+
+        /**
+         * Limit the number of calls in flight with {@code limiter}, which adapts the limit of each
+         * host or service to its latency. Calls over the limit are held back before they reach the
+         * {@linkplain #callFactory call factory}.
+         */
+        public Builder concurrencyLimiter(ConcurrencyLimiter limiter) {
+            this.concurrencyLimiter = checkNotNull(limiter, "limiter == null");
+            return this;
+        }
+
         /**
          * Returns a modifiable list of call adapter factories.
          */
@@ -629,6 +871,64 @@ public final class Retrofit {
             return this;
         }
 
+        /**
+         * The minimum length in bytes of a request body before methods annotated with
+         * {@link retrofit2.http.Compress @Compress} compress it. Shorter bodies are sent as they are,
+         * since compressing them saves little and may even make them larger. Bodies of unknown
+         * length are always compressed. Defaults to 0, compressing every body.
+         */
+        public Builder compressionThreshold(long bytes) {
+            if (bytes < 0L) {
+                throw new IllegalArgumentException("bytes < 0: " + bytes);
+            }
+            this.compressionThreshold = bytes;
+            return this;
+        }
+
+        /**
+         * Allow at most {@code permits} calls to {@code host} per {@code period}, in addition to the
+         * rate of methods annotated with {@link retrofit2.http.RateLimit @RateLimit}. Calls over the
+         * rate are delayed rather than failed, without blocking the caller of
+         * {@link Call#enqueue(Callback)}.
+         */
+        public Builder rateLimit(String host, int permits, long period, TimeUnit unit) {
+            checkNotNull(host, "host == null");
+            checkNotNull(unit, "unit == null");
+            if (permits <= 0) throw new IllegalArgumentException("permits <= 0: " + permits);
+            if (period <= 0L) throw new IllegalArgumentException("period <= 0: " + period);
+            hostRateLimiters.put(host, new RateLimiter(permits, unit.toNanos(period)));
+            return this;
+        }
+
+        /**
+         * Isolate the calls of services and methods annotated with
+         * {@link retrofit2.http.Bulkhead @Bulkhead(name)} in a client derived from the
+         * {@linkplain #client client}: it shares its configuration and interceptors but has its own
+         * {@link Dispatcher}, thread pool and {@link ConnectionPool}, and runs at most
+         * {@code maxRequests} calls at once. Requires the call factory to be an
+         * {@link OkHttpClient}.
+         */
+        public Builder bulkhead(String name, int maxRequests) {
+            checkNotNull(name, "name == null");
+            if (maxRequests <= 0) throw new IllegalArgumentException("maxRequests <= 0: " + maxRequests);
+            bulkheads.remove(name);
+            bulkheadSizes.put(name, maxRequests);
+            return this;
+        }
+
+        /**
+         * Send the calls of services and methods annotated with
+         * {@link retrofit2.http.Bulkhead @Bulkhead(name)} through {@code factory} instead of the
+         * {@linkplain #callFactory call factory}.
+         */
+        public Builder bulkhead(String name, okhttp3.Call.Factory factory) {
+            checkNotNull(name, "name == null");
+            checkNotNull(factory, "factory == null");
+            bulkheadSizes.remove(name);
+            bulkheads.put(name, factory);
+            return this;
+        }
+
         /**
          * Create the {@link Retrofit} instance using the configured values.
          * <p>
@@ -647,12 +947,41 @@ public final class Retrofit {
                 callFactory = new OkHttpClient();
             }
 
+            // 配置隔离区：每个隔离区有自己的 Dispatcher 和连接池
+            Map<String, okhttp3.Call.Factory> bulkheads = new LinkedHashMap<>(this.bulkheads);
+            if (!bulkheadSizes.isEmpty()) {
+                if (!(callFactory instanceof OkHttpClient)) {
+                    throw new IllegalStateException(
+                            "Bulkheads with a size require an OkHttpClient as the call factory.");
+                }
+                OkHttpClient client = (OkHttpClient) callFactory;
+                for (Map.Entry<String, Integer> entry : bulkheadSizes.entrySet()) {
+                    Dispatcher dispatcher = new Dispatcher();
+                    dispatcher.setMaxRequests(entry.getValue());
+                    dispatcher.setMaxRequestsPerHost(entry.getValue());
+                    bulkheads.put(entry.getKey(), client.newBuilder()
+                            .dispatcher(dispatcher)
+                            .connectionPool(new ConnectionPool())
+                            .build());
+                }
+            }
+
+            if (concurrencyLimiter != null) {
+                callFactory = new LimitingCallFactory(callFactory, concurrencyLimiter);
+                for (Map.Entry<String, okhttp3.Call.Factory> entry : bulkheads.entrySet()) {
+                    entry.setValue(new LimitingCallFactory(entry.getValue(), concurrencyLimiter));
+                }
+            }
+
             // 配置回调方法执行器
             Executor callbackExecutor = this.callbackExecutor;
             // 如果没指定，则默认使用平台默认的回调线程
             if (callbackExecutor == null) {
                 callbackExecutor = platform.defaultCallbackExecutor();
             }
+            if (callbackExecutor != null && coalesceCallbacks) {
+                callbackExecutor = new CoalescingExecutor(callbackExecutor);
+            }
 
             // 配置网络请求适配器工厂
             List<CallAdapter.Factory> callAdapterFactories = new ArrayList<>(this.callAdapterFactories);
@@ -663,16 +992,20 @@ public final class Retrofit {
             List<Converter.Factory> converterFactories = new ArrayList<>(
                     // 如果是 Android 平台，默认会有一个 OptionalConverterFactory 的转换器
                     // 如果是 Java 平台，则会有两个
-                    1 + this.converterFactories.size() + platform.defaultConverterFactoriesSize());
+                    2 + this.converterFactories.size() + platform.defaultConverterFactoriesSize());
 
             // 配置数据转换器工厂
             converterFactories.add(new BuiltInConverters()); // 添加默认转换器
             converterFactories.addAll(this.converterFactories); // 添加用户传入的转换器
+            // 文件、缓冲区等请求体排在用户转换器之后，用户的工厂可以自己处理这些类型
+            converterFactories.add(new StreamingRequestBodyConverterFactory());
             converterFactories.addAll(platform.defaultConverterFactories()); // 添加平台默认转换器
 
             // 使用 unmodifiableList 标记完，converterFactories 与 callAdapterFactories不可修改
             return new Retrofit(callFactory, baseUrl, unmodifiableList(converterFactories),
-                    unmodifiableList(callAdapterFactories), callbackExecutor, validateEagerly);
+                    unmodifiableList(callAdapterFactories), callbackExecutor, validateEagerly,
+                    compressionThreshold, unmodifiableMap(new LinkedHashMap<>(hostRateLimiters)),
+                    unmodifiableMap(bulkheads), conversionExecutor);
         }
     }
 }
@@ -30,6 +30,16 @@ abstract class ServiceMethod<T> {
      * @return
      */
     static <T> ServiceMethod<T> parseAnnotations(Retrofit retrofit, Method method) {
+        Tracing tracing = Tracing.get();
+        Object event = tracing.beginParseAnnotations(method);
+        try {
+            return parse(retrofit, method);
+        } finally {
+            tracing.endParseAnnotations(event);
+        }
+    }
+
+    private static <T> ServiceMethod<T> parse(Retrofit retrofit, Method method) {
         // 获得了具体的请求体内容
         RequestFactory requestFactory = RequestFactory.parseAnnotations(retrofit, method);
 
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.ByteString;
+
+/**
+ * A {@code multipart/form-data} body whose parts may come from an {@link Iterator} that is only
+ * consumed while the body is written. Each lazily produced part is written and released before
+ * the next one is requested, so memory stays bounded regardless of the number of parts. The length
+ * of such a body is unknown and it is sent with chunked transfer encoding.
+ * <p>
+ * Iterators and input streams can only be consumed once, so this body is a
+ * {@link OneShotRequestBody}: OkHttp will not resend it on a retry or a 307/308 redirect.
+ */
+final class StreamingMultipartBody extends OneShotRequestBody {
+    private static final byte[] COLONSPACE = {':', ' '};
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] DASHDASH = {'-', '-'};
+
+    private final ByteString boundary;
+    private final MediaType contentType;
+    // 元素是 MultipartBody.Part 或者 Iterator<MultipartBody.Part>
+    private final List<Object> sources;
+
+    StreamingMultipartBody(ByteString boundary, List<Object> sources) {
+        this.boundary = boundary;
+        this.contentType = MediaType.get(MultipartBody.FORM + "; boundary=" + boundary.utf8());
+        this.sources = sources;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1L;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        for (Object source : sources) {
+            if (source instanceof MultipartBody.Part) {
+                writePart(sink, (MultipartBody.Part) source);
+            } else {
+                @SuppressWarnings("unchecked") // Only parts and part iterators are added.
+                Iterator<MultipartBody.Part> parts = (Iterator<MultipartBody.Part>) source;
+                MultipartBody.Part part;
+                while ((part = nextPart(parts)) != null) {
+                    writePart(sink, part);
+                }
+            }
+        }
+
+        sink.write(DASHDASH);
+        sink.write(boundary);
+        sink.write(DASHDASH);
+        sink.write(CRLF);
+    }
+
+    /**
+     * 迭代器在 OkHttp 的 I/O 线程上运行，而 OkHttp 只把 IOException 交给 onFailure，
+     * 其他异常会使异步请求永远得不到回调，所以转换失败等异常都转为 IOException
+     */
+    private static @Nullable
+    MultipartBody.Part nextPart(Iterator<MultipartBody.Part> parts) throws IOException {
+        try {
+            return parts.hasNext() ? parts.next() : null;
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause() instanceof IOException ? e.getCause() : e;
+            throw new IOException(e.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 与 {@link MultipartBody} 的格式保持一致
+     */
+    private void writePart(BufferedSink sink, MultipartBody.Part part) throws IOException {
+        sink.write(DASHDASH);
+        sink.write(boundary);
+        sink.write(CRLF);
+
+        Headers headers = part.headers();
+        if (headers != null) {
+            for (int i = 0, size = headers.size(); i < size; i++) {
+                sink.writeUtf8(headers.name(i))
+                        .write(COLONSPACE)
+                        .writeUtf8(headers.value(i))
+                        .write(CRLF);
+            }
+        }
+
+        RequestBody body = part.body();
+        MediaType contentType = body.contentType();
+        if (contentType != null) {
+            sink.writeUtf8("Content-Type: ")
+                    .writeUtf8(contentType.toString())
+                    .write(CRLF);
+        }
+        long contentLength = body.contentLength();
+        if (contentLength != -1L) {
+            sink.writeUtf8("Content-Length: ")
+                    .writeDecimalLong(contentLength)
+                    .write(CRLF);
+        }
+
+        sink.write(CRLF);
+        body.writeTo(sink);
+        sink.write(CRLF);
+    }
+
+    /**
+     * Collects parts in order. Builds a regular {@link MultipartBody} unless a lazy part iterator
+     * or a part that cannot be written twice was added.
+     */
+    static final class Builder {
+        private final ByteString boundary = ByteString.encodeUtf8(UUID.randomUUID().toString());
+        private final List<Object> sources = new ArrayList<>();
+        private boolean unrepeatable;
+
+        void addPart(MultipartBody.Part part) {
+            sources.add(part);
+            // MultipartBody 本身没有只能写入一次的标记，OkHttp 会重发它，所以这里也要换成流式的 body
+            if (OneShotRequestBody.isOneShot(part.body())) {
+                unrepeatable = true;
+            }
+        }
+
+        void addParts(Iterator<MultipartBody.Part> parts) {
+            sources.add(parts);
+            unrepeatable = true;
+        }
+
+        RequestBody build() {
+            if (unrepeatable) {
+                return new StreamingMultipartBody(boundary, sources);
+            }
+
+            MultipartBody.Builder builder = new MultipartBody.Builder(boundary.utf8())
+                    .setType(MultipartBody.FORM);
+            for (Object source : sources) {
+                builder.addPart((MultipartBody.Part) source);
+            }
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import javax.annotation.Nullable;
+
+import okhttp3.RequestBody;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+/**
+ * 把 File、Path、FileChannel、ByteBuffer 和 InputStream 直接写入请求体，不需要先读入堆内存。
+ * <p>
+ * 它排在用户添加的转换器之后，所以用户的转换器工厂仍然可以自己处理这些类型（例如把 File 序列化成 JSON）。
+ * 具体的转换器在 {@link BuiltInConverters} 中。
+ */
+final class StreamingRequestBodyConverterFactory extends Converter.Factory {
+    /**
+     * java.nio.file 只在 Java 7 和 Android API 26 以上存在。
+     * Not volatile because we don't mind multiple threads discovering this.
+     */
+    private boolean checkForNioPath = true;
+
+    @Override
+    public @Nullable
+    Converter<?, RequestBody> requestBodyConverter(
+            Type type, Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+        Class<?> rawType = Utils.getRawType(type);
+        if (rawType == File.class) {
+            return BuiltInConverters.FileRequestBodyConverter.INSTANCE;
+        }
+        if (FileChannel.class.isAssignableFrom(rawType)) {
+            return BuiltInConverters.FileChannelRequestBodyConverter.INSTANCE;
+        }
+        if (ByteBuffer.class.isAssignableFrom(rawType)) {
+            return BuiltInConverters.ByteBufferRequestBodyConverter.INSTANCE;
+        }
+        if (InputStream.class.isAssignableFrom(rawType)) {
+            return BuiltInConverters.InputStreamRequestBodyConverter.INSTANCE;
+        }
+        if (checkForNioPath) {
+            try {
+                if (isNioPath(rawType)) {
+                    return BuiltInConverters.PathRequestBodyConverter.INSTANCE;
+                }
+            } catch (NoClassDefFoundError ignored) {
+                checkForNioPath = false;
+            }
+        }
+        return null;
+    }
+
+    @IgnoreJRERequirement // Guarded by the NoClassDefFoundError check in the caller.
+    private static boolean isNioPath(Class<?> rawType) {
+        return Path.class.isAssignableFrom(rawType);
+    }
+}
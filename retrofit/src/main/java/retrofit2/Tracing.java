@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.lang.reflect.Method;
+import javax.annotation.Nullable;
+
+import okhttp3.Request;
+
+/**
+ * 记录 Retrofit 各个阶段的耗时。默认什么也不做；运行时有 JDK Flight Recorder 时使用 JfrTracing，
+ * 由 JFR 决定是否记录，没有开启录制时几乎没有开销。
+ * <p>
+ * 每个阶段由 begin 方法开始，返回的对象（不记录时为 null）交给对应的 end 方法结束。
+ */
+class Tracing {
+    private static final Tracing TRACING = findTracing();
+
+    static Tracing get() {
+        return TRACING;
+    }
+
+    private static Tracing findTracing() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            // JfrTracing 在 src/main/java-jfr 中，只有用 JDK 11+ 构建时才会编译进来
+            return (Tracing) Class.forName("retrofit2.JfrTracing").newInstance();
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException
+                | LinkageError ignored) {
+            // Android、不带 JFR 的 JVM，或者构建时没有 JFR
+        }
+        return new Tracing();
+    }
+
+    /**
+     * 解析服务方法的注解
+     */
+    @Nullable
+    Object beginParseAnnotations(Method method) {
+        return null;
+    }
+
+    void endParseAnnotations(@Nullable Object event) {
+    }
+
+    /**
+     * 根据参数创建 OkHttp 的 Request
+     */
+    @Nullable
+    Object beginCreateRequest(Method method) {
+        return null;
+    }
+
+    void endCreateRequest(@Nullable Object event, @Nullable Request request) {
+    }
+
+    /**
+     * 从开始执行到得到响应（包括转换响应体），异步请求从 enqueue 开始计算
+     */
+    @Nullable
+    Object beginCall(Method method, boolean async) {
+        return null;
+    }
+
+    void endCall(@Nullable Object event, @Nullable okhttp3.Response rawResponse) {
+    }
+
+    /**
+     * 转换响应体
+     */
+    @Nullable
+    Object beginParseResponse(Method method) {
+        return null;
+    }
+
+    void endParseResponse(@Nullable Object event, okhttp3.Response rawResponse) {
+    }
+
+    /**
+     * CallAdapter.adapt()
+     */
+    @Nullable
+    Object beginAdapt(Method method) {
+        return null;
+    }
+
+    void endAdapt(@Nullable Object event) {
+    }
+}
@@ -27,6 +27,7 @@ import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentMap;
 import javax.annotation.Nullable;
 
 import okhttp3.ResponseBody;
@@ -191,6 +192,61 @@ final class Utils {
         throw new NoSuchElementException();
     }
 
+    /**
+     * Returns the canonical instance of {@code type} in {@code canonicalTypes}. Canonical types are
+     * Retrofit's own implementations with precomputed hash codes, and equal types in the same table
+     * are always the same instance so comparing them is a reference check. Classes and type
+     * variables are returned as-is.
+     * <p>
+     * 驻留池由调用方持有（每个 Retrofit 实例一个），这样它和它引用的类、类加载器会随实例一起回收
+     */
+    static Type canonicalize(Type type, ConcurrentMap<Type, Type> canonicalTypes) {
+        if (type instanceof Class) {
+            return type; // Class 本身就是唯一的
+        }
+        Type canonical = canonicalTypes.get(type);
+        if (canonical != null) {
+            return canonical;
+        }
+
+        Type created;
+        if (type instanceof ParameterizedType) {
+            ParameterizedType p = (ParameterizedType) type;
+            Type ownerType = p.getOwnerType();
+            Type rawType = p.getRawType();
+            if (rawType instanceof Class<?>
+                    && (ownerType == null) != (((Class<?>) rawType).getEnclosingClass() == null)) {
+                return type; // 局部类等没有 owner 的类型，无法用 ParameterizedTypeImpl 表示
+            }
+            Type[] args = p.getActualTypeArguments();
+            for (int i = 0; i < args.length; i++) {
+                args[i] = canonicalize(args[i], canonicalTypes);
+            }
+            created = new ParameterizedTypeImpl(
+                    ownerType != null ? canonicalize(ownerType, canonicalTypes) : null, rawType, args);
+        } else if (type instanceof GenericArrayType) {
+            created = new GenericArrayTypeImpl(canonicalize(
+                    ((GenericArrayType) type).getGenericComponentType(), canonicalTypes));
+        } else if (type instanceof WildcardType) {
+            WildcardType w = (WildcardType) type;
+            Type[] upperBounds = w.getUpperBounds();
+            Type[] lowerBounds = w.getLowerBounds();
+            if (upperBounds.length != 1 || lowerBounds.length > 1) {
+                return type; // Not expressible in the Java language.
+            }
+            upperBounds[0] = canonicalize(upperBounds[0], canonicalTypes);
+            if (lowerBounds.length == 1) {
+                lowerBounds[0] = canonicalize(lowerBounds[0], canonicalTypes);
+            }
+            created = new WildcardTypeImpl(upperBounds, lowerBounds);
+        } else {
+            return type; // TypeVariable 依赖于声明它的位置，不做处理
+        }
+
+        Type existing = canonicalTypes.putIfAbsent(created, created);
+        return existing != null ? existing : created;
+    }
+
     static String typeToString(Type type) {
         return type instanceof Class ? ((Class<?>) type).getName() : type.toString();
     }
@@ -222,15 +278,17 @@ final class Utils {
                 Class<?> original = (Class<?>) toResolve;
                 Type componentType = original.getComponentType();
                 Type newComponentType = resolve(context, contextRawType, componentType);
-                return componentType == newComponentType ? original : new GenericArrayTypeImpl(
-                        newComponentType);
+                return componentType == newComponentType
+                        ? original
+                        : new GenericArrayTypeImpl(newComponentType);
 
             } else if (toResolve instanceof GenericArrayType) {
                 GenericArrayType original = (GenericArrayType) toResolve;
                 Type componentType = original.getGenericComponentType();
                 Type newComponentType = resolve(context, contextRawType, componentType);
-                return componentType == newComponentType ? original : new GenericArrayTypeImpl(
-                        newComponentType);
+                return componentType == newComponentType
+                        ? original
+                        : new GenericArrayTypeImpl(newComponentType);
 
             } else if (toResolve instanceof ParameterizedType) {
                 ParameterizedType original = (ParameterizedType) toResolve;
@@ -367,6 +425,17 @@ final class Utils {
         return paramType;
     }
 
+    /**
+     * 获取参数下限，用于 {@code Continuation<? super T>} 这类逆变的类型参数
+     */
+    static Type getParameterLowerBound(int index, ParameterizedType type) {
+        Type lowerBound = type.getActualTypeArguments()[index];
+        if (lowerBound instanceof WildcardType) {
+            return ((WildcardType) lowerBound).getLowerBounds()[0];
+        }
+        return lowerBound;
+    }
+
     /**
      * 验证可解析类型
      *
@@ -413,10 +482,11 @@ final class Utils {
         return getParameterUpperBound(0, (ParameterizedType) returnType);
     }
 
-    private static final class ParameterizedTypeImpl implements ParameterizedType {
+    static final class ParameterizedTypeImpl implements ParameterizedType {
         private final Type ownerType;
         private final Type rawType;
         private final Type[] typeArguments;
+        private final int hashCode;
 
         ParameterizedTypeImpl(@Nullable Type ownerType, Type rawType, Type... typeArguments) {
             // Require an owner type if the raw type needs it.
@@ -433,6 +503,9 @@ final class Utils {
             this.ownerType = ownerType;
             this.rawType = rawType;
             this.typeArguments = typeArguments.clone();
+            this.hashCode = Arrays.hashCode(this.typeArguments)
+                    ^ rawType.hashCode()
+                    ^ (ownerType != null ? ownerType.hashCode() : 0);
         }
 
         @Override
@@ -452,14 +525,13 @@ final class Utils {
 
         @Override
         public boolean equals(Object other) {
-            return other instanceof ParameterizedType && Utils.equals(this, (ParameterizedType) other);
+            return other == this
+                    || other instanceof ParameterizedType && Utils.equals(this, (ParameterizedType) other);
         }
 
         @Override
         public int hashCode() {
-            return Arrays.hashCode(typeArguments)
-                    ^ rawType.hashCode()
-                    ^ (ownerType != null ? ownerType.hashCode() : 0);
+            return hashCode;
         }
 
         @Override
@@ -477,9 +549,11 @@ final class Utils {
 
     private static final class GenericArrayTypeImpl implements GenericArrayType {
         private final Type componentType;
+        private final int hashCode;
 
         GenericArrayTypeImpl(Type componentType) {
             this.componentType = componentType;
+            this.hashCode = componentType.hashCode();
         }
 
         @Override
@@ -489,13 +563,13 @@ final class Utils {
 
         @Override
         public boolean equals(Object o) {
-            return o instanceof GenericArrayType
-                    && Utils.equals(this, (GenericArrayType) o);
+            return o == this
+                    || o instanceof GenericArrayType && Utils.equals(this, (GenericArrayType) o);
         }
 
         @Override
         public int hashCode() {
-            return componentType.hashCode();
+            return hashCode;
         }
 
         @Override
@@ -512,6 +586,7 @@ final class Utils {
     private static final class WildcardTypeImpl implements WildcardType {
         private final Type upperBound;
         private final Type lowerBound;
+        private final int hashCode;
 
         WildcardTypeImpl(Type[] upperBounds, Type[] lowerBounds) {
             if (lowerBounds.length > 1) throw new IllegalArgumentException();
@@ -529,6 +604,9 @@ final class Utils {
                 this.lowerBound = null;
                 this.upperBound = upperBounds[0];
             }
+            // This equals Arrays.hashCode(getLowerBounds()) ^ Arrays.hashCode(getUpperBounds()).
+            this.hashCode = (lowerBound != null ? 31 + lowerBound.hashCode() : 1)
+                    ^ (31 + upperBound.hashCode());
         }
 
         @Override
@@ -543,13 +621,13 @@ final class Utils {
 
         @Override
         public boolean equals(Object other) {
-            return other instanceof WildcardType && Utils.equals(this, (WildcardType) other);
+            return other == this
+                    || other instanceof WildcardType && Utils.equals(this, (WildcardType) other);
         }
 
         @Override
         public int hashCode() {
-            // This equals Arrays.hashCode(getLowerBounds()) ^ Arrays.hashCode(getUpperBounds()).
-            return (lowerBound != null ? 31 + lowerBound.hashCode() : 1) ^ (31 + upperBound.hashCode());
+            return hashCode;
         }
 
         @Override
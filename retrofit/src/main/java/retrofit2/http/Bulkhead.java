@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.http;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Send the calls of a service interface or method through the isolated call factory registered
+ * under this name with {@link retrofit2.Retrofit.Builder#bulkhead(String, int)} or
+ * {@link retrofit2.Retrofit.Builder#bulkhead(String, okhttp3.Call.Factory)}. Calls to a slow or
+ * failing backend then queue up in their own dispatcher and connection pool without starving the
+ * calls of other services.
+ * <pre><code>
+ * &#64;Bulkhead("partner")
+ * interface PartnerService {
+ *   &#64;GET("/quotes")
+ *   Call&lt;List&lt;Quote&gt;&gt; quotes();
+ * }
+ * </code></pre>
+ * An annotation on a method takes precedence over one on its interface.
+ */
+@Documented
+@Target({TYPE, METHOD})
+@Retention(RUNTIME)
+public @interface Bulkhead {
+  String value();
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.http;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Compress the request body and send it with a matching {@code Content-Encoding} header.
+ * <pre><code>
+ * &#64;Compress
+ * &#64;POST("/telemetry")
+ * Call&lt;ResponseBody&gt; upload(@Body Events events);
+ * </code></pre>
+ * The body is compressed as it is written, without buffering the uncompressed or compressed
+ * bytes, so the request has no {@code Content-Length} and is sent with chunked transfer encoding.
+ * Bodies shorter than the {@linkplain retrofit2.Retrofit.Builder#compressionThreshold(long)
+ * compression threshold} are sent as they are.
+ * <p>
+ * The server must accept the chosen encoding; there is no negotiation.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Compress {
+  /** The content coding, either {@code "gzip"} or {@code "deflate"}. */
+  String value() default "gzip";
+}
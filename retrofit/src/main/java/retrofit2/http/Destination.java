@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.http;
+
+import java.io.File;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Write the response body directly to the {@link File} parameter instead of converting it. The
+ * method must declare {@code File} as its response type, which is the destination once the
+ * download completes.
+ * <pre><code>
+ * &#64;GET("/files/{name}")
+ * Call&lt;File&gt; download(@Path("name") String name, @Destination File file);
+ * </code></pre>
+ * <p>
+ * The body is transferred into a {@link java.nio.channels.FileChannel FileChannel} from the
+ * network buffer without being copied into an intermediate {@code byte[]}, so arbitrarily large
+ * bodies can be downloaded in constant memory.
+ * <p>
+ * When {@link #resume() resume} is true, the response's strong {@code ETag}, or its
+ * {@code Last-Modified} date, is saved next to the destination in a file with a
+ * {@code .validator} suffix while the body is written, and deleted once the download completes.
+ * A later resumed call for a partially written destination sends a {@code Range} header for the
+ * remainder along with that value as {@code If-Range}. A {@code 206 Partial Content} response is
+ * appended to the file; any other successful response, which is what the server sends when the
+ * file changed in the meantime, replaces its contents. Without a saved value the whole file is
+ * downloaded again, because the bytes already present cannot be checked.
+ */
+@Documented
+@Target(PARAMETER)
+@Retention(RUNTIME)
+public @interface Destination {
+  /** Continue a partial download already present in the destination file. */
+  boolean resume() default false;
+}
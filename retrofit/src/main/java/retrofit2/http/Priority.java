@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.http;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * The priority of calls waiting for a {@link retrofit2.ConcurrencyLimiter ConcurrencyLimiter}.
+ * When a slot frees up, the waiting call with the highest priority is started first. Calls without
+ * a priority have priority 0, and calls of equal priority start in the order they were made.
+ * <pre><code>
+ * &#64;Priority(10)
+ * &#64;GET("/users/{id}")
+ * Call&lt;User&gt; user(@Path("id") long id);
+ *
+ * &#64;Priority(-10)
+ * &#64;POST("/sync")
+ * Call&lt;Void&gt; sync(@Body Changes changes);
+ * </code></pre>
+ * On a parameter of type {@code int} or {@code Integer} the argument sets the priority of each
+ * call, overriding the priority of the method. A null argument keeps the method's priority.
+ * <pre><code>
+ * &#64;GET("/images/{id}")
+ * Call&lt;ResponseBody&gt; image(@Path("id") long id, @Priority int priority);
+ * </code></pre>
+ * To keep low-priority calls from waiting forever, a call which has waited longer than the
+ * {@linkplain retrofit2.ConcurrencyLimiter.Builder#starvationThreshold starvation threshold} is
+ * started before calls of higher priority.
+ */
+@Documented
+@Target({METHOD, PARAMETER})
+@Retention(RUNTIME)
+public @interface Priority {
+  /** The priority of the method's calls. Ignored on parameters. */
+  int value() default 0;
+}
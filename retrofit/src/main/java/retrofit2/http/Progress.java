@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.http;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import retrofit2.ProgressListener;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * A {@link ProgressListener} notified as the body of a {@link Destination @Destination} download
+ * is written to disk. A {@code null} value disables reporting.
+ * <pre><code>
+ * &#64;GET("/files/{name}")
+ * Call&lt;File&gt; download(@Path("name") String name, @Destination File file,
+ *     &#64;Progress ProgressListener listener);
+ * </code></pre>
+ */
+@Documented
+@Target(PARAMETER)
+@Retention(RUNTIME)
+public @interface Progress {
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.http;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Allow at most {@code permits} calls of this method per {@code period}. Calls over the rate are
+ * delayed until a permit is available: asynchronous calls are started later from a shared
+ * scheduler thread, while synchronous calls sleep on the calling thread.
+ * <pre><code>
+ * &#64;RateLimit(permits = 10, period = 1, unit = TimeUnit.SECONDS)
+ * &#64;GET("/search")
+ * Call&lt;ResponseBody&gt; search(@Query("q") String query);
+ * </code></pre>
+ * Up to {@code permits} calls may be made in a burst. When the server answers with
+ * {@code 429 Too Many Requests} further calls are held back for the time given by its
+ * {@code Retry-After} header, or for one {@code period} if it has none.
+ * <p>
+ * Rates can also be set for every call to a host with
+ * {@link retrofit2.Retrofit.Builder#rateLimit(String, int, long, TimeUnit)}.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface RateLimit {
+  int permits();
+
+  long period() default 1;
+
+  TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.http;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Limit the whole call, from sending the request to converting the response body, to the given
+ * duration. The call is canceled and fails with an
+ * {@link java.io.InterruptedIOException InterruptedIOException} when the time runs out.
+ * <pre><code>
+ * &#64;Timeout(value = 2, unit = TimeUnit.SECONDS)
+ * &#64;GET("/users/{id}")
+ * Call&lt;User&gt; user(@Path("id") long id);
+ * </code></pre>
+ * The timer starts when the request is created, which is normally when the call is executed or
+ * enqueued. If a {@linkplain retrofit2.Deadline#current() deadline is current} on the calling
+ * thread, whichever of the two ends first applies. The body of a
+ * {@link Streaming @Streaming} response is read after the call completes and is not covered.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Timeout {
+  long value();
+
+  TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
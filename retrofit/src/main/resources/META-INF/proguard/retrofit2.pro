@@ -15,5 +15,21 @@
 # Guarded by a NoClassDefFoundError try/catch and only used when on the classpath.
 -dontwarn kotlin.Unit
 
-# Top-level functions that can only be used by Kotlin.
--dontwarn retrofit2.-KotlinExtensions
+# Flight Recorder events, only loaded reflectively when jdk.jfr is available.
+-dontwarn jdk.jfr.**
+-dontwarn retrofit2.JfrTracing**
+
+# Tracing loads JfrTracing by name and instantiates it reflectively.
+-keep class retrofit2.JfrTracing {
+    <init>();
+}
+
+# JFR reads the event names, labels and fields reflectively, so keep them as they are.
+-keepattributes RuntimeVisibleAnnotations
+-keep class retrofit2.JfrTracing$* {
+    *;
+}
+
+# Top-level functions that can only be used by Kotlin. They also refer to kotlinx.coroutines.
+-dontwarn retrofit2.KotlinExtensions
+-dontwarn retrofit2.KotlinExtensions$*
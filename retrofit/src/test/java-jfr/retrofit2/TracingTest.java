@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.helpers.ToStringConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class TracingTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  interface Service {
+    @POST("/") Call<String> post(@Body String body);
+  }
+
+  @Test public void jfrIsUsedWhenAvailable() {
+    assertThat(Tracing.get()).isInstanceOf(JfrTracing.class);
+  }
+
+  @Test public void pipelineEmitsEvents() throws IOException {
+    server.enqueue(new MockResponse().setResponseCode(201).setBody("Hello"));
+
+    List<RecordedEvent> events = new ArrayList<>();
+    try (Recording recording = new Recording()) {
+      recording.enable("retrofit.ParseAnnotations");
+      recording.enable("retrofit.CreateRequest");
+      recording.enable("retrofit.Call");
+      recording.enable("retrofit.ParseResponse");
+      recording.enable("retrofit.Adapt");
+      recording.start();
+
+      Service service = new Retrofit.Builder()
+          .baseUrl(server.url("/"))
+          .addConverterFactory(new ToStringConverterFactory())
+          .build()
+          .create(Service.class);
+      assertThat(service.post("Hi").execute().body()).isEqualTo("Hello");
+
+      recording.stop();
+      Path file = Files.createTempFile("retrofit", ".jfr");
+      try {
+        recording.dump(file);
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+          if (event.getEventType().getName().startsWith("retrofit.")) {
+            events.add(event);
+          }
+        }
+      } finally {
+        Files.delete(file);
+      }
+    }
+
+    assertThat(names(events)).contains("retrofit.ParseAnnotations", "retrofit.CreateRequest",
+        "retrofit.Call", "retrofit.ParseResponse", "retrofit.Adapt");
+    for (RecordedEvent event : events) {
+      assertThat(event.getString("service")).isEqualTo(Service.class.getName());
+      assertThat(event.getString("method")).isEqualTo("post");
+      String name = event.getEventType().getName();
+      if (name.equals("retrofit.CreateRequest")) {
+        assertThat(event.getString("httpMethod")).isEqualTo("POST");
+        assertThat(event.getLong("requestBodySize")).isEqualTo(2L);
+      } else if (name.equals("retrofit.Call")) {
+        assertThat(event.getBoolean("async")).isFalse();
+        assertThat(event.getInt("statusCode")).isEqualTo(201);
+        assertThat(event.getLong("responseBodySize")).isEqualTo(5L);
+      }
+    }
+  }
+
+  private static List<String> names(List<RecordedEvent> events) {
+    List<String> names = new ArrayList<>();
+    for (RecordedEvent event : events) {
+      names.add(event.getEventType().getName());
+    }
+    return names;
+  }
+}
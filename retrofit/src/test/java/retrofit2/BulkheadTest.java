@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.helpers.ToStringConverterFactory;
+import retrofit2.http.Bulkhead;
+import retrofit2.http.GET;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class BulkheadTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  @Bulkhead("partner")
+  interface PartnerService {
+    @GET("/") Call<String> quotes();
+    @Bulkhead("reports") @GET("/") Call<String> report();
+  }
+
+  interface MainService {
+    @GET("/") Call<String> home();
+  }
+
+  interface UnknownService {
+    @Bulkhead("unknown") @GET("/") Call<String> get();
+  }
+
+  static final class CountingCallFactory implements okhttp3.Call.Factory {
+    final AtomicInteger count = new AtomicInteger();
+    final okhttp3.Call.Factory delegate = new OkHttpClient();
+
+    @Override public okhttp3.Call newCall(Request request) {
+      count.incrementAndGet();
+      return delegate.newCall(request);
+    }
+  }
+
+  private Retrofit.Builder builder() {
+    return new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory());
+  }
+
+  @Test public void annotatedCallsUseTheirBulkhead() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    CountingCallFactory main = new CountingCallFactory();
+    CountingCallFactory partner = new CountingCallFactory();
+    CountingCallFactory reports = new CountingCallFactory();
+    Retrofit retrofit = builder()
+        .callFactory(main)
+        .bulkhead("partner", partner)
+        .bulkhead("reports", reports)
+        .build();
+
+    retrofit.create(PartnerService.class).quotes().execute();
+    retrofit.create(PartnerService.class).report().execute();
+    retrofit.create(MainService.class).home().execute();
+    assertThat(partner.count.get()).isEqualTo(1);
+    assertThat(reports.count.get()).isEqualTo(1);
+    assertThat(main.count.get()).isEqualTo(1);
+  }
+
+  @Test public void slowBulkheadDoesNotDelayOtherServices()
+      throws IOException, InterruptedException {
+    server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(1, SECONDS));
+    server.enqueue(new MockResponse().setBody("fast"));
+
+    Retrofit retrofit = builder()
+        .client(new OkHttpClient())
+        .bulkhead("partner", 1)
+        .bulkhead("reports", 1)
+        .build();
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    retrofit.create(PartnerService.class).quotes().enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        throw new AssertionError(t);
+      }
+    });
+    server.takeRequest();
+
+    long start = System.nanoTime();
+    assertThat(retrofit.create(MainService.class).home().execute().body()).isEqualTo("fast");
+    assertThat(System.nanoTime() - start).isLessThan(MILLISECONDS.toNanos(500));
+    assertTrue(latch.await(10, SECONDS));
+  }
+
+  @Test public void unknownBulkheadThrows() {
+    try {
+      builder().build().create(UnknownService.class).get();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage(
+          "No bulkhead named \"unknown\". Register it with Retrofit.Builder.bulkhead().\n"
+              + "    for method UnknownService.get");
+    }
+  }
+
+  @Test public void sizedBulkheadRequiresAnOkHttpClient() {
+    try {
+      builder().callFactory(new CountingCallFactory()).bulkhead("partner", 2).build();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Bulkheads with a size require an OkHttpClient as the call factory.");
+    }
+  }
+}
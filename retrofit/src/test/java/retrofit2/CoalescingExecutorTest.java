@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class CoalescingExecutorTest {
+  /** Queues tasks until they are run explicitly, like a Handler posting to a Looper. */
+  static final class QueueExecutor implements Executor {
+    final Deque<Runnable> tasks = new ArrayDeque<>();
+    int executeCount;
+
+    @Override public void execute(Runnable command) {
+      executeCount++;
+      tasks.add(command);
+    }
+
+    void runNext() {
+      tasks.removeFirst().run();
+    }
+  }
+
+  private final QueueExecutor delegate = new QueueExecutor();
+  private final CoalescingExecutor executor = new CoalescingExecutor(delegate);
+  private final List<Integer> ran = new ArrayList<>();
+
+  @Test public void burstIsDeliveredInOneTask() {
+    for (int i = 0; i < 50; i++) {
+      executor.execute(record(i));
+    }
+    assertThat(delegate.executeCount).isEqualTo(1);
+    assertThat(ran).isEmpty();
+
+    delegate.runNext();
+    assertThat(ran).hasSize(50);
+    for (int i = 0; i < 50; i++) {
+      assertThat(ran.get(i)).isEqualTo(i);
+    }
+    assertThat(delegate.tasks).isEmpty();
+  }
+
+  @Test public void commandsAfterDrainScheduleAgain() {
+    executor.execute(record(0));
+    delegate.runNext();
+    executor.execute(record(1));
+    assertThat(delegate.executeCount).isEqualTo(2);
+    delegate.runNext();
+    assertThat(ran).containsExactly(0, 1);
+  }
+
+  @Test public void largeBurstIsSplitIntoBatches() {
+    int count = CoalescingExecutor.MAX_BATCH_SIZE + 1;
+    for (int i = 0; i < count; i++) {
+      executor.execute(record(i));
+    }
+
+    delegate.runNext();
+    assertThat(ran).hasSize(CoalescingExecutor.MAX_BATCH_SIZE);
+    assertThat(delegate.tasks).hasSize(1);
+
+    delegate.runNext();
+    assertThat(ran).hasSize(count);
+    assertThat(delegate.executeCount).isEqualTo(2);
+  }
+
+  @Test public void throwingCommandDoesNotStrandOthers() {
+    final RuntimeException failure = new RuntimeException("Broken!");
+    executor.execute(new Runnable() {
+      @Override public void run() {
+        throw failure;
+      }
+    });
+    executor.execute(record(1));
+
+    try {
+      delegate.runNext();
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e).isSameAs(failure);
+    }
+    assertThat(delegate.tasks).hasSize(1);
+    delegate.runNext();
+    assertThat(ran).containsExactly(1);
+  }
+
+  @Test public void builderWrapsCallbackExecutor() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("http://example.com/")
+        .callbackExecutor(delegate)
+        .coalesceCallbacks(true)
+        .build();
+    assertThat(retrofit.callbackExecutor()).isInstanceOf(CoalescingExecutor.class);
+    assertThat(((CoalescingExecutor) retrofit.callbackExecutor()).delegate).isSameAs(delegate);
+
+    // A new builder starts from the unwrapped executor rather than wrapping it twice.
+    Retrofit copy = retrofit.newBuilder().build();
+    assertThat(((CoalescingExecutor) copy.callbackExecutor()).delegate).isSameAs(delegate);
+
+    Retrofit plain = retrofit.newBuilder().coalesceCallbacks(false).build();
+    assertThat(plain.callbackExecutor()).isSameAs(delegate);
+  }
+
+  private Runnable record(final int value) {
+    return new Runnable() {
+      @Override public void run() {
+        ran.add(value);
+      }
+    };
+  }
+}
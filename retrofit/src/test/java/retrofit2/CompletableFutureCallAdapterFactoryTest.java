@@ -20,6 +20,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.Before;
 import org.junit.Rule;
@@ -28,6 +29,9 @@ import retrofit2.helpers.ToStringConverterFactory;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 public final class CompletableFutureCallAdapterFactoryTest {
   private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
@@ -94,4 +98,31 @@ public final class CompletableFutureCallAdapterFactoryTest {
           "Response must be parameterized as Response<Foo> or Response<? extends Foo>");
     }
   }
+
+  @SuppressWarnings("unchecked") // Mock generics.
+  @Test public void cancelCancelsCall() {
+    Type returnType = new TypeToken<CompletableFuture<String>>() {}.getType();
+    CallAdapter<String, CompletableFuture<String>> adapter =
+        (CallAdapter<String, CompletableFuture<String>>) factory.get(returnType, NO_ANNOTATIONS,
+            retrofit);
+    Call<String> call = mock(Call.class);
+
+    CompletableFuture<String> future = adapter.adapt(call);
+    verify(call, never()).cancel();
+    future.cancel(false);
+    verify(call).cancel();
+  }
+
+  @SuppressWarnings("unchecked") // Mock generics.
+  @Test public void externalCompletionCancelsCall() {
+    Type returnType = new TypeToken<CompletableFuture<Response<String>>>() {}.getType();
+    CallAdapter<String, CompletableFuture<Response<String>>> adapter =
+        (CallAdapter<String, CompletableFuture<Response<String>>>) factory.get(returnType,
+            NO_ANNOTATIONS, retrofit);
+    Call<String> call = mock(Call.class);
+
+    // What CompletableFuture.orTimeout does when the timeout elapses.
+    adapter.adapt(call).completeExceptionally(new TimeoutException());
+    verify(call).cancel();
+  }
 }
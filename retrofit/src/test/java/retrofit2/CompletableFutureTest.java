@@ -18,6 +18,10 @@ package retrofit2;
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.Before;
@@ -111,4 +115,64 @@ public final class CompletableFutureTest {
       assertThat(e.getCause()).isInstanceOf(IOException.class);
     }
   }
+
+  @Test public void completionExecutor() throws Exception {
+    final AtomicInteger executions = new AtomicInteger();
+    Executor executor = new Executor() {
+      @Override public void execute(Runnable command) {
+        executions.getAndIncrement();
+        command.run();
+      }
+    };
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .addCallAdapterFactory(CompletableFutureCallAdapterFactory.create(executor))
+        .build();
+    Service service = retrofit.create(Service.class);
+
+    server.enqueue(new MockResponse().setBody("Hi"));
+    assertThat(service.body().get()).isEqualTo("Hi");
+    assertThat(executions.get()).isEqualTo(1);
+
+    server.enqueue(new MockResponse().setSocketPolicy(DISCONNECT_AFTER_REQUEST));
+    try {
+      service.response().get();
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+    assertThat(executions.get()).isEqualTo(2);
+  }
+
+  @Test public void rejectedCompletionStillCompletes() throws Exception {
+    Executor executor = new Executor() {
+      @Override public void execute(Runnable command) {
+        throw new RejectedExecutionException("Shut down");
+      }
+    };
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .addCallAdapterFactory(CompletableFutureCallAdapterFactory.create(executor))
+        .build();
+    Service service = retrofit.create(Service.class);
+
+    server.enqueue(new MockResponse().setBody("Hi"));
+    try {
+      service.body().get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class)
+          .hasMessage("Shut down");
+    }
+
+    server.enqueue(new MockResponse().setSocketPolicy(DISCONNECT_AFTER_REQUEST));
+    try {
+      service.response().get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(IOException.class);
+    }
+  }
 }
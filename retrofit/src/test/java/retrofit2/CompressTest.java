@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.util.zip.Inflater;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.helpers.ToStringConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.Compress;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class CompressTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  interface Service {
+    @Compress @POST("/") Call<ResponseBody> gzip(@Body String body);
+    @Compress("deflate") @POST("/") Call<ResponseBody> deflate(@Body String body);
+    @POST("/") Call<ResponseBody> plain(@Body String body);
+  }
+
+  private static final String PAYLOAD = repeat("{\"event\":\"tap\",\"x\":12,\"y\":34}", 100);
+
+  private Service service(long compressionThreshold) {
+    return new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .compressionThreshold(compressionThreshold)
+        .build()
+        .create(Service.class);
+  }
+
+  @Test public void gzip() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse());
+
+    service(0).gzip(PAYLOAD).execute();
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(request.getHeader("Content-Type")).isEqualTo("text/plain; charset=utf-8");
+    assertThat(request.getBodySize()).isLessThan(PAYLOAD.length());
+    Buffer decompressed = new Buffer();
+    decompressed.writeAll(new GzipSource(request.getBody()));
+    assertThat(decompressed.readUtf8()).isEqualTo(PAYLOAD);
+  }
+
+  @Test public void deflate() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse());
+
+    service(0).deflate(PAYLOAD).execute();
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Content-Encoding")).isEqualTo("deflate");
+    String decompressed =
+        Okio.buffer(new InflaterSource(request.getBody(), new Inflater())).readUtf8();
+    assertThat(decompressed).isEqualTo(PAYLOAD);
+  }
+
+  @Test public void bodyBelowThresholdIsNotCompressed() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse());
+
+    service(1024).gzip("Hi").execute();
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Content-Encoding")).isNull();
+    assertThat(request.getHeader("Content-Length")).isEqualTo("2");
+    assertThat(request.getBody().readUtf8()).isEqualTo("Hi");
+  }
+
+  @Test public void uncompressedMethodIsUnchanged() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse());
+
+    service(0).plain(PAYLOAD).execute();
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Content-Encoding")).isNull();
+    assertThat(request.getBody().readUtf8()).isEqualTo(PAYLOAD);
+  }
+
+  interface InvalidService {
+    @Compress("zstd") @POST("/") Call<ResponseBody> unsupported(@Body String body);
+    @Compress @GET("/") Call<ResponseBody> noBody();
+  }
+
+  @Test public void unsupportedEncodingThrows() {
+    InvalidService service = invalidService();
+    try {
+      service.unsupported("Hi");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage(
+          "Unsupported @Compress encoding: zstd. Supported encodings are gzip and deflate.\n"
+              + "    for method InvalidService.unsupported");
+    }
+  }
+
+  @Test public void compressWithoutBodyThrows() {
+    InvalidService service = invalidService();
+    try {
+      service.noBody();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage(
+          "@Compress can only be used with HTTP methods that have a body.\n"
+              + "    for method InvalidService.noBody");
+    }
+  }
+
+  @Test public void negativeThresholdThrows() {
+    try {
+      new Retrofit.Builder().compressionThreshold(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("bytes < 0: -1");
+    }
+  }
+
+  private InvalidService invalidService() {
+    return new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build()
+        .create(InvalidService.class);
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      result.append(s);
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.helpers.ToStringConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Priority;
+import retrofit2.http.Streaming;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class ConcurrencyLimiterTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  interface Service {
+    @GET("/") Call<String> get();
+    @Priority(10) @GET("/urgent") Call<String> urgent();
+    @GET("/background") Call<String> background(@Priority Integer priority);
+    @Streaming @GET("/") Call<ResponseBody> stream();
+  }
+
+  interface InvalidPriorityService {
+    @GET("/") Call<String> get(@Priority String priority);
+  }
+
+  private Service service(ConcurrencyLimiter limiter) {
+    return new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .concurrencyLimiter(limiter)
+        .build()
+        .create(Service.class);
+  }
+
+  private static ConcurrencyLimiter singleCall(int maxQueueSize) {
+    return new ConcurrencyLimiter.Builder()
+        .initialLimit(1)
+        .limitRange(1, 1)
+        .maxQueueSize(maxQueueSize)
+        .build();
+  }
+
+  @Test public void callsOverTheLimitWaitForACompletedCall() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("first").setHeadersDelay(500, MILLISECONDS));
+    server.enqueue(new MockResponse().setBody("second"));
+
+    ConcurrencyLimiter limiter = singleCall(10);
+    Service service = service(limiter);
+    String host = server.getHostName();
+
+    final CountDownLatch latch = new CountDownLatch(2);
+    Callback<String> callback = new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        throw new AssertionError(t);
+      }
+    };
+    service.get().enqueue(callback);
+    service.get().enqueue(callback);
+    assertThat(limiter.inFlight(host)).isEqualTo(1);
+    assertThat(limiter.queued(host)).isEqualTo(1);
+
+    assertTrue(latch.await(10, SECONDS));
+    assertThat(server.getRequestCount()).isEqualTo(2);
+    assertThat(limiter.queued(host)).isEqualTo(0);
+    assertThat(limiter.partitions()).containsExactly(host);
+  }
+
+  @Test public void callsOverAFullQueueAreRejected() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse().setBody("first").setHeadersDelay(500, MILLISECONDS));
+
+    ConcurrencyLimiter limiter = singleCall(0);
+    Service service = service(limiter);
+    String host = server.getHostName();
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    service.get().enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        throw new AssertionError(t);
+      }
+    });
+    try {
+      service.get().execute();
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).startsWith("Concurrency limit exceeded for " + host);
+    }
+    assertThat(limiter.rejected(host)).isEqualTo(1L);
+
+    assertTrue(latch.await(10, SECONDS));
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test public void rejectionIsDeliveredOnABackgroundThread() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("first").setHeadersDelay(500, MILLISECONDS));
+
+    ConcurrencyLimiter limiter = singleCall(0);
+    Service service = service(limiter);
+
+    final CountDownLatch latch = new CountDownLatch(2);
+    service.get().enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        throw new AssertionError(t);
+      }
+    });
+    final AtomicReference<Thread> threadRef = new AtomicReference<>();
+    service.get().enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        throw new AssertionError();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        threadRef.set(Thread.currentThread());
+        latch.countDown();
+      }
+    });
+
+    assertTrue(latch.await(10, SECONDS));
+    assertThat(threadRef.get()).isNotSameAs(Thread.currentThread());
+    assertThat(limiter.rejected(server.getHostName())).isEqualTo(1L);
+  }
+
+  @Test public void streamingBodyHoldsItsSlotUntilClosed() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    ConcurrencyLimiter limiter = singleCall(10);
+    Service service = service(limiter);
+    String host = server.getHostName();
+
+    ResponseBody body = service.stream().execute().body();
+    assertThat(limiter.inFlight(host)).isEqualTo(1);
+
+    assertThat(body.string()).isEqualTo("Hi");
+    assertThat(limiter.inFlight(host)).isEqualTo(0);
+    body.close();
+    assertThat(limiter.inFlight(host)).isEqualTo(0);
+  }
+
+  @Test public void canceledQueuedCallIsNeverSent() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("first").setHeadersDelay(500, MILLISECONDS));
+
+    ConcurrencyLimiter limiter = singleCall(10);
+    Service service = service(limiter);
+
+    final CountDownLatch latch = new CountDownLatch(2);
+    service.get().enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        throw new AssertionError(t);
+      }
+    });
+    final AtomicReference<Throwable> failureRef = new AtomicReference<>();
+    Call<String> queued = service.get();
+    queued.enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        throw new AssertionError();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        failureRef.set(t);
+        latch.countDown();
+      }
+    });
+    queued.cancel();
+
+    assertTrue(latch.await(10, SECONDS));
+    assertThat(failureRef.get()).isInstanceOf(IOException.class).hasMessage("Canceled");
+    assertThat(limiter.queued(server.getHostName())).isEqualTo(0);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test public void aimdShrinksTheLimitWhenTheServerIsOverloaded() throws IOException {
+    for (int i = 0; i < 5; i++) {
+      server.enqueue(new MockResponse().setResponseCode(503));
+    }
+
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+        .algorithm(ConcurrencyLimiter.Algorithm.AIMD)
+        .initialLimit(10)
+        .limitRange(1, 10)
+        .build();
+    Service service = service(limiter);
+    for (int i = 0; i < 5; i++) {
+      assertThat(service.get().execute().code()).isEqualTo(503);
+    }
+    assertThat(limiter.limit(server.getHostName())).isEqualTo(5);
+    assertThat(limiter.inFlight(server.getHostName())).isEqualTo(0);
+  }
+
+  @Test public void servicePartitionIsKeyedOnTheInterface() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+        .partition(ConcurrencyLimiter.Partition.SERVICE)
+        .build();
+    assertThat(service(limiter).get().execute().body()).isEqualTo("Hi");
+    assertThat(limiter.partitions()).containsExactly(Service.class.getName());
+    assertThat(limiter.limit("unknown")).isEqualTo(20);
+  }
+
+  @Test public void higherPriorityCallsStartFirst() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("first").setHeadersDelay(500, MILLISECONDS));
+    server.enqueue(new MockResponse().setBody("Hi"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+        .partition(ConcurrencyLimiter.Partition.GLOBAL)
+        .initialLimit(1)
+        .limitRange(1, 1)
+        .build();
+    Service service = service(limiter);
+
+    CountDownLatch latch = enqueueInOrder(service.get(), service.background(-1), service.urgent());
+    assertThat(limiter.queued("*")).isEqualTo(2);
+    assertTrue(latch.await(10, SECONDS));
+
+    assertThat(server.takeRequest().getPath()).isEqualTo("/");
+    assertThat(server.takeRequest().getPath()).isEqualTo("/urgent");
+    assertThat(server.takeRequest().getPath()).isEqualTo("/background");
+  }
+
+  @Test public void starvingCallsStartFirst() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("first").setHeadersDelay(500, MILLISECONDS));
+    server.enqueue(new MockResponse().setBody("Hi"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+        .partition(ConcurrencyLimiter.Partition.GLOBAL)
+        .initialLimit(1)
+        .limitRange(1, 1)
+        .starvationThreshold(0, SECONDS)
+        .build();
+    Service service = service(limiter);
+
+    CountDownLatch latch = enqueueInOrder(service.get(), service.background(null), service.urgent());
+    assertTrue(latch.await(10, SECONDS));
+
+    assertThat(server.takeRequest().getPath()).isEqualTo("/");
+    assertThat(server.takeRequest().getPath()).isEqualTo("/background");
+    assertThat(server.takeRequest().getPath()).isEqualTo("/urgent");
+  }
+
+  @SafeVarargs
+  private static CountDownLatch enqueueInOrder(Call<String>... calls) {
+    final CountDownLatch latch = new CountDownLatch(calls.length);
+    for (Call<String> call : calls) {
+      call.enqueue(new Callback<String>() {
+        @Override public void onResponse(Call<String> call, Response<String> response) {
+          latch.countDown();
+        }
+
+        @Override public void onFailure(Call<String> call, Throwable t) {
+          throw new AssertionError(t);
+        }
+      });
+    }
+    return latch;
+  }
+
+  @Test public void priorityParameterMustBeAnInteger() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    try {
+      retrofit.create(InvalidPriorityService.class).get("high");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage(
+          "@Priority parameter type must be int or Integer. (parameter #1)\n"
+              + "    for method InvalidPriorityService.get");
+    }
+  }
+
+  @Test public void initialLimitOutsideOfRangeThrows() {
+    try {
+      new ConcurrencyLimiter.Builder().limitRange(1, 10).build();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("initialLimit 20 is outside of the limit range 1..10");
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.helpers.ToStringConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public final class ConversionExecutorTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  interface Service {
+    @POST("/") Call<String> post(@Body String body);
+    @GET("/") Call<Iterator<String>> lines();
+  }
+
+  /** Reads newline-delimited strings only as the returned iterator is advanced. */
+  static final class LinesConverterFactory extends Converter.Factory {
+    final List<String> threads = new CopyOnWriteArrayList<>();
+
+    @Override public Converter<ResponseBody, ?> responseBodyConverter(Type type,
+        Annotation[] annotations, Retrofit retrofit) {
+      return new Converter<ResponseBody, Iterator<String>>() {
+        @Override public Iterator<String> convert(final ResponseBody value) {
+          threads.add(Thread.currentThread().getName());
+          return new Iterator<String>() {
+            @Override public boolean hasNext() {
+              try {
+                return !value.source().exhausted();
+              } catch (IOException e) {
+                throw new AssertionError(e);
+              }
+            }
+
+            @Override public String next() {
+              try {
+                return value.source().readUtf8LineStrict();
+              } catch (IOException e) {
+                throw new AssertionError(e);
+              }
+            }
+
+            @Override public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /** Records the thread on which each conversion runs. */
+  static final class ThreadRecordingConverterFactory extends Converter.Factory {
+    final List<String> threads = new CopyOnWriteArrayList<>();
+    private final ToStringConverterFactory delegate = new ToStringConverterFactory();
+
+    @Override public Converter<ResponseBody, ?> responseBodyConverter(Type type,
+        Annotation[] annotations, Retrofit retrofit) {
+      final Converter<ResponseBody, ?> converter =
+          delegate.responseBodyConverter(type, annotations, retrofit);
+      return new Converter<ResponseBody, Object>() {
+        @Override public Object convert(ResponseBody value) throws IOException {
+          threads.add(Thread.currentThread().getName());
+          return converter.convert(value);
+        }
+      };
+    }
+
+    @Override public Converter<?, RequestBody> requestBodyConverter(Type type,
+        Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+      @SuppressWarnings("unchecked") // Only String bodies are used.
+      final Converter<Object, RequestBody> converter = (Converter<Object, RequestBody>)
+          delegate.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+      return new Converter<Object, RequestBody>() {
+        @Override public RequestBody convert(Object value) throws IOException {
+          threads.add(Thread.currentThread().getName());
+          return converter.convert(value);
+        }
+      };
+    }
+  }
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override public Thread newThread(Runnable runnable) {
+      return new Thread(runnable, "conversion");
+    }
+  });
+
+  @After public void tearDown() {
+    executor.shutdown();
+  }
+
+  private Service service(Converter.Factory converterFactory, Executor executor) {
+    return new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(converterFactory)
+        .conversionExecutor(executor)
+        .build()
+        .create(Service.class);
+  }
+
+  @Test public void asyncConversionRunsOnTheExecutor() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hello"));
+
+    ThreadRecordingConverterFactory converterFactory = new ThreadRecordingConverterFactory();
+    final AtomicReference<Response<String>> responseRef = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    service(converterFactory, executor).post("Hi").enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        responseRef.set(response);
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        throw new AssertionError(t);
+      }
+    });
+    assertTrue(latch.await(10, SECONDS));
+
+    assertThat(responseRef.get().body()).isEqualTo("Hello");
+    assertThat(converterFactory.threads).containsExactly("conversion", "conversion");
+  }
+
+  @Test public void iteratorResponseIsStreamedOnTheIoThread() throws InterruptedException {
+    server.enqueue(new MockResponse()
+        .setChunkedBody("one\ntwo\n", 4)
+        .throttleBody(16, 1, SECONDS));
+
+    LinesConverterFactory converterFactory = new LinesConverterFactory();
+    final AtomicReference<Iterator<String>> linesRef = new AtomicReference<>();
+    final AtomicReference<Long> elapsedRef = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    final long start = System.nanoTime();
+    service(converterFactory, executor).lines().enqueue(new Callback<Iterator<String>>() {
+      @Override public void onResponse(Call<Iterator<String>> call,
+          Response<Iterator<String>> response) {
+        elapsedRef.set(System.nanoTime() - start);
+        linesRef.set(response.body());
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<Iterator<String>> call, Throwable t) {
+        throw new AssertionError(t);
+      }
+    });
+    assertTrue(latch.await(10, SECONDS));
+
+    // Buffering would have waited for the throttled remainder of the body.
+    assertThat(elapsedRef.get()).isLessThan(MILLISECONDS.toNanos(900));
+    assertThat(converterFactory.threads).doesNotContain("conversion");
+    Iterator<String> lines = linesRef.get();
+    assertThat(lines.next()).isEqualTo("one");
+    assertThat(lines.next()).isEqualTo("two");
+    assertThat(lines.hasNext()).isFalse();
+  }
+
+  @Test public void syncConversionRunsOnTheCallingThread() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hello"));
+
+    ThreadRecordingConverterFactory converterFactory = new ThreadRecordingConverterFactory();
+    assertThat(service(converterFactory, executor).post("Hi").execute().body()).isEqualTo("Hello");
+
+    String thread = Thread.currentThread().getName();
+    assertThat(converterFactory.threads).containsExactly(thread, thread);
+  }
+
+  @Test public void rejectedCallFails() throws InterruptedException {
+    Executor rejecting = new Executor() {
+      @Override public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+
+    final AtomicReference<Throwable> failureRef = new AtomicReference<>();
+    service(new ToStringConverterFactory(), rejecting).post("Hi").enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        throw new AssertionError();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        failureRef.set(t);
+      }
+    });
+    assertThat(failureRef.get()).isInstanceOf(IOException.class)
+        .hasMessage("Conversion executor rejected the call");
+    assertThat(server.getRequestCount()).isEqualTo(0);
+  }
+}
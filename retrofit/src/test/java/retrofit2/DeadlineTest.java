@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.helpers.ToStringConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Timeout;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class DeadlineTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  interface Service {
+    @Timeout(200) @GET("/") Call<String> fast();
+    @Timeout(value = 5, unit = TimeUnit.SECONDS) @GET("/") Call<String> slow();
+    @GET("/") Call<String> unbounded();
+  }
+
+  interface InvalidService {
+    @Timeout(0) @GET("/") Call<String> zero();
+  }
+
+  private Service service(Executor callbackExecutor) {
+    return new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .callbackExecutor(callbackExecutor)
+        .build()
+        .create(Service.class);
+  }
+
+  private Service service() {
+    return new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build()
+        .create(Service.class);
+  }
+
+  @Test public void timeoutCancelsSlowCall() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi").setBodyDelay(2, SECONDS));
+
+    try {
+      service().fast().execute();
+      fail();
+    } catch (InterruptedIOException e) {
+      assertThat(e).hasMessage("Deadline exceeded");
+    }
+  }
+
+  @Test public void timeoutCancelsSlowAsyncCall() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hi").setBodyDelay(2, SECONDS));
+
+    final AtomicReference<Throwable> failureRef = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    service().fast().enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        throw new AssertionError();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        failureRef.set(t);
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(10, SECONDS));
+    assertThat(failureRef.get()).isInstanceOf(InterruptedIOException.class)
+        .hasMessage("Deadline exceeded");
+  }
+
+  @Test public void callWithinTimeoutSucceeds() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    Response<String> response = service().slow().execute();
+    assertThat(response.body()).isEqualTo("Hi");
+    assertThat(response.raw().request().tag(Deadline.class)).isNotNull();
+  }
+
+  @Test public void callWithoutDeadlineHasNoTag() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    Response<String> response = service().unbounded().execute();
+    assertThat(response.raw().request().tag(Deadline.class)).isNull();
+  }
+
+  @Test public void expiredDeadlineFailsWithoutSendingRequest() throws IOException {
+    Deadline previous = Deadline.after(0, MILLISECONDS).attach();
+    try {
+      service().unbounded().execute();
+      fail();
+    } catch (InterruptedIOException e) {
+      assertThat(e).hasMessage("Deadline exceeded before the call was started");
+    } finally {
+      Deadline.detach(previous);
+    }
+    assertThat(server.getRequestCount()).isEqualTo(0);
+    assertThat(Deadline.current()).isNull();
+  }
+
+  @Test public void earlierCurrentDeadlineWins() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    Deadline deadline = Deadline.after(1, SECONDS);
+    Deadline previous = deadline.attach();
+    try {
+      Response<String> response = service().slow().execute();
+      assertThat(response.raw().request().tag(Deadline.class)).isSameAs(deadline);
+    } finally {
+      Deadline.detach(previous);
+    }
+  }
+
+  @Test public void deadlinePropagatesToCallsMadeFromCallbacks() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    final Service service = service(new Executor() {
+      @Override public void execute(Runnable command) {
+        new Thread(command).start();
+      }
+    });
+    final AtomicReference<Deadline> outerRef = new AtomicReference<>();
+    final AtomicReference<Deadline> innerRef = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    service.slow().enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        outerRef.set(response.raw().request().tag(Deadline.class));
+        try {
+          Response<String> nested = service.unbounded().execute();
+          innerRef.set(nested.raw().request().tag(Deadline.class));
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        } finally {
+          latch.countDown();
+        }
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(10, SECONDS));
+    assertThat(outerRef.get()).isNotNull();
+    assertThat(innerRef.get()).isSameAs(outerRef.get());
+  }
+
+  @Test public void nonPositiveTimeoutThrows() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    try {
+      retrofit.create(InvalidService.class).zero();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage(
+          "@Timeout value must be greater than zero but was 0.\n"
+              + "    for method InvalidService.zero");
+    }
+  }
+
+  @Test public void negativeDurationThrows() {
+    try {
+      Deadline.after(-1, SECONDS);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("duration < 0: -1");
+    }
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.List;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import retrofit2.http.Destination;
+import retrofit2.http.GET;
+import retrofit2.http.Progress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class DownloadTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  interface Service {
+    @GET("/") Call<File> download(@Destination File file);
+    @GET("/") Call<File> resume(@Destination(resume = true) File file);
+    @GET("/") Call<File> progress(@Destination File file, @Progress ProgressListener listener);
+  }
+
+  private Service service;
+
+  @Before public void setUp() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .build();
+    service = retrofit.create(Service.class);
+  }
+
+  @Test public void bodyIsWrittenToDestination() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hello"));
+
+    File file = temporaryFolder.newFile();
+    Response<File> response = service.download(file).execute();
+    assertThat(response.body()).isSameAs(file);
+    assertThat(read(file)).isEqualTo("Hello");
+    assertThat(server.takeRequest().getHeader("Range")).isNull();
+  }
+
+  @Test public void existingContentIsReplaced() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    File file = temporaryFolder.newFile();
+    write(file, "Previous contents");
+    service.download(file).execute();
+    assertThat(read(file)).isEqualTo("Hi");
+  }
+
+  @Test public void resumeRequestsRemainingRange() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse()
+        .setResponseCode(206)
+        .addHeader("ETag", "\"v1\"")
+        .addHeader("Content-Range", "bytes 3-4/5")
+        .setBody("lo"));
+
+    File file = temporaryFolder.newFile();
+    write(file, "Hel");
+    write(DownloadTarget.validatorFile(file), "\"v1\"");
+    Response<File> response = service.resume(file).execute();
+    assertThat(response.code()).isEqualTo(206);
+    assertThat(read(file)).isEqualTo("Hello");
+    assertThat(DownloadTarget.validatorFile(file)).doesNotExist();
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Range")).isEqualTo("bytes=3-");
+    assertThat(request.getHeader("If-Range")).isEqualTo("\"v1\"");
+  }
+
+  @Test public void resumeWithFullResponseReplaces() throws IOException {
+    server.enqueue(new MockResponse().addHeader("ETag", "\"v2\"").setBody("Hello"));
+
+    File file = temporaryFolder.newFile();
+    write(file, "Hel");
+    write(DownloadTarget.validatorFile(file), "\"v1\"");
+    service.resume(file).execute();
+    assertThat(read(file)).isEqualTo("Hello");
+  }
+
+  @Test public void resumeWithoutValidatorDownloadsEverything()
+      throws IOException, InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hello"));
+
+    File file = temporaryFolder.newFile();
+    write(file, "Hel");
+    service.resume(file).execute();
+    assertThat(read(file)).isEqualTo("Hello");
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Range")).isNull();
+    assertThat(request.getHeader("If-Range")).isNull();
+  }
+
+  @Test public void interruptedDownloadResumesWithItsValidator()
+      throws IOException, InterruptedException {
+    server.enqueue(new MockResponse()
+        .addHeader("ETag", "W/\"weak\"")
+        .addHeader("Last-Modified", "Mon, 19 Oct 2026 12:00:00 GMT")
+        .setHeader("Content-Length", 5)
+        .setBody("Hel")
+        .setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+    server.enqueue(new MockResponse()
+        .setResponseCode(206)
+        .addHeader("Content-Range", "bytes 3-4/5")
+        .setBody("lo"));
+
+    File file = temporaryFolder.newFile();
+    try {
+      service.resume(file).execute();
+      fail();
+    } catch (IOException expected) {
+    }
+    assertThat(read(file)).isEqualTo("Hel");
+
+    service.resume(file).execute();
+    assertThat(read(file)).isEqualTo("Hello");
+
+    server.takeRequest();
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Range")).isEqualTo("bytes=3-");
+    // Weak ETags cannot be used with If-Range.
+    assertThat(request.getHeader("If-Range")).isEqualTo("Mon, 19 Oct 2026 12:00:00 GMT");
+  }
+
+  @Test public void resumeEmptyFileSendsNoRange() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hello"));
+
+    service.resume(temporaryFolder.newFile()).execute();
+    assertThat(server.takeRequest().getHeader("Range")).isNull();
+  }
+
+  @Test public void mismatchedContentRangeFails() throws IOException {
+    server.enqueue(new MockResponse()
+        .setResponseCode(206)
+        .addHeader("Content-Range", "bytes 0-4/5")
+        .setBody("Hello"));
+
+    File file = temporaryFolder.newFile();
+    write(file, "Hel");
+    write(DownloadTarget.validatorFile(file), "\"v1\"");
+    try {
+      service.resume(file).execute();
+      fail();
+    } catch (ProtocolException e) {
+      assertThat(e).hasMessage("Expected range starting at 3 but was bytes 0-4/5");
+    }
+  }
+
+  @Test public void progressIsReported() throws IOException {
+    Buffer body = new Buffer();
+    for (int i = 0; i < 3 * DownloadTarget.CHUNK_SIZE; i++) {
+      body.writeByte('a');
+    }
+    long length = body.size();
+    server.enqueue(new MockResponse().setBody(body));
+
+    final List<Long> transferred = new ArrayList<>();
+    final List<Long> totals = new ArrayList<>();
+    File file = temporaryFolder.newFile();
+    service.progress(file, new ProgressListener() {
+      @Override public void onProgress(long bytesTransferred, long contentLength) {
+        transferred.add(bytesTransferred);
+        totals.add(contentLength);
+      }
+    }).execute();
+
+    assertThat(file.length()).isEqualTo(length);
+    assertThat(transferred).isNotEmpty();
+    assertThat(transferred.get(transferred.size() - 1)).isEqualTo(length);
+    for (int i = 1; i < transferred.size(); i++) {
+      assertThat(transferred.get(i)).isGreaterThan(transferred.get(i - 1));
+    }
+    for (Long total : totals) {
+      assertThat(total).isEqualTo(length);
+    }
+  }
+
+  @Test public void errorResponseDoesNotTouchDestination() throws IOException {
+    server.enqueue(new MockResponse().setResponseCode(404).setBody("Not found"));
+
+    File file = temporaryFolder.newFile();
+    write(file, "Hel");
+    Response<File> response = service.resume(file).execute();
+    assertThat(response.isSuccessful()).isFalse();
+    assertThat(response.errorBody().string()).isEqualTo("Not found");
+    assertThat(read(file)).isEqualTo("Hel");
+  }
+
+  interface InvalidService {
+    @GET("/") Call<File> stringDestination(@Destination String file);
+    @GET("/") Call<ResponseBody> bodyResponse(@Destination File file);
+    @GET("/") Call<ResponseBody> progressOnly(@Progress ProgressListener listener);
+  }
+
+  @Test public void destinationMustBeFile() {
+    InvalidService invalid = invalidService();
+    try {
+      invalid.stringDestination("file.txt");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage(
+          "@Destination parameter type must be java.io.File. (parameter #1)\n"
+              + "    for method InvalidService.stringDestination");
+    }
+  }
+
+  @Test public void destinationResponseTypeMustBeFile() throws IOException {
+    InvalidService invalid = invalidService();
+    try {
+      invalid.bodyResponse(temporaryFolder.newFile());
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("@Destination methods must use File as response type.\n"
+          + "    for method InvalidService.bodyResponse");
+    }
+  }
+
+  @Test public void progressRequiresDestination() {
+    InvalidService invalid = invalidService();
+    try {
+      invalid.progressOnly(null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("@Progress parameter requires a @Destination parameter.\n"
+          + "    for method InvalidService.progressOnly");
+    }
+  }
+
+  private InvalidService invalidService() {
+    return new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .build()
+        .create(InvalidService.class);
+  }
+
+  private static void write(File file, String contents) throws IOException {
+    BufferedSink sink = Okio.buffer(Okio.sink(file));
+    sink.writeUtf8(contents);
+    sink.close();
+  }
+
+  private static String read(File file) throws IOException {
+    return Okio.buffer(Okio.source(file)).readUtf8();
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2
+package retrofit2
+
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.async
+import kotlinx.coroutines.runBlocking
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.SocketPolicy.DISCONNECT_AFTER_REQUEST
+import okhttp3.mockwebserver.SocketPolicy.NO_RESPONSE
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Assert.fail
+import org.junit.Rule
+import org.junit.Test
+import retrofit2.helpers.ToStringConverterFactory
+import retrofit2.http.GET
+import retrofit2.http.Path
+import java.io.IOException
+import java.util.concurrent.TimeUnit.SECONDS
+
+class KotlinSuspendTest {
+  @get:Rule val server = MockWebServer()
+
+  interface Service {
+    @GET("/") suspend fun body(): String
+    @GET("/") suspend fun response(): Response<String>
+    @GET("/{a}/{b}/{c}") suspend fun params(
+        @Path("a") a: String,
+        @Path("b") b: String,
+        @Path("c") c: String
+    ): String
+  }
+
+  private fun service(): Service {
+    return Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(ToStringConverterFactory())
+        .build()
+        .create(Service::class.java)
+  }
+
+  @Test fun body() {
+    server.enqueue(MockResponse().setBody("Hi"))
+
+    val body = runBlocking { service().body() }
+    assertThat(body).isEqualTo("Hi")
+  }
+
+  @Test fun body404() {
+    server.enqueue(MockResponse().setResponseCode(404))
+
+    try {
+      runBlocking { service().body() }
+      fail()
+    } catch (e: HttpException) {
+      assertThat(e).hasMessage("HTTP 404 Client Error")
+    }
+  }
+
+  @Test fun bodyFailure() {
+    server.enqueue(MockResponse().setSocketPolicy(DISCONNECT_AFTER_REQUEST))
+
+    try {
+      runBlocking { service().body() }
+      fail()
+    } catch (e: IOException) {
+    }
+  }
+
+  @Test fun response() {
+    server.enqueue(MockResponse().setResponseCode(404).setBody("Hi"))
+
+    val response = runBlocking { service().response() }
+    assertThat(response.code()).isEqualTo(404)
+    assertThat(response.errorBody()!!.string()).isEqualTo("Hi")
+  }
+
+  @Test fun params() {
+    server.enqueue(MockResponse())
+
+    runBlocking { service().params("1", "2", "3") }
+    assertThat(server.takeRequest().path).isEqualTo("/1/2/3")
+  }
+
+  @Test fun cancellationCancelsCall() {
+    server.enqueue(MockResponse().setSocketPolicy(NO_RESPONSE))
+
+    val service = service()
+    runBlocking {
+      val deferred = GlobalScope.async(Dispatchers.Unconfined, CoroutineStart.UNDISPATCHED) {
+        service.body()
+      }
+      assertThat(server.takeRequest(5, SECONDS)).isNotNull()
+      deferred.cancel()
+      assertThat(deferred.isCancelled).isTrue()
+    }
+  }
+}
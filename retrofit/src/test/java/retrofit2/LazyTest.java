@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.http.GET;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class LazyTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  interface Service {
+    @GET("/") Call<Lazy<String>> body();
+  }
+
+  /** Converts bodies to strings, counting how often it is invoked. */
+  static final class CountingConverterFactory extends Converter.Factory {
+    final AtomicInteger conversions = new AtomicInteger();
+
+    @Override public Converter<ResponseBody, ?> responseBodyConverter(Type type,
+        Annotation[] annotations, Retrofit retrofit) {
+      if (type != String.class) return null;
+      return new Converter<ResponseBody, String>() {
+        @Override public String convert(ResponseBody value) throws IOException {
+          conversions.incrementAndGet();
+          String string = value.string();
+          if (string.equals("fail")) throw new IOException("Broken!");
+          return string;
+        }
+      };
+    }
+  }
+
+  private final CountingConverterFactory converterFactory = new CountingConverterFactory();
+  private Retrofit retrofit;
+  private Service service;
+
+  @Before public void setUp() {
+    retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(converterFactory)
+        .build();
+    service = retrofit.create(Service.class);
+  }
+
+  @Test public void conversionIsDeferredUntilGet() throws IOException {
+    server.enqueue(new MockResponse().addHeader("ETag", "\"abc\"").setBody("Hi"));
+
+    Response<Lazy<String>> response = service.body().execute();
+    assertThat(response.headers().get("ETag")).isEqualTo("\"abc\"");
+    Lazy<String> body = response.body();
+    assertThat(body.isConverted()).isFalse();
+    assertThat(converterFactory.conversions.get()).isEqualTo(0);
+
+    assertThat(body.get()).isEqualTo("Hi");
+    assertThat(body.isConverted()).isTrue();
+    assertThat(converterFactory.conversions.get()).isEqualTo(1);
+  }
+
+  @Test public void convertedValueIsCached() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    Lazy<String> body = service.body().execute().body();
+    assertThat(body.get()).isEqualTo("Hi");
+    assertThat(body.get()).isEqualTo("Hi");
+    assertThat(converterFactory.conversions.get()).isEqualTo(1);
+  }
+
+  @Test public void conversionFailureIsCached() throws IOException {
+    server.enqueue(new MockResponse().setBody("fail"));
+
+    Lazy<String> body = service.body().execute().body();
+    for (int i = 0; i < 2; i++) {
+      try {
+        body.get();
+        fail();
+      } catch (IOException e) {
+        assertThat(e).hasMessage("Broken!");
+      }
+    }
+    assertThat(converterFactory.conversions.get()).isEqualTo(1);
+  }
+
+  @Test public void largeBodyIsConvertedEagerly() throws IOException {
+    Buffer buffer = new Buffer();
+    for (long i = 0; i <= Lazy.MAX_DEFERRED_SIZE; i++) {
+      buffer.writeByte('a');
+    }
+    server.enqueue(new MockResponse().setBody(buffer));
+
+    Lazy<String> body = service.body().execute().body();
+    assertThat(body.isConverted()).isTrue();
+    assertThat(converterFactory.conversions.get()).isEqualTo(1);
+    assertThat((long) body.get().length()).isEqualTo(Lazy.MAX_DEFERRED_SIZE + 1);
+    assertThat(converterFactory.conversions.get()).isEqualTo(1);
+  }
+
+  @Test public void conversionExecutorIsNotUsed() throws InterruptedException {
+    Buffer buffer = new Buffer();
+    for (long i = 0; i <= Lazy.MAX_DEFERRED_SIZE; i++) {
+      buffer.writeByte('a');
+    }
+    server.enqueue(new MockResponse().setBody(buffer));
+
+    final AtomicInteger executions = new AtomicInteger();
+    Service service = retrofit.newBuilder()
+        .conversionExecutor(new Executor() {
+          @Override public void execute(Runnable command) {
+            executions.incrementAndGet();
+            command.run();
+          }
+        })
+        .build()
+        .create(Service.class);
+
+    final AtomicReference<Lazy<String>> bodyRef = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    service.body().enqueue(new Callback<Lazy<String>>() {
+      @Override public void onResponse(Call<Lazy<String>> call, Response<Lazy<String>> response) {
+        bodyRef.set(response.body());
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<Lazy<String>> call, Throwable t) {
+        throw new AssertionError(t);
+      }
+    });
+    assertTrue(latch.await(10, SECONDS));
+
+    assertThat(bodyRef.get().isConverted()).isTrue();
+    assertThat(executions.get()).isEqualTo(0);
+  }
+
+  @Test public void unparameterizedLazyThrows() {
+    try {
+      retrofit.responseBodyConverter(Lazy.class, new Annotation[0]);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage(
+          "Lazy return type must be parameterized as Lazy<Foo> or Lazy<? extends Foo>");
+    }
+  }
+}
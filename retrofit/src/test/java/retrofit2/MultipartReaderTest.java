@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.helpers.ToStringConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Streaming;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class MultipartReaderTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  interface Service {
+    @GET("/") Call<MultipartReader<String>> strings();
+    @Streaming @GET("/") Call<MultipartReader<ResponseBody>> bodies();
+  }
+
+  private static final String BODY = ""
+      + "--simple boundary\r\n"
+      + "Content-Type: text/plain\r\n"
+      + "\r\n"
+      + "Hello\r\n"
+      + "--simple boundary \r\n"
+      + "Content-Type: text/plain\r\n"
+      + "Content-Disposition: attachment; filename=\"two.txt\"\r\n"
+      + "\r\n"
+      + "World\r\n"
+      + "with a second line\r\n"
+      + "--simple boundary--\r\n";
+
+  private Service service;
+
+  @Before public void setUp() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    service = retrofit.create(Service.class);
+  }
+
+  @Test public void partsAreConverted() throws IOException {
+    server.enqueue(new MockResponse()
+        .addHeader("Content-Type", "multipart/mixed; boundary=\"simple boundary\"")
+        .setBody(BODY));
+
+    MultipartReader<String> reader = service.strings().execute().body();
+
+    MultipartReader.Part<String> one = reader.nextPart();
+    assertThat(one.headers().get("Content-Type")).isEqualTo("text/plain");
+    assertThat(one.body()).isEqualTo("Hello");
+
+    MultipartReader.Part<String> two = reader.nextPart();
+    assertThat(two.headers().get("Content-Disposition"))
+        .isEqualTo("attachment; filename=\"two.txt\"");
+    assertThat(two.body()).isEqualTo("World\r\nwith a second line");
+
+    assertThat(reader.nextPart()).isNull();
+    assertThat(reader.nextPart()).isNull();
+    reader.close();
+  }
+
+  @Test public void unreadPartBytesAreSkipped() throws IOException {
+    server.enqueue(new MockResponse()
+        .addHeader("Content-Type", "multipart/mixed; boundary=\"simple boundary\"")
+        .setBody(BODY));
+
+    MultipartReader<ResponseBody> reader = service.bodies().execute().body();
+
+    MultipartReader.Part<ResponseBody> one = reader.nextPart();
+    assertThat(one.body().contentType().toString()).isEqualTo("text/plain");
+    assertThat(one.body().source().readUtf8(2)).isEqualTo("He");
+
+    MultipartReader.Part<ResponseBody> two = reader.nextPart();
+    assertThat(two.body().string()).isEqualTo("World\r\nwith a second line");
+
+    assertThat(reader.nextPart()).isNull();
+    reader.close();
+  }
+
+  @Test public void zeroByteReadIsNotEndOfPart() throws IOException {
+    server.enqueue(new MockResponse()
+        .addHeader("Content-Type", "multipart/mixed; boundary=\"simple boundary\"")
+        .setBody(BODY));
+
+    MultipartReader<ResponseBody> reader = service.bodies().execute().body();
+    MultipartReader.Part<ResponseBody> one = reader.nextPart();
+
+    Buffer buffer = new Buffer();
+    assertThat(reader.currentPart.read(buffer, 0L)).isEqualTo(0L);
+    assertThat(buffer.size()).isEqualTo(0L);
+    assertThat(one.body().string()).isEqualTo("Hello");
+    reader.close();
+  }
+
+  @Test public void largePartSpansManyReads() throws IOException {
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      large.append((char) ('a' + i % 26));
+    }
+    server.enqueue(new MockResponse()
+        .addHeader("Content-Type", "multipart/form-data; boundary=xyz")
+        .setBody("--xyz\r\n\r\n" + large + "\r\n--xyz\r\n\r\nsmall\r\n--xyz--"));
+
+    MultipartReader<String> reader = service.strings().execute().body();
+    assertThat(reader.nextPart().body()).isEqualTo(large.toString());
+    assertThat(reader.nextPart().body()).isEqualTo("small");
+    assertThat(reader.nextPart()).isNull();
+    reader.close();
+  }
+
+  @Test public void nonMultipartBodyFails() {
+    server.enqueue(new MockResponse().setBody("Hello"));
+
+    try {
+      service.strings().execute();
+      fail();
+    } catch (IOException e) {
+      assertThat(e).hasMessage("Expected a multipart body with a boundary but was null");
+    }
+  }
+}
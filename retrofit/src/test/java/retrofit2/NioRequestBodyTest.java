@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import retrofit2.http.Body;
+import retrofit2.http.Headers;
+import retrofit2.http.Multipart;
+import retrofit2.http.POST;
+import retrofit2.http.Part;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static retrofit2.RequestFactoryTest.buildRequest;
+
+public final class NioRequestBodyTest {
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test public void fileBody() throws IOException {
+    class Example {
+      @POST("/") //
+      Call<ResponseBody> method(@Body File file) {
+        return null;
+      }
+    }
+
+    File file = newFile("Hello, World!");
+    RequestBody body = buildRequest(Example.class, file).body();
+    assertThat(body.contentType()).isEqualTo(MediaType.get("application/octet-stream"));
+    assertThat(body.contentLength()).isEqualTo(13);
+    assertThat(readBody(body)).isEqualTo("Hello, World!");
+    // Files are reopened for each write so a request can be retried.
+    assertThat(readBody(body)).isEqualTo("Hello, World!");
+  }
+
+  @Test public void fileBodyContentTypeOverride() throws IOException {
+    class Example {
+      @POST("/") //
+      @Headers("Content-Type: text/plain")
+      Call<ResponseBody> method(@Body File file) {
+        return null;
+      }
+    }
+
+    RequestBody body = buildRequest(Example.class, newFile("Hi")).body();
+    assertThat(body.contentType()).isEqualTo(MediaType.get("text/plain"));
+    assertThat(readBody(body)).isEqualTo("Hi");
+  }
+
+  @Test public void fileChannelBodyStartsAtPosition() throws IOException {
+    class Example {
+      @POST("/") //
+      Call<ResponseBody> method(@Body FileChannel channel) {
+        return null;
+      }
+    }
+
+    RandomAccessFile file = new RandomAccessFile(newFile("Hello, World!"), "r");
+    try {
+      FileChannel channel = file.getChannel();
+      channel.position(7);
+      RequestBody body = buildRequest(Example.class, channel).body();
+      assertThat(body.contentLength()).isEqualTo(6);
+      assertThat(readBody(body)).isEqualTo("World!");
+      assertThat(readBody(body)).isEqualTo("World!");
+      assertThat(channel.position()).isEqualTo(7);
+    } finally {
+      file.close();
+    }
+  }
+
+  @Test public void byteBufferBody() throws IOException {
+    class Example {
+      @POST("/") //
+      Call<ResponseBody> method(@Body ByteBuffer buffer) {
+        return null;
+      }
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap("Hello, World!".getBytes("UTF-8"));
+    buffer.position(7);
+    RequestBody body = buildRequest(Example.class, buffer).body();
+    assertThat(body.contentLength()).isEqualTo(6);
+    assertThat(readBody(body)).isEqualTo("World!");
+    assertThat(readBody(body)).isEqualTo("World!");
+    assertThat(buffer.position()).isEqualTo(7);
+  }
+
+  @Test public void mappedByteBufferBody() throws IOException {
+    class Example {
+      @POST("/") //
+      Call<ResponseBody> method(@Body MappedByteBuffer buffer) {
+        return null;
+      }
+    }
+
+    RandomAccessFile file = new RandomAccessFile(newFile("Hello, World!"), "r");
+    try {
+      MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, 5);
+      RequestBody body = buildRequest(Example.class, buffer).body();
+      assertThat(body.contentLength()).isEqualTo(5);
+      assertThat(readBody(body)).isEqualTo("Hello");
+    } finally {
+      file.close();
+    }
+  }
+
+  @Test public void pathBody() throws IOException {
+    class Example {
+      @POST("/") //
+      Call<ResponseBody> method(@Body java.nio.file.Path path) {
+        return null;
+      }
+    }
+
+    RequestBody body = buildRequest(Example.class, newFile("Hello").toPath()).body();
+    assertThat(body.contentLength()).isEqualTo(5);
+    assertThat(readBody(body)).isEqualTo("Hello");
+  }
+
+  @Test public void filePartIncludesFileName() throws IOException {
+    class Example {
+      @Multipart //
+      @POST("/") //
+      Call<ResponseBody> method(@Part("upload") File file) {
+        return null;
+      }
+    }
+
+    File file = newFile("Hello");
+    Request request = buildRequest(Example.class, file);
+    String bodyString = readBody(request.body());
+    assertThat(bodyString)
+        .contains("Content-Disposition: form-data; name=\"upload\"; filename=\""
+            + file.getName() + "\"\r\n")
+        .contains("Content-Type: application/octet-stream\r\n")
+        .contains("Content-Length: 5\r\n")
+        .contains("\r\nHello\r\n--");
+  }
+
+  @Test public void filePartEscapesFileName() {
+    okhttp3.Headers headers =
+        okhttp3.Headers.of("Content-Disposition", "form-data; name=\"upload\"");
+    File file = new File("a\"b\r\nX-Injected: yes");
+    okhttp3.Headers partHeaders = ParameterHandler.Part.headersFor(headers, file);
+    assertThat(partHeaders.size()).isEqualTo(1);
+    assertThat(partHeaders.get("Content-Disposition"))
+        .isEqualTo("form-data; name=\"upload\"; filename=\"a%22b%0D%0AX-Injected: yes\"");
+  }
+
+  @Test public void userConverterTakesPrecedenceForFile() throws IOException {
+    class Example {
+      @POST("/") //
+      Call<ResponseBody> method(@Body File file) {
+        return null;
+      }
+    }
+
+    Retrofit.Builder builder = new Retrofit.Builder()
+        .baseUrl("http://example.com/")
+        .addConverterFactory(new Converter.Factory() {
+          @Override public Converter<?, RequestBody> requestBodyConverter(Type type,
+              Annotation[] parameterAnnotations, Annotation[] methodAnnotations,
+              Retrofit retrofit) {
+            if (type != File.class) return null;
+            return new Converter<File, RequestBody>() {
+              @Override public RequestBody convert(File value) {
+                return RequestBody.create(MediaType.get("text/plain"), value.getName());
+              }
+            };
+          }
+        });
+    File file = newFile("Hello");
+    RequestBody body = buildRequest(Example.class, builder, file).body();
+    assertThat(body.contentType()).isEqualTo(MediaType.get("text/plain"));
+    assertThat(readBody(body)).isEqualTo(file.getName());
+  }
+
+  private File newFile(String contents) throws IOException {
+    File file = temporaryFolder.newFile();
+    BufferedSink sink = Okio.buffer(Okio.sink(file));
+    sink.writeUtf8(contents);
+    sink.close();
+    return file;
+  }
+
+  private static String readBody(RequestBody body) throws IOException {
+    Buffer buffer = new Buffer();
+    body.writeTo(buffer);
+    return buffer.readUtf8();
+  }
+}
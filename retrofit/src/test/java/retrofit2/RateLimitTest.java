@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.helpers.ToStringConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.RateLimit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class RateLimitTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  interface Service {
+    @RateLimit(permits = 2, period = 500, unit = TimeUnit.MILLISECONDS)
+    @GET("/") Call<String> twicePerHalfSecond();
+
+    @RateLimit(permits = 1)
+    @GET("/") Call<String> oncePerSecond();
+
+    @RateLimit(permits = 100)
+    @GET("/") Call<String> generous();
+
+    @GET("/") Call<String> unlimited();
+  }
+
+  interface InvalidService {
+    @RateLimit(permits = 0) @GET("/") Call<String> none();
+  }
+
+  private Retrofit.Builder builder() {
+    return new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory());
+  }
+
+  @Test public void callsOverTheBurstAreDelayed() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(new MockResponse().setBody("Hi"));
+    }
+    Service service = builder().build().create(Service.class);
+
+    long start = System.nanoTime();
+    service.twicePerHalfSecond().execute();
+    service.twicePerHalfSecond().execute();
+    assertThat(System.nanoTime() - start).isLessThan(MILLISECONDS.toNanos(250));
+
+    service.twicePerHalfSecond().execute();
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(MILLISECONDS.toNanos(200));
+  }
+
+  @Test public void delayedAsyncCallsDoNotBlockTheCaller() throws InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+    Service service = builder().build().create(Service.class);
+
+    final CountDownLatch latch = new CountDownLatch(2);
+    Callback<String> callback = new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        throw new AssertionError(t);
+      }
+    };
+    long start = System.nanoTime();
+    service.oncePerSecond().enqueue(callback);
+    service.oncePerSecond().enqueue(callback);
+    assertThat(System.nanoTime() - start).isLessThan(MILLISECONDS.toNanos(500));
+
+    assertTrue(latch.await(10, SECONDS));
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(MILLISECONDS.toNanos(900));
+  }
+
+  @Test public void retryAfterPausesLaterCalls() throws IOException {
+    server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+    Service service = builder().build().create(Service.class);
+
+    assertThat(service.generous().execute().code()).isEqualTo(429);
+    long start = System.nanoTime();
+    assertThat(service.generous().execute().body()).isEqualTo("Hi");
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(MILLISECONDS.toNanos(900));
+  }
+
+  @Test public void hostRateLimitAppliesToEveryMethod() throws IOException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+    Service service = builder()
+        .rateLimit(server.getHostName(), 1, 300, MILLISECONDS)
+        .build()
+        .create(Service.class);
+
+    long start = System.nanoTime();
+    service.unlimited().execute();
+    service.unlimited().execute();
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(MILLISECONDS.toNanos(250));
+  }
+
+  @Test public void cancelEndsTheWaitForAPermit() throws IOException, InterruptedException {
+    server.enqueue(new MockResponse().setBody("Hi"));
+    Service service = builder().build().create(Service.class);
+    service.oncePerSecond().execute();
+
+    final Call<String> call = service.oncePerSecond();
+    new Thread() {
+      @Override public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ignored) {
+        }
+        call.cancel();
+      }
+    }.start();
+
+    long start = System.nanoTime();
+    try {
+      call.execute();
+      fail();
+    } catch (IOException e) {
+      assertThat(e).hasMessage("Canceled");
+    }
+    assertThat(System.nanoTime() - start).isLessThan(MILLISECONDS.toNanos(500));
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test public void reservationOverTheMaximumDelayTakesNoPermit() {
+    RateLimiter limiter = new RateLimiter(1, SECONDS.toNanos(1));
+    assertThat(limiter.reserve(Long.MAX_VALUE)).isEqualTo(0L);
+    assertThat(limiter.reserve(MILLISECONDS.toNanos(10))).isEqualTo(-1L);
+    assertThat(limiter.reserve(Long.MAX_VALUE))
+        .isGreaterThan(MILLISECONDS.toNanos(900))
+        .isLessThanOrEqualTo(SECONDS.toNanos(1));
+  }
+
+  @Test public void unreserveReturnsThePermit() {
+    RateLimiter limiter = new RateLimiter(1, SECONDS.toNanos(1));
+    assertThat(limiter.reserve(Long.MAX_VALUE)).isEqualTo(0L);
+    limiter.unreserve();
+    assertThat(limiter.reserve(0L)).isEqualTo(0L);
+  }
+
+  @Test public void hugeRetryAfterDoesNotOverflow() {
+    RateLimiter limiter = new RateLimiter(100, SECONDS.toNanos(1));
+    limiter.rateLimited(new okhttp3.Response.Builder()
+        .request(new Request.Builder().url("http://example.com/").build())
+        .protocol(Protocol.HTTP_1_1)
+        .code(429)
+        .message("Too Many Requests")
+        .header("Retry-After", String.valueOf(Long.MAX_VALUE))
+        .build());
+    assertThat(limiter.reserve(SECONDS.toNanos(1))).isEqualTo(-1L);
+    assertThat(limiter.reserve(Long.MAX_VALUE))
+        .isGreaterThan(RateLimiter.MAX_PAUSE_NANOS - SECONDS.toNanos(1));
+  }
+
+  @Test public void retryAfterParsing() {
+    assertThat(RateLimiter.retryAfterNanos("2", 7L)).isEqualTo(SECONDS.toNanos(2));
+    assertThat(RateLimiter.retryAfterNanos(null, 7L)).isEqualTo(7L);
+    assertThat(RateLimiter.retryAfterNanos("soon", 7L)).isEqualTo(7L);
+    assertThat(RateLimiter.retryAfterNanos("Thu, 01 Jan 1970 00:00:00 GMT", 7L)).isEqualTo(0L);
+  }
+
+  @Test public void nonPositivePermitsThrow() {
+    try {
+      builder().build().create(InvalidService.class).none();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage(
+          "@RateLimit permits and period must be greater than zero but were 0 and 1.\n"
+              + "    for method InvalidService.none");
+    }
+  }
+
+  @Test public void nonPositiveHostPermitsThrow() {
+    try {
+      builder().rateLimit("example.com", 0, 1, SECONDS);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("permits <= 0: 0");
+    }
+  }
+}
@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
@@ -2746,6 +2747,89 @@ public final class RequestFactoryTest {
     }
   }
 
+  enum Flavor {
+    PLAIN,
+    SPICY {
+      @Override public String toString() {
+        return "hot & spicy 100%";
+      }
+    }
+  }
+
+  @Test public void queryParamPrimitivesAndEnums() {
+    class Example {
+      @GET("/foo/bar/") //
+      Call<ResponseBody> method(@Query("id") long id, @Query("on") boolean on,
+          @Query("request id") UUID requestId, @Query("flavor") Flavor flavor,
+          @Query("ids") int[] ids, @Query("flavors") List<Flavor> flavors) {
+        return null;
+      }
+    }
+
+    UUID uuid = UUID.fromString("3b241101-e2bb-4255-8caf-4136c566a962");
+    Request request = buildRequest(Example.class, -42L, true, uuid, Flavor.SPICY,
+        new int[] { 1, 2 }, Arrays.asList(Flavor.PLAIN, null, Flavor.SPICY));
+    assertThat(request.url().toString()).isEqualTo("http://example.com/foo/bar/"
+        + "?id=-42&on=true&request%20id=3b241101-e2bb-4255-8caf-4136c566a962"
+        + "&flavor=hot%20%26%20spicy%20100%25&ids=1&ids=2"
+        + "&flavors=PLAIN&flavors=hot%20%26%20spicy%20100%25");
+  }
+
+  @Test public void queryParamEncodedEnum() {
+    class Example {
+      @GET("/foo/bar/") //
+      Call<ResponseBody> method(@Query(value = "fl%61vor", encoded = true) Flavor flavor) {
+        return null;
+      }
+    }
+
+    Request request = buildRequest(Example.class, Flavor.PLAIN);
+    assertThat(request.url().toString()).isEqualTo("http://example.com/foo/bar/?fl%61vor=PLAIN");
+  }
+
+  @Test public void formFieldPrimitivesAndEnums() {
+    class Example {
+      @FormUrlEncoded //
+      @POST("/foo") //
+      Call<ResponseBody> method(@Field("the id") int id, @Field("flavor") Flavor flavor,
+          @Field("missing") Integer missing) {
+        return null;
+      }
+    }
+
+    Request request = buildRequest(Example.class, 7, Flavor.SPICY, null);
+    assertBody(request.body(), "the%20id=7&flavor=hot%20%26%20spicy%20100%25");
+  }
+
+  @Test public void pathParamPrimitivesAndEnums() {
+    class Example {
+      @GET("/foo/{id}/{flavor}/") //
+      Call<ResponseBody> method(@Path("id") int id, @Path("flavor") Flavor flavor) {
+        return null;
+      }
+    }
+
+    Request request = buildRequest(Example.class, 12, Flavor.SPICY);
+    assertThat(request.url().toString())
+        .isEqualTo("http://example.com/foo/12/hot%20&%20spicy%20100%25/");
+  }
+
+  @Test public void pathParamNullPrimitiveThrows() {
+    class Example {
+      @GET("/foo/{id}/") //
+      Call<ResponseBody> method(@Path("id") Integer id) {
+        return null;
+      }
+    }
+
+    try {
+      buildRequest(Example.class, new Object[] { null });
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Path parameter \"id\" value must not be null.");
+    }
+  }
+
   private static void assertBody(RequestBody body, String expected) {
     assertThat(body).isNotNull();
     Buffer buffer = new Buffer();
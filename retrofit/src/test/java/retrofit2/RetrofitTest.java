@@ -107,6 +107,11 @@ public final class RetrofitTest {
   interface VoidService {
     @GET("/") void nope();
   }
+  interface SharedTypes {
+    @GET("/a") Call<String> a(@Query("x") String x);
+    @GET("/a") Call<String> sameAnnotations(@Query("x") String x);
+    @GET("/b") Call<String> b(@Query("y") String y);
+  }
   interface Annotated {
     @GET("/") @Foo Call<String> method();
     @POST("/") Call<ResponseBody> bodyParameter(@Foo @Body String param);
@@ -495,6 +500,7 @@ public final class RetrofitTest {
           + "Could not locate RequestBody converter for class java.lang.String.\n"
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
   }
@@ -518,6 +524,7 @@ public final class RetrofitTest {
           + "Could not locate ResponseBody converter for class java.lang.String.\n"
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
   }
@@ -847,7 +854,7 @@ public final class RetrofitTest {
         .baseUrl("http://example.com/")
         .build();
     List<Converter.Factory> converterFactories = retrofit.converterFactories();
-    assertThat(converterFactories).hasSize(2);
+    assertThat(converterFactories).hasSize(3);
     assertThat(converterFactories.get(0)).isInstanceOf(BuiltInConverters.class);
   }
 
@@ -912,6 +919,7 @@ public final class RetrofitTest {
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
           + "   * retrofit2.helpers.NonMatchingConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
 
@@ -942,6 +950,7 @@ public final class RetrofitTest {
           + "   * retrofit2.helpers.NonMatchingConverterFactory\n"
           + "  Tried:\n"
           + "   * retrofit2.helpers.NonMatchingConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
 
@@ -990,6 +999,7 @@ public final class RetrofitTest {
           + "  Tried:\n"
           + "   * retrofit2.BuiltInConverters\n"
           + "   * retrofit2.helpers.NonMatchingConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
 
@@ -1020,6 +1030,7 @@ public final class RetrofitTest {
           + "   * retrofit2.helpers.NonMatchingConverterFactory\n"
           + "  Tried:\n"
           + "   * retrofit2.helpers.NonMatchingConverterFactory\n"
+          + "   * retrofit2.StreamingRequestBodyConverterFactory\n"
           + "   * retrofit2.OptionalConverterFactory");
     }
 
@@ -1082,6 +1093,27 @@ public final class RetrofitTest {
     assertThat(retrofit.callAdapterFactories()).contains(factory);
   }
 
+  @Test public void responseConverterResolutionIsCached() {
+    Type type = String.class;
+
+    Converter<ResponseBody, ?> expectedAdapter = mock(Converter.class);
+    Converter.Factory factory = mock(Converter.Factory.class);
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("http://example.com/")
+        .addConverterFactory(factory)
+        .build();
+
+    doReturn(expectedAdapter).when(factory)
+        .responseBodyConverter(type, new Annotation[0], retrofit);
+
+    assertThat(retrofit.responseBodyConverter(type, new Annotation[0])).isSameAs(expectedAdapter);
+    assertThat(retrofit.responseBodyConverter(type, new Annotation[0])).isSameAs(expectedAdapter);
+
+    verify(factory).responseBodyConverter(type, new Annotation[0], retrofit);
+    verifyNoMoreInteractions(factory);
+  }
+
   @Test public void callAdapterFactoryQueried() {
     Type type = String.class;
     Annotation[] annotations = new Annotation[0];
@@ -1103,6 +1135,58 @@ public final class RetrofitTest {
     verifyNoMoreInteractions(factory);
   }
 
+  @Test public void resolutionIsSharedOnlyByEqualAnnotations() {
+    final AtomicInteger responseLookups = new AtomicInteger();
+    final AtomicInteger stringLookups = new AtomicInteger();
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("http://example.com/")
+        .addConverterFactory(new ToStringConverterFactory() {
+          @Override public Converter<ResponseBody, ?> responseBodyConverter(Type type,
+              Annotation[] annotations, Retrofit retrofit) {
+            responseLookups.incrementAndGet();
+            return super.responseBodyConverter(type, annotations, retrofit);
+          }
+
+          @Override public Converter<?, String> stringConverter(Type type,
+              Annotation[] annotations, Retrofit retrofit) {
+            stringLookups.incrementAndGet();
+            return null;
+          }
+        })
+        .build();
+    SharedTypes service = retrofit.create(SharedTypes.class);
+
+    service.a("1");
+    service.sameAnnotations("2");
+    assertThat(responseLookups.get()).isEqualTo(1);
+    assertThat(stringLookups.get()).isEqualTo(1);
+
+    // Factories see the annotation values, so @Query("y") must not reuse the @Query("x") result.
+    service.b("3");
+    assertThat(responseLookups.get()).isEqualTo(2);
+    assertThat(stringLookups.get()).isEqualTo(2);
+  }
+
+  @Test public void callAdapterResolutionIsCached() {
+    Type type = String.class;
+
+    CallAdapter<?, ?> expectedAdapter = mock(CallAdapter.class);
+    CallAdapter.Factory factory = mock(CallAdapter.Factory.class);
+
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl("http://example.com/")
+        .addCallAdapterFactory(factory)
+        .build();
+
+    doReturn(expectedAdapter).when(factory).get(type, new Annotation[0], retrofit);
+
+    assertThat(retrofit.callAdapter(type, new Annotation[0])).isSameAs(expectedAdapter);
+    assertThat(retrofit.callAdapter(type, new Annotation[0])).isSameAs(expectedAdapter);
+
+    verify(factory).get(type, new Annotation[0], retrofit);
+    verifyNoMoreInteractions(factory);
+  }
+
   @Test public void callAdapterFactoryQueriedCanDelegate() {
     Type type = String.class;
     Annotation[] annotations = new Annotation[0];
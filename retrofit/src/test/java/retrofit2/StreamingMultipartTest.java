@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.MultipartBody;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.Rule;
+import org.junit.Test;
+import retrofit2.helpers.ToStringConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.Compress;
+import retrofit2.http.Header;
+import retrofit2.http.Multipart;
+import retrofit2.http.POST;
+import retrofit2.http.Part;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static retrofit2.RequestFactoryTest.buildRequest;
+
+public final class StreamingMultipartTest {
+  @Rule public final MockWebServer server = new MockWebServer();
+
+  @Test public void iteratorPartsAreConvertedWhileWriting() throws IOException {
+    class Example {
+      @Multipart //
+      @POST("/foo/bar/") //
+      Call<ResponseBody> method(@Part("ping") String ping, @Part("kit") Iterator<String> kit) {
+        return null;
+      }
+    }
+
+    CountingIterator<String> kit = new CountingIterator<>(Arrays.asList("kat", "kot").iterator());
+    Request request = buildRequest(Example.class, "pong", kit);
+    assertThat(kit.taken).isZero();
+
+    RequestBody body = request.body();
+    assertThat(body.contentLength()).isEqualTo(-1);
+    assertThat(body.contentType().toString()).startsWith("multipart/form-data; boundary=");
+
+    Buffer buffer = new Buffer();
+    body.writeTo(buffer);
+    String bodyString = buffer.readUtf8();
+    assertThat(kit.taken).isEqualTo(2);
+
+    assertThat(bodyString)
+        .contains("name=\"ping\"\r\n")
+        .contains("\r\npong\r\n--");
+    int kat = bodyString.indexOf("\r\nkat\r\n--");
+    int kot = bodyString.indexOf("\r\nkot\r\n--");
+    assertThat(kat).isGreaterThan(bodyString.indexOf("\r\npong\r\n--"));
+    assertThat(kot).isGreaterThan(kat);
+    assertThat(bodyString).endsWith("--\r\n");
+  }
+
+  @Test public void rawPartIterator() throws IOException {
+    class Example {
+      @Multipart //
+      @POST("/foo/bar/") //
+      Call<ResponseBody> method(@Part Iterator<MultipartBody.Part> parts) {
+        return null;
+      }
+    }
+
+    Iterator<MultipartBody.Part> parts = Arrays.asList(
+        MultipartBody.Part.createFormData("kit", "kat"),
+        MultipartBody.Part.createFormData("ping", "pong")).iterator();
+    Request request = buildRequest(Example.class, parts);
+
+    Buffer buffer = new Buffer();
+    request.body().writeTo(buffer);
+    assertThat(buffer.readUtf8())
+        .contains("Content-Disposition: form-data; name=\"kit\"\r\n")
+        .contains("\r\nkat\r\n--")
+        .contains("Content-Disposition: form-data; name=\"ping\"\r\n")
+        .contains("\r\npong\r\n--");
+  }
+
+  @Test public void namedRawPartIteratorThrows() {
+    class Example {
+      @Multipart //
+      @POST("/foo/bar/") //
+      Call<ResponseBody> method(@Part("kit") Iterator<MultipartBody.Part> parts) {
+        return null;
+      }
+    }
+
+    try {
+      buildRequest(Example.class, Arrays.<MultipartBody.Part>asList().iterator());
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage(
+          "@Part parameters using the MultipartBody.Part must not include a part name in the "
+              + "annotation. (parameter #1)\n    for method Example.method");
+    }
+  }
+
+  @Test public void inputStreamPartHasUnknownLength() throws IOException {
+    class Example {
+      @Multipart //
+      @POST("/foo/bar/") //
+      Call<ResponseBody> method(@Part("kit") InputStream kit) {
+        return null;
+      }
+    }
+
+    Request request = buildRequest(Example.class, new ByteArrayInputStream("kat".getBytes("UTF-8")));
+    RequestBody body = request.body();
+    assertThat(body.contentLength()).isEqualTo(-1);
+
+    Buffer buffer = new Buffer();
+    body.writeTo(buffer);
+    assertThat(buffer.readUtf8())
+        .contains("Content-Type: application/octet-stream\r\n")
+        .doesNotContain("Content-Length")
+        .contains("\r\nkat\r\n--");
+  }
+
+  interface Service {
+    @Multipart @POST("/") Call<String> upload(@Part("kit") Iterator<String> kit);
+    @Multipart @POST("/") Call<String> uploadStream(@Part("kit") InputStream kit);
+    @POST("/") Call<String> send(@Body InputStream body);
+    @Compress @POST("/") Call<String> sendCompressed(@Body InputStream body);
+    @POST("/") Call<String> sendAs(@Header("Content-Type") String contentType,
+        @Body InputStream body);
+  }
+
+  @Test public void iteratorPartsAreSentChunked() throws IOException, InterruptedException {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    Service service = retrofit.create(Service.class);
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    service.upload(Arrays.asList("kat", "kot").iterator()).execute();
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Transfer-Encoding")).isEqualTo("chunked");
+    assertThat(request.getHeader("Content-Length")).isNull();
+    assertThat(request.getBody().readUtf8())
+        .contains("\r\nkat\r\n--")
+        .contains("\r\nkot\r\n--");
+  }
+
+  @Test public void iteratorPartsAreNotResentOnRedirect() throws IOException {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    Service service = retrofit.create(Service.class);
+    server.enqueue(new MockResponse().setResponseCode(307).addHeader("Location", "/moved"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    Response<String> response = service.upload(Arrays.asList("kat", "kot").iterator()).execute();
+
+    // The iterator is exhausted, so the redirect is returned instead of followed with an empty body.
+    assertThat(response.code()).isEqualTo(307);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test public void inputStreamPartsAreNotResentOnRedirect() throws IOException {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    Service service = retrofit.create(Service.class);
+    server.enqueue(new MockResponse().setResponseCode(307).addHeader("Location", "/moved"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    InputStream kit = new ByteArrayInputStream("kat".getBytes("UTF-8"));
+    Response<String> response = service.uploadStream(kit).execute();
+
+    assertThat(response.code()).isEqualTo(307);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test public void inputStreamBodyIsNotResentOnRedirect() throws IOException {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    Service service = retrofit.create(Service.class);
+    server.enqueue(new MockResponse().setResponseCode(307).addHeader("Location", "/moved"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    Response<String> response =
+        service.send(new ByteArrayInputStream("kat".getBytes("UTF-8"))).execute();
+
+    assertThat(response.code()).isEqualTo(307);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test public void compressedInputStreamBodyIsNotResentOnRedirect() throws IOException {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    Service service = retrofit.create(Service.class);
+    server.enqueue(new MockResponse().setResponseCode(307).addHeader("Location", "/moved"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    Response<String> response =
+        service.sendCompressed(new ByteArrayInputStream("kat".getBytes("UTF-8"))).execute();
+
+    assertThat(response.code()).isEqualTo(307);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test public void contentTypeOverrideKeepsBodyFromBeingResent()
+      throws IOException, InterruptedException {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    Service service = retrofit.create(Service.class);
+    server.enqueue(new MockResponse().setResponseCode(307).addHeader("Location", "/moved"));
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    Response<String> response = service.sendAs("text/plain",
+        new ByteArrayInputStream("kat".getBytes("UTF-8"))).execute();
+
+    assertThat(response.code()).isEqualTo(307);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    assertThat(server.takeRequest().getHeader("Content-Type")).isEqualTo("text/plain");
+  }
+
+  @Test public void partConversionFailureIsDeliveredToAsyncCallback()
+      throws InterruptedException {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new Converter.Factory() {
+          @Override public Converter<?, RequestBody> requestBodyConverter(Type type,
+              Annotation[] parameterAnnotations, Annotation[] methodAnnotations,
+              Retrofit retrofit) {
+            return new Converter<String, RequestBody>() {
+              @Override public RequestBody convert(String value) throws IOException {
+                throw new IOException("Broken!");
+              }
+            };
+          }
+        })
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    Service service = retrofit.create(Service.class);
+    server.enqueue(new MockResponse().setBody("Hi"));
+
+    final AtomicReference<Throwable> failureRef = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    service.upload(Arrays.asList("kat").iterator()).enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        throw new AssertionError();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        failureRef.set(t);
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(10, SECONDS));
+
+    assertThat(failureRef.get()).isInstanceOf(IOException.class)
+        .hasMessage("Unable to convert kat to RequestBody");
+    assertThat(failureRef.get().getCause()).hasMessage("Broken!");
+  }
+
+  static final class CountingIterator<T> implements Iterator<T> {
+    private final Iterator<T> delegate;
+    int taken;
+
+    CountingIterator(Iterator<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override public boolean hasNext() {
+      return delegate.hasNext();
+    }
+
+    @Override public T next() {
+      taken++;
+      return delegate.next();
+    }
+
+    @Override public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
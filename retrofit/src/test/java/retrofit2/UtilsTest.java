@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class UtilsTest {
+  interface Types {
+    List<String> list();
+    List<String> sameList();
+    Map<String, ? extends List<? super Integer>> map();
+    List<String>[] array();
+  }
+
+  private final ConcurrentMap<Type, Type> types = new ConcurrentHashMap<>();
+
+  @Test public void canonicalTypesAreShared() throws NoSuchMethodException {
+    Type list = Types.class.getMethod("list").getGenericReturnType();
+    Type sameList = Types.class.getMethod("sameList").getGenericReturnType();
+    assertThat(list).isNotSameAs(sameList);
+
+    Type canonical = Utils.canonicalize(list, types);
+    assertThat(Utils.canonicalize(sameList, types)).isSameAs(canonical);
+    assertThat(Utils.canonicalize(canonical, types)).isSameAs(canonical);
+    assertThat(canonical).isEqualTo(list);
+    assertThat(canonical.hashCode()).isEqualTo(list.hashCode());
+    assertThat(canonical.toString()).isEqualTo(list.toString());
+  }
+
+  @Test public void canonicalTypeArgumentsAreShared() throws NoSuchMethodException {
+    Type list = Utils.canonicalize(Types.class.getMethod("list").getGenericReturnType(), types);
+    Type array = Utils.canonicalize(Types.class.getMethod("array").getGenericReturnType(), types);
+    assertThat(array.toString()).isEqualTo("java.util.List<java.lang.String>[]");
+
+    Type map = Types.class.getMethod("map").getGenericReturnType();
+    Type canonicalMap = Utils.canonicalize(map, types);
+    assertThat(canonicalMap).isEqualTo(map);
+    assertThat(canonicalMap.hashCode()).isEqualTo(map.hashCode());
+    Type[] arguments = ((ParameterizedType) canonicalMap).getActualTypeArguments();
+    assertThat(arguments[0]).isSameAs(String.class);
+    assertThat(Utils.canonicalize(arguments[1], types)).isSameAs(arguments[1]);
+    assertThat(list).isSameAs(Utils.canonicalize(list, types));
+  }
+
+  @Test public void canonicalTypesAreScopedToTheirTable() throws NoSuchMethodException {
+    Type list = Types.class.getMethod("list").getGenericReturnType();
+    Type canonical = Utils.canonicalize(list, types);
+
+    ConcurrentMap<Type, Type> otherTypes = new ConcurrentHashMap<>();
+    Type otherCanonical = Utils.canonicalize(list, otherTypes);
+    assertThat(otherCanonical).isNotSameAs(canonical).isEqualTo(canonical);
+    assertThat(otherTypes).hasSize(1);
+  }
+
+  @Test public void classesAreReturnedAsIs() {
+    assertThat(Utils.canonicalize(String.class, types)).isSameAs(String.class);
+  }
+}